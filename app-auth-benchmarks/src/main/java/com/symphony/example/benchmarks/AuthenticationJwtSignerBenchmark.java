@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.benchmarks;
+
+import com.symphony.example.authentication.AuthenticationJwtSigner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of signing the JWT this app sends to a pod to initiate app authentication.  The example app's key is 4096 bit,
+ * so both that and the more common 2048 bit size are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthenticationJwtSignerBenchmark {
+
+    @Param({"2048", "4096"})
+    private int keySize;
+
+    private PrivateKey privateKey;
+
+    @Setup
+    public void setup() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(keySize);
+        privateKey = generator.generateKeyPair().getPrivate();
+    }
+
+    @Benchmark
+    public String createSignedAuthenticationJwt() {
+        return AuthenticationJwtSigner.createSignedAuthenticationJwt("app-id", privateKey,
+                                                                     System.currentTimeMillis() + 30_000);
+    }
+}
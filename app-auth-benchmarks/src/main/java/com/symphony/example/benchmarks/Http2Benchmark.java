@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.benchmarks;
+
+import com.symphony.example.pods.PodDirectory;
+import com.symphony.example.pods.PodInfo;
+import com.symphony.example.utils.TestCertificates;
+import com.symphony.symphony.client.AuthenticateRequest;
+import com.symphony.symphony.client.AuthenticateResponse;
+import com.symphony.symphony.client.AuthenticationClient;
+import com.symphony.symphony.client.HttpClientBuilder;
+import com.symphony.symphony.client.SymphonyClientConfiguration;
+import com.symphony.symphony.client.SymphonyClientFactory;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Latency of calls to a pod's authenticate endpoint from 200 threads at once, with HTTP/1.1 and with HTTP/2.  The pod
+ * is a stub served over TLS on localhost which answers after a fixed latency.  Each HTTP/1.1 call in flight needs its
+ * own connection, and connections beyond the pool's idle limit are closed and opened again; with HTTP/2 the calls
+ * share one connection.  The connections opened and TLS handshakes made are printed after each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(200)
+public class Http2Benchmark {
+
+    private static final String KEY_STORE_PASSWORD = "changeit";
+
+    @Param({"http1", "http2"})
+    private String protocol;
+
+    @Param("20")
+    private long podLatencyMillis;
+
+    private MockWebServer pod;
+
+    private File trustStoreFile;
+
+    private SymphonyClientFactory symphonyClientFactory;
+
+    private AuthenticationClient authenticationClient;
+
+    @Setup
+    public void setup() throws Exception {
+        Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+
+        KeyPair keyPair = TestCertificates.generateKeyPair();
+        X509Certificate certificate = TestCertificates.serverCertificate(keyPair, "localhost");
+
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("pod", keyPair.getPrivate(), KEY_STORE_PASSWORD.toCharArray(),
+                             new Certificate[] {certificate});
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, KEY_STORE_PASSWORD.toCharArray());
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, null);
+        trustStore.setCertificateEntry("pod", certificate);
+        trustStoreFile = File.createTempFile("benchmark-pod", ".truststore");
+        try (OutputStream out = new FileOutputStream(trustStoreFile)) {
+            trustStore.store(out, KEY_STORE_PASSWORD.toCharArray());
+        }
+
+        // Offers both, so the client's setting decides
+        pod = new MockWebServer();
+        pod.useHttps(sslContext.getSocketFactory(), false);
+        pod.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                Thread.sleep(podLatencyMillis);
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setBody("{\"appToken\":\"app-token\",\"symphonyToken\":\"symphony-token\",\"expireAt\":0}");
+            }
+        });
+        pod.start();
+
+        SymphonyClientConfiguration configuration = new SymphonyClientConfiguration();
+        configuration.setTruststoreFilename(trustStoreFile.getPath());
+        configuration.setHttp2("http2".equals(protocol));
+        configuration.setWarmConnections(false);
+        // Every thread calls the one pod directly, not through the pod call threads the default is sized for
+        configuration.setMaxConcurrentCallsPerPod(200);
+        PodDirectory podDirectory = new PodDirectory();
+        symphonyClientFactory = new SymphonyClientFactory(new HttpClientBuilder(configuration), podDirectory,
+                                                          configuration);
+
+        PodInfo podInfo = new PodInfo();
+        podInfo.setCompanyId("benchmark-pod");
+        PodInfo.PodInfoPayload payload = new PodInfo.PodInfoPayload();
+        payload.setPodUrl(pod.url("/pod").toString());
+        podInfo.setPayload(payload);
+        podDirectory.addPodInfo(podInfo);
+
+        // Opens the first connection before the threads start, as warming would
+        authenticationClient = symphonyClientFactory.getAuthenticationClient("benchmark-pod");
+        authenticate();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        StringBuilder connections = new StringBuilder(protocol).append(':');
+        for (Metric<?> metric : symphonyClientFactory.metrics()) {
+            if (metric.getName().startsWith("counter.symphony.client.connections.")) {
+                connections.append(' ').append(metric.getName().substring("counter.symphony.client.connections.".length()))
+                        .append('=').append(metric.getValue());
+            }
+        }
+        System.out.println(connections);
+
+        symphonyClientFactory.stop();
+        pod.shutdown();
+        trustStoreFile.delete();
+    }
+
+    @Benchmark
+    public AuthenticateResponse authenticate() {
+        return authenticationClient.authenticate(new AuthenticateRequest("app-token", "auth-token"));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.symphony.example.authentication.JwtClaimReader;
+import com.symphony.example.authentication.JwtClaims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.security.auth.login.LoginException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading the claims this app uses from a typical Symphony JWT payload: binding the whole payload to nested
+ * Maps (what jjwt does), reading it as a JsonNode tree, and {@link JwtClaimReader}'s streaming parser.  Run with
+ * {@code -prof gc} to see the bytes allocated per read (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtClaimsBenchmark {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final byte[] payload = ("{\"aud\":\"app-id\",\"iss\":\"Symphony Communication Services LLC.\","
+            + "\"sub\":\"68719476737\",\"exp\":1500000060,"
+            + "\"user\":{\"id\":68719476737,\"emailAddress\":\"symphony.user@symphony.com\","
+            + "\"username\":\"symphony-username\",\"firstName\":\"Symphony\",\"lastName\":\"User\","
+            + "\"displayName\":\"Symphony User\",\"title\":\"Senior Software Engineer\",\"company\":\"Symphony\","
+            + "\"companyId\":\"130\",\"location\":\"Palo Alto, CA\","
+            + "\"avatarUrl\":\"https://symphony.com/avatars/static/150/68719476737.png\","
+            + "\"avatarSmallUrl\":\"https://symphony.com/avatars/static/50/68719476737.png\"}}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Benchmark
+    public JwtClaims map() throws IOException {
+        Map claims = OBJECT_MAPPER.readValue(payload, Map.class);
+        Map user = (Map) claims.get("user");
+        return new JwtClaims((String) claims.get("sub"), (String) user.get("username"), (String) user.get("companyId"),
+                             new Date(((Number) claims.get("exp")).longValue() * 1000), null);
+    }
+
+    @Benchmark
+    public JwtClaims tree() throws IOException {
+        JsonNode claims = OBJECT_MAPPER.readTree(payload);
+        JsonNode user = claims.path("user");
+        return new JwtClaims(claims.path("sub").asText(), user.path("username").asText(),
+                             user.path("companyId").asText(), new Date(claims.path("exp").asLong() * 1000), null);
+    }
+
+    @Benchmark
+    public JwtClaims streaming() throws LoginException {
+        return JwtClaimReader.read(payload);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.benchmarks;
+
+import com.symphony.example.authentication.JwtVerifier;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.security.auth.login.LoginException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of checking a Symphony JWT with {@link JwtVerifier}, compared with the previous jjwt based code, for a valid
+ * JWT, a JWT signed with the wrong algorithm (RS256) and a malformed JWT.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtVerificationBenchmark {
+
+    private final JwtVerifier jwtVerifier = new JwtVerifier();
+
+    private KeyPair keyPair;
+
+    private String validJwt;
+
+    private String wrongAlgorithmJwt;
+
+    private String malformedJwt;
+
+    @Setup
+    public void setup() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+
+        Map<String, String> user = new HashMap<>();
+        user.put("id", "12345");
+        user.put("username", "symphony-username");
+        user.put("displayName", "Symphony User");
+        user.put("company", "Symphony");
+        user.put("avatarUrl", "https://symphony.com/avatars/12345/150.png");
+        long expiration = System.currentTimeMillis() / 1000 + 3600;
+        validJwt = Jwts.builder().claim("sub", "12345").claim("exp", expiration).claim("user", user)
+                       .signWith(SignatureAlgorithm.RS512, keyPair.getPrivate()).compact();
+        wrongAlgorithmJwt = Jwts.builder().claim("sub", "12345").claim("exp", expiration).claim("user", user)
+                                .signWith(SignatureAlgorithm.RS256, keyPair.getPrivate()).compact();
+        malformedJwt = "eyJhbGciOiJSUzUxMiJ9.garbage.garbage";
+    }
+
+    @Benchmark
+    public String verifierValid() throws LoginException {
+        return jwtVerifier.verify(jwtVerifier.parse(validJwt), keyPair.getPublic()).getUsername();
+    }
+
+    @Benchmark
+    public String verifierWrongAlgorithm() {
+        return verifier(wrongAlgorithmJwt);
+    }
+
+    @Benchmark
+    public String verifierMalformed() {
+        return verifier(malformedJwt);
+    }
+
+    @Benchmark
+    public String jjwtValid() {
+        return jjwt(validJwt);
+    }
+
+    @Benchmark
+    public String jjwtWrongAlgorithm() {
+        return jjwt(wrongAlgorithmJwt);
+    }
+
+    @Benchmark
+    public String jjwtMalformed() {
+        return jjwt(malformedJwt);
+    }
+
+    private String verifier(String jwt) {
+        try {
+            return jwtVerifier.verify(jwtVerifier.parse(jwt), keyPair.getPublic()).getUsername();
+        } catch (LoginException e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * What AuthenticationService.getUserFromJwt used to do.
+     */
+    private String jjwt(String jwt) {
+        try {
+            if (!Jwts.parser().isSigned(jwt)) {
+                return "JWT is not signed";
+            }
+            Jws<Claims> claims = Jwts.parser().setSigningKey(keyPair.getPublic()).parseClaimsJws(jwt);
+            if (!SignatureAlgorithm.RS512.name().equals(claims.getHeader().getAlgorithm())) {
+                return "Invalid JWT algorithm: " + claims.getHeader().getAlgorithm();
+            }
+            Map userMap = (Map) claims.getBody().get("user");
+            return (String) userMap.get("username");
+        } catch (JwtException | IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+}
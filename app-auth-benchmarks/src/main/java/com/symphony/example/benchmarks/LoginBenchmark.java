@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.benchmarks;
+
+import com.symphony.example.authentication.AuthenticationConfig;
+import com.symphony.example.authentication.AuthenticationExecutors;
+import com.symphony.example.authentication.AuthenticationService;
+import com.symphony.example.authentication.BoundedExecutor;
+import com.symphony.example.authentication.PodCertificateCache;
+import com.symphony.example.authentication.StageTimers;
+import com.symphony.example.authentication.VerifiedJwtCache;
+import com.symphony.example.pods.PodDirectory;
+import com.symphony.example.pods.PodInfo;
+import com.symphony.example.utils.TestCertificates;
+import com.symphony.symphony.client.AuthenticateRequest;
+import com.symphony.symphony.client.AuthenticateResponse;
+import com.symphony.symphony.client.AuthenticationClient;
+import com.symphony.symphony.client.HttpClientBuilder;
+import com.symphony.symphony.client.PodCertificate;
+import com.symphony.symphony.client.SymphonyClientConfiguration;
+import com.symphony.symphony.client.SymphonyClientFactory;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPair;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for {@link AuthenticationService#getUserFromJwt(String, String)} to log a user in, against a pod stubbed in
+ * process so that the network isn't included.  "cached" is a JWT that has been verified before; "verify" turns the
+ * verified JWT cache off, so every login checks the RSA signature on the verification pool.  The pod's signing cert
+ * is fetched once and cached in both cases.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoginBenchmark {
+
+    private static final String COMPANY_ID = "pod-1";
+
+    @Param({"cached", "verify"})
+    private String mode;
+
+    private AuthenticationService authenticationService;
+
+    private PodCertificateCache podCertificateCache;
+
+    private BoundedExecutor podCallExecutor;
+
+    private BoundedExecutor jwtVerificationExecutor;
+
+    private String jwt;
+
+    @Setup
+    public void setup() throws Exception {
+        KeyPair podKeyPair = TestCertificates.generateKeyPair();
+
+        PodCertificate podCertificate = new PodCertificate();
+        podCertificate.setCertificate(TestCertificates.toPem(TestCertificates.selfSignedCertificate(
+                podKeyPair, new Date(System.currentTimeMillis() + 86_400_000L))));
+        AuthenticationClient stubPod = new AuthenticationClient() {
+            @Override
+            public PodCertificate getPodCertificate() {
+                return podCertificate;
+            }
+
+            @Override
+            public AuthenticateResponse authenticate(AuthenticateRequest request) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        HttpClientBuilder noHttpClient = new HttpClientBuilder(null) {
+            @Override
+            public OkHttpClient buildOkHttpClient(EventListener eventListener) {
+                return new OkHttpClient();
+            }
+        };
+        // Registered, so the stage timers are tagged with the pod as in production
+        PodDirectory podDirectory = new PodDirectory();
+        PodInfo podInfo = new PodInfo();
+        podInfo.setCompanyId(COMPANY_ID);
+        podDirectory.addPodInfo(podInfo);
+        SymphonyClientFactory symphonyClientFactory = new SymphonyClientFactory(noHttpClient, podDirectory,
+                                                                                new SymphonyClientConfiguration()) {
+            @Override
+            public AuthenticationClient getAuthenticationClient(String companyId) {
+                return stubPod;
+            }
+        };
+
+        AuthenticationConfig config = new AuthenticationConfig();
+        if ("verify".equals(mode)) {
+            config.setVerifiedJwtCacheMaximumSize(0);
+        }
+        podCertificateCache = new PodCertificateCache(symphonyClientFactory, config);
+        AuthenticationExecutors executors = new AuthenticationExecutors();
+        podCallExecutor = executors.podCallExecutor(config);
+        jwtVerificationExecutor = executors.jwtVerificationExecutor(config);
+        authenticationService = new AuthenticationService(symphonyClientFactory, null, null, podCertificateCache,
+                                                          new VerifiedJwtCache(config), null, podCallExecutor,
+                                                          jwtVerificationExecutor, new StageTimers(config, podDirectory));
+
+        Map<String, String> user = new HashMap<>();
+        user.put("id", "12345");
+        user.put("username", "symphony-username");
+        user.put("displayName", "Symphony User");
+        user.put("companyId", COMPANY_ID);
+        jwt = Jwts.builder().claim("sub", "12345").claim("exp", System.currentTimeMillis() / 1000 + 3600)
+                  .claim("user", user).signWith(SignatureAlgorithm.RS512, podKeyPair.getPrivate()).compact();
+
+        // Fetches the signing cert, and fills the verified JWT cache if it is on
+        login();
+    }
+
+    @TearDown
+    public void tearDown() {
+        podCertificateCache.stop();
+        podCallExecutor.stop();
+        jwtVerificationExecutor.stop();
+    }
+
+    @Benchmark
+    public String login() {
+        return authenticationService.getUserFromJwt(jwt, COMPANY_ID).join();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.symphony.example.benchmarks;
+
+import com.symphony.example.pods.PodDirectory;
+import com.symphony.example.pods.PodDirectoryConfiguration;
+import com.symphony.example.pods.PodInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time taken to restore the pod directory from its journal at startup.  Half the pods are in the snapshot and half
+ * are in the journal written after it.  Each restore starts from a copy of the same files, since a started directory
+ * compacts them into a new snapshot.  The target is 100 ms for 50,000 pods.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PodDirectoryRestoreBenchmark {
+
+    @Param({"50000"})
+    private int pods;
+
+    private Path written;
+
+    private Path journalDirectory;
+
+    private PodDirectory podDirectory;
+
+    @Setup
+    public void setup() throws IOException {
+        written = Files.createTempDirectory("pod-directory");
+        PodDirectory podDirectory = new PodDirectory(configuration(written, pods / 2));
+        podDirectory.start();
+        for (int pod = 0; pod < pods; pod++) {
+            podDirectory.addPodInfo(podInfo("pod-" + pod));
+        }
+        podDirectory.stop();
+    }
+
+    @Setup(Level.Invocation)
+    public void copyJournal() throws IOException {
+        journalDirectory = Files.createTempDirectory("pod-directory");
+        try (Stream<Path> files = Files.list(written)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, journalDirectory.resolve(file.getFileName()));
+            }
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopDirectory() throws IOException {
+        podDirectory.stop();
+        delete(journalDirectory);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        delete(written);
+    }
+
+    @Benchmark
+    public PodDirectory restore() throws IOException {
+        podDirectory = new PodDirectory(configuration(journalDirectory, pods));
+        podDirectory.start();
+        return podDirectory;
+    }
+
+    private static PodDirectoryConfiguration configuration(Path journalDirectory, int compactAfterEntries) {
+        PodDirectoryConfiguration configuration = new PodDirectoryConfiguration();
+        configuration.setJournalDirectory(journalDirectory.toString());
+        configuration.setCompactAfterEntries(compactAfterEntries);
+        return configuration;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+    private static PodInfo podInfo(String companyId) {
+        PodInfo podInfo = new PodInfo();
+        podInfo.setCompanyId(companyId);
+        podInfo.setAppId("app-id");
+        podInfo.setEventType(PodInfo.EventType.APP_ENABLED);
+        PodInfo.PodInfoPayload payload = new PodInfo.PodInfoPayload();
+        payload.setPodUrl("https://" + companyId + ".symphony.com/pod");
+        payload.setAgentUrl("https://" + companyId + ".symphony.com/agent");
+        podInfo.setPayload(payload);
+        return podInfo;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.benchmarks;
+
+import com.symphony.example.utils.SecurityKeyUtils;
+import com.symphony.example.utils.TestCertificates;
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of parsing this app's private key, in PKCS#1 and PKCS#8 PEM format, and a pod's signing cert.  Keys are 2048
+ * bit RSA, like a pod's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityKeyUtilsBenchmark {
+
+    private String pkcs1Pem;
+
+    private String pkcs8Pem;
+
+    private String certificatePem;
+
+    @Setup
+    public void setup() throws Exception {
+        KeyPair keyPair = TestCertificates.generateKeyPair();
+
+        // getEncoded() is PKCS#8, which wraps the PKCS#1 key in an algorithm identifier.  Both formats are PEM
+        // encoded the same way.
+        pkcs8Pem = pem("PRIVATE KEY", keyPair.getPrivate().getEncoded());
+        pkcs1Pem = pem("RSA PRIVATE KEY", pkcs1(keyPair.getPrivate()));
+
+        certificatePem = TestCertificates.toPem(TestCertificates.selfSignedCertificate(
+                keyPair, new Date(System.currentTimeMillis() + 86_400_000L)));
+    }
+
+    @Benchmark
+    public PrivateKey parsePkcs1PrivateKey() throws GeneralSecurityException {
+        return SecurityKeyUtils.parseRSAPrivateKey(pkcs1Pem);
+    }
+
+    @Benchmark
+    public PrivateKey parsePkcs8PrivateKey() throws GeneralSecurityException {
+        return SecurityKeyUtils.parseRSAPrivateKey(pkcs8Pem);
+    }
+
+    @Benchmark
+    public X509Certificate parseX509Certificate() throws GeneralSecurityException {
+        return SecurityKeyUtils.parseX509Certificate(certificatePem);
+    }
+
+    private static String pem(String type, byte[] der) {
+        return "-----BEGIN " + type + "-----\n"
+               + Base64.getMimeEncoder(64, "\n".getBytes()).encodeToString(der)
+               + "\n-----END " + type + "-----\n";
+    }
+
+    /**
+     * Extracts the PKCS#1 RSAPrivateKey from a PKCS#8 PrivateKeyInfo.
+     */
+    private static byte[] pkcs1(PrivateKey privateKey) {
+        return PrivateKeyInfo.getInstance(privateKey.getEncoded()).getPrivateKey().getDEREncoded();
+    }
+}
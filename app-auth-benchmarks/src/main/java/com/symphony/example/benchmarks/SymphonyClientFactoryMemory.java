@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.symphony.example.benchmarks;
+
+import com.symphony.example.pods.PodDirectory;
+import com.symphony.example.pods.PodInfo;
+import com.symphony.symphony.client.HttpClientBuilder;
+import com.symphony.symphony.client.SymphonyClientConfiguration;
+import com.symphony.symphony.client.SymphonyClientFactory;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import org.openjdk.jol.info.GraphStats;
+
+/**
+ * Memory held by the Feign clients of SymphonyClientFactory when every one of many registered pods has been used,
+ * compared with a full client cache, using the default maximum cache size.  Not a JMH benchmark, since it measures
+ * bytes rather than time.  Run with:
+ *
+ * {@code java -cp app-auth-benchmarks/target/benchmarks.jar com.symphony.example.benchmarks.SymphonyClientFactoryMemory [pods]}
+ */
+public class SymphonyClientFactoryMemory {
+
+    private static final int DEFAULT_PODS = 20_000;
+
+    public static void main(String[] args) {
+        int pods = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PODS;
+        SymphonyClientConfiguration configuration = new SymphonyClientConfiguration();
+        int maximumSize = configuration.getClientCacheMaximumSize();
+
+        long fullCache = clientBytes(configuration, pods, maximumSize);
+        long allPodsUsed = clientBytes(configuration, pods, pods);
+        System.out.printf("Client memory: %d bytes for %d pods used (%d per client), %d bytes for %d pods used%n",
+                          fullCache, maximumSize, fullCache / maximumSize, allPodsUsed, pods);
+    }
+
+    /**
+     * Returns the memory held by the factory after the first pods have been used, less the memory it held before, so
+     * that the pod directory and the HTTP client aren't counted.
+     */
+    private static long clientBytes(SymphonyClientConfiguration configuration, int pods, int podsUsed) {
+        PodDirectory podDirectory = new PodDirectory();
+        for (int i = 0; i < pods; i++) {
+            PodInfo podInfo = new PodInfo();
+            podInfo.setCompanyId("company-" + i);
+            PodInfo.PodInfoPayload payload = new PodInfo.PodInfoPayload();
+            payload.setPodUrl("https://pod-" + i + ".symphony.com/pod");
+            podInfo.setPayload(payload);
+            podDirectory.addPodInfo(podInfo);
+        }
+
+        HttpClientBuilder httpClientBuilder = new HttpClientBuilder(configuration) {
+            @Override
+            public OkHttpClient buildOkHttpClient(EventListener eventListener) {
+                return new OkHttpClient();
+            }
+        };
+        SymphonyClientFactory factory = new SymphonyClientFactory(httpClientBuilder, podDirectory, configuration);
+        long before = GraphStats.parseInstance(factory).totalSize();
+
+        for (int i = 0; i < podsUsed; i++) {
+            factory.getAuthenticationClient("company-" + i);
+        }
+        return GraphStats.parseInstance(factory).totalSize() - before;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.benchmarks;
+
+import com.symphony.example.authentication.TokenGenerator;
+import com.symphony.example.tokens.Token;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokens per second from {@link TokenGenerator} at 1, 8 and 32 threads, compared with the previous generator, which
+ * returned {@code UUID.randomUUID().toString()} and so had every thread share one SecureRandom.  Contention only shows
+ * with as many cores as threads, so results from a machine with fewer cores don't represent a server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenGeneratorBenchmark {
+
+    private final TokenGenerator tokenGenerator = new TokenGenerator();
+
+    @Benchmark
+    @Threads(1)
+    public String uuid1Thread() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String uuid8Threads() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public String uuid32Threads() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Token generator1Thread() {
+        return tokenGenerator.generateToken();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Token generator8Threads() {
+        return tokenGenerator.generateToken();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Token generator32Threads() {
+        return tokenGenerator.generateToken();
+    }
+}
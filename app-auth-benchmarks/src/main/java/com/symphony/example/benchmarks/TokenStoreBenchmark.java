@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.benchmarks;
+
+import com.symphony.example.authentication.TokenGenerator;
+import com.symphony.example.tokens.InMemoryTokenStore;
+import com.symphony.example.tokens.StatelessTokenStore;
+import com.symphony.example.tokens.Token;
+import com.symphony.example.tokens.TokenStore;
+import com.symphony.example.tokens.TokenStoreConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of storing a token pair and then validating it, as initiating app authentication and then validating the
+ * tokens does, from 8 threads at once.  With one pod every thread uses the same pod's table in the in-memory store;
+ * with 64 pods threads mostly use different tables.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class TokenStoreBenchmark {
+
+    @Param({"memory", "stateless"})
+    private String store;
+
+    @Param({"1", "64"})
+    private int pods;
+
+    private TokenStore tokenStore;
+
+    private final TokenGenerator tokenGenerator = new TokenGenerator();
+
+    private String[] companyIds;
+
+    @Setup
+    public void setup() {
+        TokenStoreConfiguration configuration = new TokenStoreConfiguration();
+        if ("memory".equals(store)) {
+            tokenStore = new InMemoryTokenStore(configuration);
+        } else {
+            byte[] key = new byte[32];
+            ThreadLocalRandom.current().nextBytes(key);
+            configuration.getHmacKeys().add(Base64.getEncoder().encodeToString(key));
+            tokenStore = new StatelessTokenStore(configuration);
+        }
+
+        companyIds = new String[pods];
+        for (int i = 0; i < pods; i++) {
+            companyIds[i] = "pod-" + i;
+        }
+    }
+
+    @Benchmark
+    public boolean putAndValidate() {
+        String companyId = companyIds[ThreadLocalRandom.current().nextInt(companyIds.length)];
+        Token appToken = tokenGenerator.generateToken();
+        String symphonyToken = tokenGenerator.generateToken().toString();
+        String receipt = tokenStore.put(companyId, appToken, symphonyToken);
+        return tokenStore.validate(companyId, appToken, symphonyToken, receipt);
+    }
+}
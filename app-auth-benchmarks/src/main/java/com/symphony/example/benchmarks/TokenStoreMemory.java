@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.benchmarks;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.symphony.example.tokens.InMemoryTokenStore;
+import com.symphony.example.tokens.Token;
+import com.symphony.example.tokens.TokenStoreConfiguration;
+import org.openjdk.jol.info.GraphStats;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory held per pending token pair by the in-memory token store, compared with the token cache the app used before
+ * there was a token store: a Guava cache of UUID string app tokens to symphony token strings, built as
+ * AuthenticationService built it, but with room for all the pairs.  Not a JMH benchmark, since it measures bytes rather
+ * than time.  Run with:
+ *
+ * {@code java -Xmx2g -cp app-auth-benchmarks/target/benchmarks.jar com.symphony.example.benchmarks.TokenStoreMemory [pairs]}
+ */
+public class TokenStoreMemory {
+
+    private static final int DEFAULT_PAIRS = 1_000_000;
+
+    public static void main(String[] args) {
+        int pairs = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PAIRS;
+        long before = bytesPerPair(tokenCache(pairs), pairs);
+        long after = bytesPerPair(tokenStore(pairs), pairs);
+        System.out.printf("Bytes per pending token pair, %d pairs: %d token cache, %d token store%n", pairs, before, after);
+    }
+
+    /**
+     * Token cache as built by AuthenticationService before the token store, holding the given number of pairs.
+     */
+    private static Cache<String, String> tokenCache(int pairs) {
+        Cache<String, String> tokenCache = CacheBuilder.newBuilder()
+                .maximumSize(pairs)
+                .expireAfterWrite(5, TimeUnit.MINUTES)
+                .build();
+        Random random = new Random(42);
+        for (int i = 0; i < pairs; i++) {
+            tokenCache.put(UUID.randomUUID().toString(), symphonyToken(random));
+        }
+        return tokenCache;
+    }
+
+    private static InMemoryTokenStore tokenStore(int pairs) {
+        TokenStoreConfiguration configuration = new TokenStoreConfiguration();
+        configuration.setMaximumSizePerPod(pairs);
+        configuration.setMaximumSize(pairs);
+        InMemoryTokenStore tokenStore = new InMemoryTokenStore(configuration);
+
+        Random random = new Random(42);
+        for (int i = 0; i < pairs; i++) {
+            tokenStore.put("pod-id", Token.random(random), symphonyToken(random));
+        }
+        return tokenStore;
+    }
+
+    private static long bytesPerPair(Object root, int pairs) {
+        return GraphStats.parseInstance(root).totalSize() / pairs;
+    }
+
+    // Symphony tokens are 128 hex digits
+    private static String symphonyToken(Random random) {
+        StringBuilder token = new StringBuilder(128);
+        for (int i = 0; i < 8; i++) {
+            token.append(Strings.padStart(Long.toHexString(random.nextLong()), 16, '0'));
+        }
+        return token.toString();
+    }
+}
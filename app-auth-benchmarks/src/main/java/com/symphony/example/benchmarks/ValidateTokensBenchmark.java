@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.benchmarks;
+
+import com.symphony.example.authentication.AuthenticationConfig;
+import com.symphony.example.authentication.AuthenticationController;
+import com.symphony.example.authentication.AuthenticationService;
+import com.symphony.example.authentication.StageTimers;
+import com.symphony.example.authentication.TokenGenerator;
+import com.symphony.example.pods.PodDirectory;
+import com.symphony.example.tokens.InMemoryTokenStore;
+import com.symphony.example.tokens.Token;
+import com.symphony.example.tokens.TokenStoreConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Time to validate a number of token pairs, either with one /validate-tokens request per pair or with a single
+ * /validate-tokens/batch request.  Requests go through Spring MVC (MockMvc), including JSON binding, to an in-memory
+ * token store, so the cost of the network isn't included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ValidateTokensBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int pairs;
+
+    private MockMvc mockMvc;
+
+    private List<String> singleRequests;
+
+    private String batchRequest;
+
+    @Setup
+    public void setup() {
+        InMemoryTokenStore tokenStore = new InMemoryTokenStore(new TokenStoreConfiguration());
+        AuthenticationService authenticationService = new AuthenticationService(null, null, null, null, null, tokenStore, null, null,
+                                                                                new StageTimers(new AuthenticationConfig(), new PodDirectory()));
+        mockMvc = MockMvcBuilders.standaloneSetup(new AuthenticationController(authenticationService, null, null)).build();
+
+        TokenGenerator tokenGenerator = new TokenGenerator();
+        singleRequests = new ArrayList<>();
+        StringJoiner batch = new StringJoiner(",", "[", "]");
+        for (int i = 0; i < pairs; i++) {
+            Token appToken = tokenGenerator.generateToken();
+            String symphonyToken = tokenGenerator.generateToken().toString();
+            tokenStore.put("pod-id", appToken, symphonyToken);
+
+            String request = "{\"companyId\":\"pod-id\",\"appToken\":\"" + appToken + "\",\"symphonyToken\":\"" + symphonyToken + "\"}";
+            singleRequests.add(request);
+            batch.add(request);
+        }
+        batchRequest = batch.toString();
+    }
+
+    @Benchmark
+    public int single() throws Exception {
+        int status = 0;
+        for (String request : singleRequests) {
+            status += mockMvc.perform(post("/validate-tokens").contentType(MediaType.APPLICATION_JSON).content(request))
+                             .andReturn().getResponse().getStatus();
+        }
+        return status;
+    }
+
+    @Benchmark
+    public int batch() throws Exception {
+        return mockMvc.perform(post("/validate-tokens/batch").contentType(MediaType.APPLICATION_JSON).content(batchRequest))
+                      .andReturn().getResponse().getStatus();
+    }
+}
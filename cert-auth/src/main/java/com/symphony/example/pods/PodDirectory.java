@@ -15,8 +15,11 @@ package com.symphony.example.pods;
 
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * Stores information about Symphony pods.  PodInfo is stored and retrieved using company IDs.  This information comes
@@ -24,25 +27,59 @@ import java.util.Map;
  *
  * This implementation just stores pod info in an in-memory map.  A real implementation would probably store this in
  * something more persistent (ie. a database of some sort).
+ *
+ * Pod info is added by webhook threads while every login reads it, so entries are immutable and kept in a concurrent
+ * map.  Reads never lock.  Pod info is copied when it is added and again when it is read (see
+ * {@link VersionedPodInfo}), so a reader sees all of an update or none of it, whatever callers do with their PodInfo
+ * objects.
  */
 @Component
 public class PodDirectory {
-    private Map<String, PodInfo> podCache = new HashMap<>();
+    private final ConcurrentMap<String, VersionedPodInfo> podCache = new ConcurrentHashMap<>();
+
+    private final List<Consumer<VersionedPodInfo>> listeners = new CopyOnWriteArrayList<>();
 
     /**
-     * Adds pod info to the directory.
+     * Registers a listener that is called with each update, after it has been added.  Listeners are called on the
+     * thread adding the pod info, and updates of the same pod from different threads may arrive out of order, so
+     * listeners should use the version to ignore an update older than one they have seen.
+     */
+    public void addListener(Consumer<VersionedPodInfo> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Adds pod info to the directory, replacing any previous pod info for the pod.
+     *
+     * @return version of the pod's entry; one more than the version it replaced
      */
-    public void addPodInfo(PodInfo podInfo) {
-        podCache.put(podInfo.getCompanyId(), podInfo);
+    public long addPodInfo(PodInfo podInfo) {
+        // compute() serializes updates of the same pod, so versions don't repeat.  Readers don't wait for it.
+        VersionedPodInfo versioned = podCache.compute(
+                podInfo.getCompanyId(),
+                (companyId, previous) -> new VersionedPodInfo(podInfo,
+                                                              previous == null ? 1 : previous.getVersion() + 1));
+        listeners.forEach(listener -> listener.accept(versioned));
+        return versioned.getVersion();
     }
 
     /**
-     * Returns pod info for pod with specified company ID.  It is an error if there is no pod info.
+     * Returns pod info for pod with specified company ID.  It is an error if there is no pod info.  The returned
+     * object is a copy, so changing it doesn't change the directory.
      *
      * @throws IllegalStateException if no pod info has been registered for the supplied company ID
      */
     public PodInfo getPodInfo(String companyId) {
-        PodInfo podInfo = podCache.get(companyId);
+        return getVersionedPodInfo(companyId).getPodInfo();
+    }
+
+    /**
+     * Returns pod info for pod with specified company ID, with its version.  It is an error if there is no pod info.
+     *
+     * @throws IllegalStateException if no pod info has been registered for the supplied company ID
+     */
+    public VersionedPodInfo getVersionedPodInfo(String companyId) {
+        VersionedPodInfo podInfo = podCache.get(companyId);
         if (podInfo == null) {
             throw new IllegalStateException("Missing pod info for pod with company ID '" + companyId + "'. " +
                     "This information should have been populated via webhook callback from Symphony when the app was enable for the pod.");
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.pods;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Pod info as stored in the {@link PodDirectory}, with its version.  The version of a pod's entry starts at 1 and goes
+ * up by one each time pod info for the pod is added, so a change can be spotted by comparing versions.
+ *
+ * PodInfo is a mutable webhook payload, so the pod info is copied when the entry is created and each time it is read.
+ * Nothing a caller does with a PodInfo can change an entry that other threads are reading.
+ */
+@EqualsAndHashCode
+@ToString
+public final class VersionedPodInfo {
+    private final PodInfo podInfo;
+    @Getter
+    private final long version;
+
+    public VersionedPodInfo(PodInfo podInfo, long version) {
+        this.podInfo = podInfo.copy();
+        this.version = version;
+    }
+
+    /**
+     * Returns a copy of the pod info.
+     */
+    public PodInfo getPodInfo() {
+        return podInfo.copy();
+    }
+}
@@ -15,7 +15,6 @@ package com.symphony.symphony.client;
 
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
-import org.springframework.stereotype.Component;
 
 /**
  * Configuration for the example application.  Properties are read from application.yaml and are prefixed
@@ -24,10 +23,20 @@ import org.springframework.stereotype.Component;
  * @author Dan Nathanson
  */
 @Data
-@Component
 @ConfigurationProperties(prefix = "symphony.client")
 public class SymphonyClientConfiguration {
     private String keystoreFilename;
     private String keystorePassword;
     private String truststoreFilename;
+
+    /**
+     * Maximum number of pods that have a Feign client at once.  The least recently used clients are evicted beyond
+     * this, and rebuilt when their pod is next used.
+     */
+    private int clientCacheMaximumSize = 1000;
+
+    /**
+     * Minutes after which the client of a pod that hasn't been used is evicted.
+     */
+    private int clientCacheIdleMinutes = 60;
 }
@@ -13,17 +13,30 @@
 
 package com.symphony.symphony.client;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
 import com.symphony.example.pods.PodDirectory;
 import com.symphony.example.pods.PodInfo;
+import com.symphony.example.pods.VersionedPodInfo;
 import feign.Client;
 import feign.Feign;
+import feign.codec.Decoder;
+import feign.codec.Encoder;
 import feign.jackson.JacksonDecoder;
 import feign.jackson.JacksonEncoder;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Creates and manages Feign clients for Symphony pods.  Each pod requires a different Feign client instance since
@@ -31,39 +44,138 @@ import java.util.Map;
  * each AuthenticationClient.  This means that the same certificate must be imported into each pod.  This makes sense
  * since the certificate represents this application itself.
  *
+ * Clients are built on first use, and kept for the most recently used pods only, bounded by
+ * {@link SymphonyClientConfiguration#getClientCacheMaximumSize()} and evicted after
+ * {@link SymphonyClientConfiguration#getClientCacheIdleMinutes()} without use.  An evicted pod's client is rebuilt from
+ * the {@link PodDirectory} when the pod is next used, so memory doesn't grow with the number of registered pods.  All
+ * clients share the HTTP client and the Jackson encoder and decoder, which are thread safe.
+ *
+ * When the pod info webhook tells the {@link PodDirectory} about a pod that has a client, the client is rebuilt if the
+ * pod's session auth URL changed, so logins never go to a pod's old host.  Each pod's client is replaced atomically,
+ * so getting a client is a single lookup.
+ *
  * @author Dan Nathanson
  */
 @Component
-public class SymphonyClientFactory {
-    private Map<String, AuthenticationClient> clients = new HashMap<>();
-    private Client okHttpClient;
-    private PodDirectory podDirectory;
+@Slf4j
+public class SymphonyClientFactory implements PublicMetrics {
+    private final Cache<String, PodClient> clients;
+    private final Client okHttpClient;
+    private final Encoder encoder = new JacksonEncoder();
+    private final Decoder decoder = new JacksonDecoder();
+    private final PodDirectory podDirectory;
+
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
 
     @Autowired
-    public SymphonyClientFactory(HttpClientBuilder clientBuilder, PodDirectory podDirectory) {
+    public SymphonyClientFactory(HttpClientBuilder clientBuilder, PodDirectory podDirectory,
+                                 SymphonyClientConfiguration configuration) {
+        this(clientBuilder, podDirectory, configuration, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    SymphonyClientFactory(HttpClientBuilder clientBuilder, PodDirectory podDirectory,
+                          SymphonyClientConfiguration configuration, Ticker ticker) {
         this.podDirectory = podDirectory;
         okHttpClient = clientBuilder.buildClient();
+        this.clients = CacheBuilder.newBuilder()
+                .maximumSize(configuration.getClientCacheMaximumSize())
+                .expireAfterAccess(configuration.getClientCacheIdleMinutes(), TimeUnit.MINUTES)
+                .ticker(ticker)
+                .removalListener(this::clientRemoved)
+                .build();
+        podDirectory.addListener(this::podInfoUpdated);
     }
 
     /**
-     * Returns a Feign client for the Symphony authentication REST endpoints.  Reuses existing client if already
-     * built, otherwise builds and caches a new one.
+     * Returns a Feign client for the Symphony authentication REST endpoints.
      * @param companyId ID of company/pod for which client is needed
      * @return REST client for pod
-     * @throws IllegalStateException if no pod info is present for pod ID
+     * @throws IllegalStateException if no pod info is present for pod ID, or it has no session auth URL
      */
     public AuthenticationClient getAuthenticationClient(String companyId) {
-        // Gets pod info from PodDirectory. This will throw IllegalStateException if no pod info is available for pod ID
-        PodInfo podInfo = podDirectory.getPodInfo(companyId);
-        final String podHost = podInfo.getPayload().getSessionAuthUrl();
+        PodClient podClient = clients.getIfPresent(companyId);
+        if (podClient == null) {
+            // Gets pod info from PodDirectory. This will throw IllegalStateException if no pod info is available for pod ID
+            VersionedPodInfo podInfo = podDirectory.getVersionedPodInfo(companyId);
+            String baseUrl = baseUrl(podInfo.getPodInfo());
+            podClient = clients.asMap().compute(companyId,
+                                                (id, existing) -> update(id, existing, podInfo.getVersion(), baseUrl));
+        }
+        return podClient.authenticationClient;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(new Metric<>("gauge.symphony.client.cache.size", clients.size()),
+                             new Metric<>("counter.symphony.client.cache.builds", builds.sum()),
+                             new Metric<>("counter.symphony.client.cache.evictions", evictions.sum()));
+    }
 
-        // Return existing (or create, cache and return new instance)
-        return clients.computeIfAbsent(companyId, k -> Feign.builder()
-                .encoder(new JacksonEncoder())
-                .decoder(new JacksonDecoder())
+    /**
+     * Only pods that have a client are updated.  Other pods get a client on first use, so registering lots of pods
+     * doesn't evict the clients of pods in use.
+     */
+    private void podInfoUpdated(VersionedPodInfo podInfo) {
+        String baseUrl;
+        try {
+            baseUrl = baseUrl(podInfo.getPodInfo());
+        } catch (IllegalStateException e) {
+            log.warn("Can't build client for pod: {}", e.getMessage());
+            // Don't keep using the old host.  Lookups will fail until the pod info is fixed.
+            clients.asMap().computeIfPresent(podInfo.getPodInfo().getCompanyId(),
+                                             (companyId, existing) -> existing.version < podInfo.getVersion() ? null : existing);
+            return;
+        }
+        clients.asMap().computeIfPresent(podInfo.getPodInfo().getCompanyId(),
+                                         (companyId, existing) -> update(companyId, existing, podInfo.getVersion(), baseUrl));
+    }
+
+    /**
+     * Makes sure the pod's client is for the base URL, unless the client was built from newer pod info.
+     */
+    private PodClient update(String companyId, PodClient existing, long version, String baseUrl) {
+        if (existing != null && existing.version >= version) {
+            return existing;
+        }
+        if (existing != null && existing.baseUrl.equals(baseUrl)) {
+            return new PodClient(version, baseUrl, existing.authenticationClient);
+        }
+        log.debug("Building client for pod {} at {}", companyId, baseUrl);
+        builds.increment();
+        return new PodClient(version, baseUrl, Feign.builder()
+                .encoder(encoder)
+                .decoder(decoder)
                 .client(okHttpClient)
-                .target(AuthenticationClient.class, podHost));
+                .target(AuthenticationClient.class, baseUrl));
     }
 
+    private void clientRemoved(RemovalNotification<String, PodClient> notification) {
+        if (notification.wasEvicted()) {
+            log.debug("Evicted client for pod {} ({})", notification.getKey(), notification.getCause());
+            evictions.increment();
+        }
+    }
 
+    private static String baseUrl(PodInfo podInfo) {
+        String sessionAuthUrl = podInfo.getPayload() != null ? podInfo.getPayload().getSessionAuthUrl() : null;
+        if (sessionAuthUrl == null) {
+            throw new IllegalStateException("No session auth URL for pod with company ID '" + podInfo.getCompanyId() + "'");
+        }
+        return sessionAuthUrl;
+    }
+
+    private static class PodClient {
+        // Version of the pod info the client was built from
+        final long version;
+        final String baseUrl;
+        final AuthenticationClient authenticationClient;
+
+        PodClient(long version, String baseUrl, AuthenticationClient authenticationClient) {
+            this.version = version;
+            this.baseUrl = baseUrl;
+            this.authenticationClient = authenticationClient;
+        }
+    }
 }
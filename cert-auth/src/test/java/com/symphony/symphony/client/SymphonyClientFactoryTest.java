@@ -33,14 +33,19 @@ public class SymphonyClientFactoryTest {
 
     private PodDirectory podDirectory;
 
+    private SymphonyClientConfiguration configuration;
+
+    private HttpClientBuilder httpClientBuilder;
 
     @Before
     public void setup() {
-        podDirectory = mock(PodDirectory.class);
+        podDirectory = new PodDirectory();
+        configuration = new SymphonyClientConfiguration();
+        configuration.setClientCacheMaximumSize(2);
         Client httpClient = mock(Client.class);
-        HttpClientBuilder httpClientBuilder = mock(HttpClientBuilder.class);
+        httpClientBuilder = mock(HttpClientBuilder.class);
         when(httpClientBuilder.buildClient()).thenReturn(httpClient);
-        symphonyClientFactory = new SymphonyClientFactory(httpClientBuilder, podDirectory);
+        symphonyClientFactory = new SymphonyClientFactory(httpClientBuilder, podDirectory, configuration);
     }
 
     /**
@@ -55,7 +60,7 @@ public class SymphonyClientFactoryTest {
         podInfo.setPayload(payload);
         payload.setPodUrl("pod-url");
         payload.setSessionAuthUrl("sessionauth-url");
-        when(podDirectory.getPodInfo("company-id")).thenReturn(podInfo);
+        podDirectory.addPodInfo(podInfo);
 
         PodInfo anotherPodInfo = new PodInfo();
         PodInfo.PodInfoPayload anotherPayload = new PodInfo.PodInfoPayload();
@@ -63,7 +68,7 @@ public class SymphonyClientFactoryTest {
         anotherPodInfo.setCompanyId("another-company-id");
         anotherPayload.setPodUrl("another-pod-url");
         anotherPayload.setSessionAuthUrl("another-sessionauth-url");
-        when(podDirectory.getPodInfo("another-company-id")).thenReturn(anotherPodInfo);
+        podDirectory.addPodInfo(anotherPodInfo);
 
 
         AuthenticationClient authenticationClient = symphonyClientFactory.getAuthenticationClient("company-id");
@@ -83,5 +88,89 @@ public class SymphonyClientFactoryTest {
 
     }
 
+    /**
+     * Test that the client is rebuilt when a pod moves to another host, and only then.
+     */
+    @Test
+    public void testClientRebuiltWhenSessionAuthUrlChanges() {
+        podDirectory.addPodInfo(podInfo("company-id", "pod-url", "https://pod.symphony.com:8444"));
+        AuthenticationClient authenticationClient = symphonyClientFactory.getAuthenticationClient("company-id");
+        assertTrue("Should target session auth URL", authenticationClient.toString().contains("url=https://pod.symphony.com:8444)"));
+
+        podDirectory.addPodInfo(podInfo("company-id", "another-pod-url", "https://pod.symphony.com:8444"));
+        assertSame("Same session auth URL should keep client", authenticationClient,
+                   symphonyClientFactory.getAuthenticationClient("company-id"));
+
+        podDirectory.addPodInfo(podInfo("company-id", "pod-url", "https://new-pod.symphony.com:8444"));
+        AuthenticationClient newAuthenticationClient = symphonyClientFactory.getAuthenticationClient("company-id");
+        assertNotSame("New session auth URL should build new client", authenticationClient, newAuthenticationClient);
+        assertTrue("Should target new session auth URL", newAuthenticationClient.toString().contains("url=https://new-pod.symphony.com:8444)"));
+    }
+
+    /**
+     * Test that pods added before the factory was created get a client.
+     */
+    @Test
+    public void testClientForPodAddedBeforeFactory() {
+        PodDirectory earlierPodDirectory = new PodDirectory();
+        earlierPodDirectory.addPodInfo(podInfo("company-id", "pod-url", "https://pod.symphony.com:8444"));
+        SymphonyClientFactory factory = new SymphonyClientFactory(httpClientBuilder, earlierPodDirectory, configuration);
+
+        AuthenticationClient authenticationClient = factory.getAuthenticationClient("company-id");
+        assertSame("Should return same object", authenticationClient, factory.getAuthenticationClient("company-id"));
+    }
 
-}
\ No newline at end of file
+    /**
+     * Test that unknown pods and pods without a session auth URL are an error.
+     */
+    @Test
+    public void testNoClientWithoutSessionAuthUrl() {
+        assertThrows(() -> symphonyClientFactory.getAuthenticationClient("unknown-company-id"));
+
+        podDirectory.addPodInfo(podInfo("company-id", "pod-url", "https://pod.symphony.com:8444"));
+        symphonyClientFactory.getAuthenticationClient("company-id");
+        podDirectory.addPodInfo(podInfo("company-id", "pod-url", null));
+        assertThrows(() -> symphonyClientFactory.getAuthenticationClient("company-id"));
+    }
+
+    /**
+     * Test that the least recently used client is evicted beyond the maximum size, and rebuilt when next used.
+     * Registering pods doesn't build clients, so it doesn't evict the clients of pods in use.
+     */
+    @Test
+    public void testLeastRecentlyUsedClientEvicted() {
+        podDirectory.addPodInfo(podInfo("company-1", "pod-url", "https://pod1.symphony.com:8444"));
+        podDirectory.addPodInfo(podInfo("company-2", "pod-url", "https://pod2.symphony.com:8444"));
+        AuthenticationClient client1 = symphonyClientFactory.getAuthenticationClient("company-1");
+        AuthenticationClient client2 = symphonyClientFactory.getAuthenticationClient("company-2");
+
+        podDirectory.addPodInfo(podInfo("company-3", "pod-url", "https://pod3.symphony.com:8444"));
+        assertSame("Should return same object", client1, symphonyClientFactory.getAuthenticationClient("company-1"));
+        symphonyClientFactory.getAuthenticationClient("company-3");
+
+        assertSame("Recently used client should be kept", client1,
+                   symphonyClientFactory.getAuthenticationClient("company-1"));
+        AuthenticationClient rebuiltClient2 = symphonyClientFactory.getAuthenticationClient("company-2");
+        assertNotSame("Evicted client should be rebuilt", client2, rebuiltClient2);
+        assertTrue("Should target session auth URL", rebuiltClient2.toString().contains("url=https://pod2.symphony.com:8444)"));
+    }
+
+    private static PodInfo podInfo(String companyId, String podUrl, String sessionAuthUrl) {
+        PodInfo podInfo = new PodInfo();
+        podInfo.setCompanyId(companyId);
+        PodInfo.PodInfoPayload payload = new PodInfo.PodInfoPayload();
+        payload.setPodUrl(podUrl);
+        payload.setSessionAuthUrl(sessionAuthUrl);
+        podInfo.setPayload(payload);
+        return podInfo;
+    }
+
+    private static void assertThrows(Runnable runnable) {
+        try {
+            runnable.run();
+            fail("Should throw IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
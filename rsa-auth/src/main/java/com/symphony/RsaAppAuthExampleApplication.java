@@ -15,7 +15,9 @@ package com.symphony;
 
 import com.symphony.example.authentication.TokenGenerator;
 import com.symphony.example.pods.PodDirectory;
+import com.symphony.example.pods.PodDirectoryConfiguration;
 import com.symphony.example.pods.WebhookConfiguration;
+import com.symphony.example.tokens.TokenStoreConfiguration;
 import com.symphony.symphony.client.HttpClientBuilder;
 import com.symphony.symphony.client.SymphonyClientConfiguration;
 
@@ -30,7 +32,8 @@ import org.springframework.context.annotation.Bean;
  * Main class for this Spring Boot application.
  */
 @SpringBootApplication
-@EnableConfigurationProperties({SymphonyClientConfiguration.class, WebhookConfiguration.class})
+@EnableConfigurationProperties({SymphonyClientConfiguration.class, WebhookConfiguration.class, TokenStoreConfiguration.class,
+                               PodDirectoryConfiguration.class})
 public class RsaAppAuthExampleApplication {
 
     public static void main(String[] args) {
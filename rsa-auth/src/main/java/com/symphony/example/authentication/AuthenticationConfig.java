@@ -17,6 +17,10 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Configuration for authentication
  *
@@ -32,4 +36,60 @@ public class AuthenticationConfig {
      * installed with the app on the pod.
      */
     private String privateKeyPemFilename;
+
+    /**
+     * Lifetime, in seconds, of the signed JWT this app uses to authenticate to the pod.  The same JWT is shared by all
+     * authentication requests and is re-signed in the background when half of its lifetime has elapsed.
+     */
+    private int authenticationJwtValiditySeconds = 30;
+
+    /**
+     * Maximum time, in seconds, the public key from a pod's signing cert is cached.  Cached keys also expire when the
+     * cert itself expires.
+     */
+    private int podCertificateCacheTtlSeconds = 3600;
+
+    /**
+     * Maximum number of pods for which signing cert public keys are cached.
+     */
+    private int podCertificateCacheMaximumSize = 10000;
+
+    /**
+     * Maximum number of verified Symphony JWTs remembered.  Each one is remembered until the JWT expires.
+     */
+    private int verifiedJwtCacheMaximumSize = 10000;
+
+    /**
+     * Number of threads that run authentication work which may wait on a pod, like exchanging tokens.  Requests
+     * don't hold a Tomcat thread while they wait for one of these.
+     */
+    private int podCallThreads = 64;
+
+    /**
+     * Maximum number of requests waiting for a pod call thread.  Requests beyond this are rejected with HTTP 503.
+     */
+    private int podCallQueueCapacity = 1000;
+
+    /**
+     * Number of threads that verify the signatures of Symphony JWTs.  Verification is CPU bound, so defaults to the
+     * number of cores.
+     */
+    private int jwtVerificationThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Maximum number of logins waiting for a JWT verification thread.  Logins beyond this are rejected with HTTP 503.
+     */
+    private int jwtVerificationQueueCapacity = 1000;
+
+    /**
+     * Percentiles published by the timers for each stage of the authentication flow (see {@link StageTimers}).  Empty
+     * for none.
+     */
+    private List<Double> stageTimerPercentiles = new ArrayList<>(Arrays.asList(0.5, 0.95, 0.99));
+
+    /**
+     * Maximum number of registered pods (company IDs) that get their own stage timers.  Stages for pods beyond this
+     * aren't timed.  Company IDs that aren't registered share the "unknown" timers.
+     */
+    private int stageTimerMaximumPods = 1000;
 }
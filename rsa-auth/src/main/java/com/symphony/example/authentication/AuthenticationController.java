@@ -16,16 +16,28 @@ package com.symphony.example.authentication;
 import com.symphony.example.users.User;
 import com.symphony.example.users.UserNotFoundException;
 import com.symphony.example.users.UserService;
+import com.symphony.symphony.client.PodUnavailableException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.WebUtils;
 
 import javax.security.auth.login.LoginException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
@@ -39,13 +51,26 @@ import static org.springframework.web.bind.annotation.RequestMethod.POST;
 @RestController
 public class AuthenticationController {
 
+    // Followed by the app token
+    private static final String RECEIPT_COOKIE_PREFIX = "app-auth-receipt-";
+
+    private static final String RECEIPT_HEADER = "X-App-Auth-Receipt";
+
+    private static final int MAXIMUM_BATCH_SIZE = 1000;
+
+    // Suggested wait before retrying a request rejected because the executors are saturated
+    private static final int RETRY_AFTER_SECONDS = 1;
+
     private final AuthenticationService authenticationService;
     private final UserService userService;
+    private final BoundedExecutor podCallExecutor;
 
     @Autowired
-    public AuthenticationController(AuthenticationService authenticationService, UserService userService) {
+    public AuthenticationController(AuthenticationService authenticationService, UserService userService,
+                                    @Qualifier(AuthenticationExecutors.POD_CALL_EXECUTOR) BoundedExecutor podCallExecutor) {
         this.authenticationService = authenticationService;
         this.userService = userService;
+        this.podCallExecutor = podCallExecutor;
     }
 
     /**
@@ -54,11 +79,30 @@ public class AuthenticationController {
      * pod. AuthenticationService will exchange tokens with Symphony back end.  AuthenticationService will
      * exchange tokens with Symphony back end.  The token from generated by this app is returned from this endpoint.
      *
+     * The token exchange with the pod runs on the pod call executor (see {@link AuthenticationExecutors}), so no Tomcat
+     * thread is held while waiting for the pod.
+     *
+     * If the token store returns a receipt for the token pair (see {@link com.symphony.example.tokens.TokenStore}), it
+     * is returned in the {@value #RECEIPT_HEADER} header, for the front end to send back in the /validate-tokens
+     * request.  It is also set in an HTTP only cookie named after the app token, which the browser sends back to
+     * /validate-tokens, for front ends that don't send the receipt.  The app runs in an iframe of the Symphony client, on
+     * another site, so the cookie is SameSite=None, which browsers only accept for Secure cookies, and browsers that
+     * block third party cookies (like Safari) never send it back.  The cookie expires with the token pair, so cookies
+     * from earlier logins don't pile up.
+     *
      * @return App token
      */
     @RequestMapping(method = POST, path = "/initiate-app-auth", produces = "application/json")
-    public HttpEntity<String> initiateAppAuth(@RequestBody String companyId) {
-        return new HttpEntity<>('"' + authenticationService.initiateAppAuthentication(companyId) + '"');
+    public CompletableFuture<HttpEntity<String>> initiateAppAuth(@RequestBody String companyId) {
+        return CompletableFuture.supplyAsync(() -> {
+            IssuedAppToken issued = authenticationService.initiateAppAuthentication(companyId);
+            HttpHeaders headers = new HttpHeaders();
+            if (issued.getReceipt() != null) {
+                headers.add(RECEIPT_HEADER, issued.getReceipt());
+                headers.add(HttpHeaders.SET_COOKIE, receiptCookie(issued));
+            }
+            return new HttpEntity<>('"' + issued.getAppToken() + '"', headers);
+        }, podCallExecutor);
     }
 
     /**
@@ -66,12 +110,14 @@ public class AuthenticationController {
      * in the request.  If this application supported sticky sessions, only the Symphony token would be required
      * since the application token could have been saved in session state.
      *
-     * @param request object containing both authentication tokens
+     * @param request object containing both authentication tokens and the pod ID
      * @return "Valid" (and HTTP 200) or "Invalid" (and HTTP 401)
      */
     @RequestMapping(method = POST, path = "/validate-tokens")
-    public ResponseEntity<String> validateTokens(@RequestBody ValidateTokensRequest request) {
-        if (authenticationService.validateTokens(request.getAppToken(), request.getSymphonyToken())) {
+    public ResponseEntity<String> validateTokens(@RequestBody ValidateTokensRequest request,
+                                                 HttpServletRequest servletRequest) {
+        if (authenticationService.validateTokens(request.getCompanyId(), request.getAppToken(), request.getSymphonyToken(),
+                                                 receipt(servletRequest, request))) {
             return new ResponseEntity<>("\"Valid\"", HttpStatus.OK);
         }
         else {
@@ -79,6 +125,36 @@ public class AuthenticationController {
         }
     }
 
+    /**
+     * Validate a batch of token pairs in one request, for example when a client reconnects several app modules.  Pairs
+     * may be for different pods.  A null pair, or one without its pod ID or either token, is not valid.
+     *
+     * @param requests token pairs, each with its pod ID
+     * @return HTTP 200 with a verdict for each pair, in the same order<br/>
+     *         HTTP 400 - no pairs, or more than {@value #MAXIMUM_BATCH_SIZE}
+     */
+    @RequestMapping(method = POST, path = "/validate-tokens/batch")
+    public ResponseEntity<List<ValidateTokensResult>> validateTokensBatch(@RequestBody List<ValidateTokensRequest> requests,
+                                                                          HttpServletRequest servletRequest) {
+        if (requests.isEmpty() || requests.size() > MAXIMUM_BATCH_SIZE) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        for (ValidateTokensRequest request : requests) {
+            if (request != null) {
+                request.setReceipt(receipt(servletRequest, request));
+            }
+        }
+        boolean[] valid = authenticationService.validateTokens(requests);
+
+        List<ValidateTokensResult> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < valid.length; i++) {
+            ValidateTokensRequest request = requests.get(i);
+            results.add(new ValidateTokensResult(request != null ? request.getAppToken() : null, valid[i]));
+        }
+        return new ResponseEntity<>(results, HttpStatus.OK);
+    }
+
     /**
      * Login using JWT.  If JWT is valid, tries to correlate Symphony username from JWT with a User in this
      * application.  If the user cannot be found using username, return response code that can be used by app
@@ -89,37 +165,35 @@ public class AuthenticationController {
      * @return HTTP 200 - JWT valid. Response body will contain indication of whether username was matched to an
      *                    application user<br/>
      *         HTTP 400 - JWT missing<br/>
-     *         HTTP 401 - JWT can't be parsed or can't be validated
+     *         HTTP 401 - JWT can't be parsed or can't be validated<br/>
+     *         HTTP 503 - Too many requests waiting on pods or on JWT verification
      */
     @RequestMapping(method = POST, path = "/login-with-jwt")
-    public ResponseEntity<LoginResponse> login(@RequestBody JwtLoginRequest request) {
-        LoginResponse response = new LoginResponse();
-        HttpStatus status = HttpStatus.OK;
-
+    public CompletableFuture<ResponseEntity<LoginResponse>> login(@RequestBody JwtLoginRequest request) {
         if (StringUtils.isEmpty(request.getJwt()) || StringUtils.isEmpty(request.getCompanyId())) {
+            LoginResponse response = new LoginResponse();
             response.setMessage("Missing JWT or pod ID in request");
-            status = HttpStatus.BAD_REQUEST;
+            return CompletableFuture.completedFuture(new ResponseEntity<>(response, HttpStatus.BAD_REQUEST));
+        }
+
+        // Verifying the JWT may need the pod's signing cert, and is handed to the bounded verification pool
+        return authenticationService.getUserFromJwt(request.getJwt(), request.getCompanyId())
+                                    .handle((symphonyUsername, e) -> e != null ? loginFailed(e) : loginWithJwt(symphonyUsername));
+    }
+
+    private ResponseEntity<LoginResponse> loginWithJwt(String symphonyUsername) {
+        LoginResponse response = new LoginResponse();
+        response.setJwtValid(true);
+        User user = userService.findBySymphonyId(symphonyUsername);
+        if (user == null) {
+            response.setMessage("Could not find user corresponding to Symphony username from JWT");
         }
         else {
-            try {
-                String symphonyUsername = authenticationService.getUserFromJwt(request.getJwt(), request.getCompanyId());
-                response.setJwtValid(true);
-                User user = userService.findBySymphonyId(symphonyUsername);
-                if (user == null) {
-                    response.setMessage("Could not find user corresponding to Symphony username from JWT");
-                }
-                else {
-                    response.setMessage("Hello " + user.getDisplayName());
-                    response.setUserDisplayName(user.getDisplayName());
-                    response.setUserFound(true);
-                }
-            } catch (LoginException e) {
-                response.setMessage("Could not parse or verify signature of JWT");
-                status = HttpStatus.UNAUTHORIZED;
-            }
+            response.setMessage("Hello " + user.getDisplayName());
+            response.setUserDisplayName(user.getDisplayName());
+            response.setUserFound(true);
         }
-
-        return new ResponseEntity<>(response, status);
+        return new ResponseEntity<>(response, HttpStatus.OK);
     }
     
     /**
@@ -132,42 +206,107 @@ public class AuthenticationController {
      * @param request request object, includes username, JWT and pod ID.
      * @return HTTP 200 - User found for provided username and JWT valid<br/>
      *         HTTP 400 - username or JWT+pod ID missing<br/>
-     *         HTTP 401 - User not found with provided username or JWT can't be parsed and validated
+     *         HTTP 401 - User not found with provided username or JWT can't be parsed and validated<br/>
+     *         HTTP 503 - Too many requests waiting on pods or on JWT verification
      */
     @RequestMapping(method = POST, path = "/login-with-username")
-    public ResponseEntity<LoginResponse> loginWithUsername(@RequestBody UsernameLoginRequest request) {
+    public CompletableFuture<ResponseEntity<LoginResponse>> loginWithUsername(@RequestBody UsernameLoginRequest request) {
         LoginResponse response = new LoginResponse();
-        HttpStatus status = HttpStatus.OK;
 
         if (StringUtils.isEmpty(request.getJwt()) || StringUtils.isEmpty(request.getCompanyId()) || StringUtils.isEmpty(request.getUsername())) {
             response.setMessage("Missing username, JWT or pod ID in request");
-            status = HttpStatus.BAD_REQUEST;
+            return CompletableFuture.completedFuture(new ResponseEntity<>(response, HttpStatus.BAD_REQUEST));
         }
-        else {
-            try {
-                User user = userService.get(request.getUsername());
-                String symphonyUsername = authenticationService.getUserFromJwt(request.getJwt(), request.getCompanyId());
-
-                // Save Symphony username in user record to record mapping
-                user.setSymphonyId(symphonyUsername);
-
-                response.setJwtValid(true);
-                response.setUserFound(true);
-                response.setMessage("Hello " + user.getDisplayName());
-                response.setUserDisplayName(user.getDisplayName());
-
-            } catch (UserNotFoundException e) {
-                response.setMessage("Could not find user with username '" + request.getUsername() + "'");
-                response.setUserFound(false);
-                status = HttpStatus.UNAUTHORIZED;
-            } catch (LoginException e) {
-                response.setMessage("Could not parse or verify signature of JWT");
-                status = HttpStatus.UNAUTHORIZED;
+
+        User user;
+        try {
+            user = userService.get(request.getUsername());
+        } catch (UserNotFoundException e) {
+            response.setMessage("Could not find user with username '" + request.getUsername() + "'");
+            response.setUserFound(false);
+            return CompletableFuture.completedFuture(new ResponseEntity<>(response, HttpStatus.UNAUTHORIZED));
+        }
+
+        return authenticationService.getUserFromJwt(request.getJwt(), request.getCompanyId()).handle((symphonyUsername, e) -> {
+            if (e != null) {
+                return loginFailed(e);
             }
+
+            // Save Symphony username in user record to record mapping
+            user.setSymphonyId(symphonyUsername);
+
+            response.setJwtValid(true);
+            response.setUserFound(true);
+            response.setMessage("Hello " + user.getDisplayName());
+            response.setUserDisplayName(user.getDisplayName());
+            return new ResponseEntity<>(response, HttpStatus.OK);
+        });
+    }
+
+    /**
+     * Response for a login whose JWT couldn't be verified.  Failures other than a bad JWT, a saturated executor or an
+     * unavailable pod are passed on to Spring.
+     */
+    private static ResponseEntity<LoginResponse> loginFailed(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        LoginResponse response = new LoginResponse();
+        if (cause instanceof LoginException) {
+            response.setMessage("Could not parse or verify signature of JWT");
+            return new ResponseEntity<>(response, HttpStatus.UNAUTHORIZED);
+        }
+        if (cause instanceof RejectedExecutionException) {
+            response.setMessage("Too many pending logins");
+            return new ResponseEntity<>(response, retryAfter(), HttpStatus.SERVICE_UNAVAILABLE);
         }
+        if (cause instanceof PodUnavailableException) {
+            response.setMessage(cause.getMessage());
+            return new ResponseEntity<>(response, retryAfter(((PodUnavailableException) cause).getRetryAfterSeconds()),
+                                        HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+    }
 
-        return new ResponseEntity<>(response, status);
+    private static String receiptCookie(IssuedAppToken issued) {
+        // App tokens are URL safe base64, so can be part of a cookie name
+        return RECEIPT_COOKIE_PREFIX + issued.getAppToken() + "=" + issued.getReceipt()
+               + "; Max-Age=" + issued.getReceiptTtlSeconds()
+               + "; Path=/validate-tokens; HttpOnly; Secure; SameSite=None";
+    }
+
+    private static String receipt(HttpServletRequest servletRequest, ValidateTokensRequest request) {
+        if (request.getReceipt() != null || request.getAppToken() == null) {
+            return request.getReceipt();
+        }
+        Cookie cookie = WebUtils.getCookie(servletRequest, RECEIPT_COOKIE_PREFIX + request.getAppToken());
+        return cookie != null ? cookie.getValue() : null;
+    }
+
+    /**
+     * Work for the asynchronous endpoints is rejected when too many requests are already waiting on pods.  Clients are
+     * asked to retry after {@value #RETRY_AFTER_SECONDS} second.
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> podCallsSaturated() {
+        return new ResponseEntity<>("\"Too many pending requests\"", retryAfter(), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Calls to a pod aren't made while its circuit breaker is open, or while too many calls to it are in flight.  Clients
+     * are asked to retry once the pod may be called again.
+     */
+    @ExceptionHandler(PodUnavailableException.class)
+    public ResponseEntity<String> podUnavailable(PodUnavailableException e) {
+        return new ResponseEntity<>('"' + e.getMessage() + '"', retryAfter(e.getRetryAfterSeconds()),
+                                    HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    private static HttpHeaders retryAfter() {
+        return retryAfter(RETRY_AFTER_SECONDS);
+    }
+
+    private static HttpHeaders retryAfter(long seconds) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+        return headers;
     }
-    
-    
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.symphony.example.authentication;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The bounded executors used by the authentication flow, sized from {@link AuthenticationConfig}.
+ */
+@Configuration
+public class AuthenticationExecutors {
+
+    public static final String POD_CALL_EXECUTOR = "podCallExecutor";
+
+    public static final String JWT_VERIFICATION_EXECUTOR = "jwtVerificationExecutor";
+
+    /**
+     * Runs the authentication work that may have to wait on a pod.  The asynchronous endpoints in
+     * {@link AuthenticationController} hand their work to this executor so that Tomcat's request threads are released
+     * while the pod responds, and a slow pod can't tie up the threads needed to serve cheap requests.
+     */
+    @Bean(name = POD_CALL_EXECUTOR)
+    public BoundedExecutor podCallExecutor(AuthenticationConfig authenticationConfig) {
+        return new BoundedExecutor("pod-calls", authenticationConfig.getPodCallThreads(),
+                                   authenticationConfig.getPodCallQueueCapacity());
+    }
+
+    /**
+     * Verifies the signatures of Symphony JWTs.  RSA verification is CPU bound, so running it on as many threads as
+     * there are cores is as fast as it gets.  Running it on more threads during a login storm only makes every request
+     * on the box slower.
+     */
+    @Bean(name = JWT_VERIFICATION_EXECUTOR)
+    public BoundedExecutor jwtVerificationExecutor(AuthenticationConfig authenticationConfig) {
+        return new BoundedExecutor("jwt-verifications", authenticationConfig.getJwtVerificationThreads(),
+                                   authenticationConfig.getJwtVerificationQueueCapacity());
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.symphony.example.utils.RateCounter;
+import com.symphony.example.web.AppConfig;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signs the JWT this app uses to authenticate itself to Symphony pods.  The claims are only the app ID and an
+ * expiration date, so rather than performing an RSA signature for every authentication request, the current signed
+ * JWT is kept and shared by all requests.  It is re-signed in the background when half of its validity has elapsed,
+ * and is also re-signed on demand if it gets close to expiring or if the private key has been rotated.
+ *
+ * The number of signatures performed is exposed through the actuator metrics endpoint.
+ */
+@Component
+@Slf4j
+public class AuthenticationJwtSigner implements PublicMetrics {
+
+    private final AppConfig appConfig;
+
+    private final PrivateKeyHolder privateKeyHolder;
+
+    private final long validityMillis;
+
+    private final RateCounter signatures = new RateCounter();
+
+    @VisibleForTesting
+    Clock clock = Clock.systemUTC();
+
+    private volatile SignedJwt current;
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public AuthenticationJwtSigner(AppConfig appConfig, PrivateKeyHolder privateKeyHolder,
+                                   AuthenticationConfig authenticationConfig) {
+        this.appConfig = appConfig;
+        this.privateKeyHolder = privateKeyHolder;
+        this.validityMillis = TimeUnit.SECONDS.toMillis(authenticationConfig.getAuthenticationJwtValiditySeconds());
+    }
+
+    /**
+     * Signs the first JWT and schedules the background refresh.
+     */
+    @PostConstruct
+    public void start() {
+        refresh();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "authentication-jwt-signer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = validityMillis / 2;
+        scheduler.scheduleAtFixedRate(this::refreshQuietly, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background refresh.
+     */
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns a JWT containing this app's ID, signed with this app's private key.  At least a quarter of the JWT's
+     * validity remains when it is returned.
+     */
+    public String getAuthenticationJwt() {
+        SignedJwt signedJwt = current;
+        if (!isUsable(signedJwt)) {
+            synchronized (this) {
+                signedJwt = current;
+                if (!isUsable(signedJwt)) {
+                    signedJwt = refresh();
+                }
+            }
+        }
+        return signedJwt.jwt;
+    }
+
+    /**
+     * Signs a new JWT and makes it the current one.
+     */
+    @VisibleForTesting
+    synchronized SignedJwt refresh() {
+        PrivateKey privateKey = privateKeyHolder.getPrivateKey();
+        long expiresAt = clock.millis() + validityMillis;
+        SignedJwt signedJwt = new SignedJwt(createSignedAuthenticationJwt(appConfig.getAppId(), privateKey, expiresAt),
+                                            privateKey, expiresAt);
+        signatures.increment();
+        current = signedJwt;
+        return signedJwt;
+    }
+
+    @VisibleForTesting
+    long getSignatureCount() {
+        return signatures.getTotal();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(new Metric<>("counter.authentication.jwt.signatures", signatures.getTotal()),
+                             new Metric<>("gauge.authentication.jwt.signatures.per-second", signatures.getRatePerSecond()));
+    }
+
+    private boolean isUsable(SignedJwt signedJwt) {
+        return signedJwt != null
+               && signedJwt.privateKey == privateKeyHolder.getPrivateKey()
+               && signedJwt.expiresAt - clock.millis() > validityMillis / 4;
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // Keep the scheduler alive.  Requests will re-sign on demand if the current JWT gets too old.
+            log.error("Couldn't refresh app authentication JWT", e);
+        }
+    }
+
+    /**
+     * Creates a JWT with the provided app ID, signed with the provided private key.
+     *
+     * @param appId the app ID to initiateAppAuth; will be verified by the pod
+     * @param privateKey the private RSA key to be used to sign the authentication request; will be checked on the pod against
+     * the public key stored for the app
+     * @param expiresAt expiration date of the JWT in millis
+     * @return the signed JWT.  Each call performs an RSA signature.
+     */
+    public static String createSignedAuthenticationJwt(String appId, Key privateKey, long expiresAt) {
+
+        return Jwts.builder()
+                   .setSubject(appId)
+                   .setExpiration(new Date(expiresAt))
+                   .signWith(SignatureAlgorithm.RS512, privateKey)
+                   .compact();
+    }
+
+    /**
+     * A signed JWT along with the key used to sign it and its expiration date.
+     */
+    @VisibleForTesting
+    static class SignedJwt {
+        final String jwt;
+        final PrivateKey privateKey;
+        final long expiresAt;
+
+        SignedJwt(String jwt, PrivateKey privateKey, long expiresAt) {
+            this.jwt = jwt;
+            this.privateKey = privateKey;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -13,29 +13,22 @@
 
 package com.symphony.example.authentication;
 
-import com.google.common.annotations.VisibleForTesting;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.symphony.example.utils.SecurityKeyUtils;
-import com.symphony.example.web.AppConfig;
+import com.symphony.example.tokens.Token;
+import com.symphony.example.tokens.TokenPair;
+import com.symphony.example.tokens.TokenStore;
 import com.symphony.symphony.client.*;
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jws;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import javax.security.auth.login.LoginException;
-import java.security.GeneralSecurityException;
-import java.security.Key;
-import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.cert.X509Certificate;
-import java.util.Date;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Service which handles App Authentication flow between Symphony and integrated app.  Flow is initiated by exchanging
@@ -47,33 +40,46 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class AuthenticationService {
 
-    // Token cache - maps app token to symphony token.  In this implementation, pod ID is ignored since the assumption
-    // is that both tokens are random unique strings.  Also, this won't work for horizontally scaled servers without
-    // sticky sessions since it is a local cache
-    @VisibleForTesting
-    Cache<String, String> tokenCache;
+    // Token store - maps app token to symphony token, per pod.  In memory by default, or shared by all servers (see TokenStore)
+    private TokenStore tokenStore;
 
     // Factory / manager for REST clients that talk to Symphony pods over TLS with client certs
     private SymphonyClientFactory symphonyClientFactory;
 
     private TokenGenerator tokenGenerator;
 
-    private AuthenticationConfig authenticationConfig;
+    // Provides the signed JWT used to authenticate this app to the pod.  Shared by concurrent requests.
+    private AuthenticationJwtSigner authenticationJwtSigner;
 
-    private AppConfig appConfig;
+    // Public keys from the pods' JWT signing certs
+    private PodCertificateCache podCertificateCache;
+
+    // Usernames from JWTs that have already been verified
+    private VerifiedJwtCache verifiedJwtCache;
+
+    // Checks and verifies JWTs from Symphony
+    private final JwtVerifier jwtVerifier = new JwtVerifier();
+
+    // Runs the work that waits on a pod, like fetching its signing cert
+    private BoundedExecutor podCallExecutor;
+
+    // Runs the CPU bound JWT signature checks
+    private BoundedExecutor jwtVerificationExecutor;
+
+    // Times each stage of the flow, per pod
+    private StageTimers stageTimers;
 
     @Autowired
-    public AuthenticationService(SymphonyClientFactory symphonyClientFactory, TokenGenerator tokenGenerator, AppConfig appConfig, AuthenticationConfig authenticationConfig) {
+    public AuthenticationService(SymphonyClientFactory symphonyClientFactory, TokenGenerator tokenGenerator, AuthenticationJwtSigner authenticationJwtSigner, PodCertificateCache podCertificateCache, VerifiedJwtCache verifiedJwtCache, TokenStore tokenStore, @Qualifier(AuthenticationExecutors.POD_CALL_EXECUTOR) BoundedExecutor podCallExecutor, @Qualifier(AuthenticationExecutors.JWT_VERIFICATION_EXECUTOR) BoundedExecutor jwtVerificationExecutor, StageTimers stageTimers) {
         this.symphonyClientFactory = symphonyClientFactory;
         this.tokenGenerator = tokenGenerator;
-        this.appConfig = appConfig;
-        this.authenticationConfig = authenticationConfig;
-
-        // Tokens are short lived.  Max is just protection from DDoS attacks
-        tokenCache = CacheBuilder.newBuilder()
-                .maximumSize(1000)
-                .expireAfterWrite(5, TimeUnit.MINUTES)
-                .build();
+        this.authenticationJwtSigner = authenticationJwtSigner;
+        this.podCertificateCache = podCertificateCache;
+        this.verifiedJwtCache = verifiedJwtCache;
+        this.tokenStore = tokenStore;
+        this.podCallExecutor = podCallExecutor;
+        this.jwtVerificationExecutor = jwtVerificationExecutor;
+        this.stageTimers = stageTimers;
     }
 
     /**
@@ -85,79 +91,102 @@ public class AuthenticationService {
      * pod.
      *
      * @param companyId ID of company/pod, supplied from Symphony Front End
-     * @return token app token
+     * @return app token, and the receipt for the token pair if the token store returned one
      */
 
-    public String initiateAppAuthentication(String companyId) {
-        String appToken = tokenGenerator.generateToken();
+    public IssuedAppToken initiateAppAuthentication(String companyId) {
+        Token token = tokenGenerator.generateToken();
+        String appToken = token.toString();
         log.info("App Token: {}", appToken);
 
-        String privateKeyPem = SecurityKeyUtils.readPemFromFile(authenticationConfig.getPrivateKeyPemFilename());
-        PrivateKey privateKey;
-        try {
-            privateKey = SecurityKeyUtils.parseRSAPrivateKey(privateKeyPem);
-        } catch (GeneralSecurityException e) {
-            throw new RuntimeException("Error parsing private key PEM file", e);
-        }
-
-        String authToken = createSignedAuthenticationJwt(appConfig.getAppId(), privateKey);
-        log.info("App authentication JWT: {}", authToken);
-
+        // Fails for a pod that isn't registered, before any other work is done for it
         AuthenticationClient authenticationClient = symphonyClientFactory.getAuthenticationClient(companyId);
 
+        String authToken = stageTimers.time("sign-jwt", companyId, authenticationJwtSigner::getAuthenticationJwt);
+        log.info("App authentication JWT: {}", authToken);
 
         AuthenticateRequest authenticationRequest = new AuthenticateRequest(appToken, authToken);
-        AuthenticateResponse authenticateResponse = authenticationClient.authenticate(authenticationRequest);
+        AuthenticateResponse authenticateResponse = stageTimers.time("pod-authenticate", companyId,
+                                                                     () -> authenticationClient.authenticate(authenticationRequest));
         String symphonyToken = authenticateResponse.getSymphonyToken();
 
         log.info("App Token: {}, Symphony Token: {}]", appToken, symphonyToken);
-        tokenCache.put(appToken, symphonyToken);
-
-        InitiateAuthResponse response = new InitiateAuthResponse(authToken, appToken);
+        String receipt = stageTimers.time("token-store-put", companyId, () -> tokenStore.put(companyId, token, symphonyToken));
 
-        return appToken;
+        return new IssuedAppToken(appToken, receipt, tokenStore.getTtlSeconds());
     }
 
     /**
-     * Creates a JWT with the provided app ID, signed with the provided private key.  Expiration date is set for
-     * 5 seconds in the future.
+     * Validates token pairs.  Returns true iff both tokens present and exist in the token store for the pod.
      *
-     * @param appId the app ID to initiateAppAuth; will be verified by the pod
-     * @param privateKey the private RSA key to be used to sign the authentication request; will be checked on the pod against
-     * the public key stored for the app
+     * @param companyId ID of company/pod the tokens were exchanged with
+     * @param appToken application token
+     * @param symphonyToken symphony token
+     * @param receipt receipt returned with the app token, if the token store returned one
+     * @return true if tokens validate, false otherwise
      */
-    private String createSignedAuthenticationJwt(String appId, Key privateKey) {
-
-        return Jwts.builder()
-                   .setSubject(appId)
-                   .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5)))
-                   .signWith(SignatureAlgorithm.RS512, privateKey)
-                   .compact();
+    public boolean validateTokens(String companyId, String appToken, String symphonyToken, String receipt) {
+        if (companyId != null && appToken != null && symphonyToken != null) {
+            Token token;
+            try {
+                token = Token.parse(appToken);
+            } catch (IllegalArgumentException e) {
+                // Not a token generated by this app
+                return false;
+            }
+            return stageTimers.check("validate-tokens", companyId,
+                                     () -> tokenStore.validate(companyId, token, symphonyToken, receipt));
+        }
+        return false;
     }
 
     /**
-     * Validates token pairs.  Returns true iff both tokens present and exist in the token cache.
+     * Validates a batch of token pairs, which may be for different pods, in one pass over the token store.
      *
-     * @param appToken application token
-     * @param symphonyToken symphony token
-     * @return true if tokens validate, false otherwise
+     * @param requests token pairs, with their pod IDs and receipts.  Null or incomplete pairs don't validate.
+     * @return for each pair, in the same order, true if the tokens validate
      */
-    public boolean validateTokens(String appToken, String symphonyToken) {
-        if (appToken != null && symphonyToken != null) {
-            String savedSymphonyToken = tokenCache.getIfPresent(appToken);
-            return symphonyToken.equals(savedSymphonyToken);
+    public boolean[] validateTokens(List<ValidateTokensRequest> requests) {
+        boolean[] valid = new boolean[requests.size()];
+
+        // Only pairs that could be valid are looked up
+        List<TokenPair> tokenPairs = new ArrayList<>(requests.size());
+        List<Integer> indexes = new ArrayList<>(requests.size());
+        for (int i = 0; i < valid.length; i++) {
+            ValidateTokensRequest request = requests.get(i);
+            if (request != null && request.getCompanyId() != null && request.getAppToken() != null
+                && request.getSymphonyToken() != null) {
+                try {
+                    tokenPairs.add(new TokenPair(request.getCompanyId(), Token.parse(request.getAppToken()),
+                                                 request.getSymphonyToken(), request.getReceipt()));
+                    indexes.add(i);
+                } catch (IllegalArgumentException e) {
+                    // Not a token generated by this app
+                }
+            }
         }
-        return false;
+
+        boolean[] stored = stageTimers.time("validate-tokens-batch", null, () -> tokenStore.validateAll(tokenPairs));
+        for (int i = 0; i < stored.length; i++) {
+            valid[indexes.get(i)] = stored[i];
+        }
+        return valid;
     }
 
     /**
      * Validates JWT received from Javascript front end (via Symphony) by checking signature against public signing
-     * cert retrieved from Symphony pod.  If JWT is invalid, throw LoginException otherwise return user name from
+     * cert retrieved from Symphony pod.  If JWT is invalid, fail with LoginException otherwise return user name from
      * JWT.  A real implementation of this would use user ID from the JWT to look up a User object from a user store
      * and return that User object.
      *
-     * This method gets the signing cert for the pod for every request.  A better implementation would be to retrieve
-     * it once and cache it.
+     * The public key from the pod's signing cert is cached (see {@link PodCertificateCache}), so the pod is only
+     * called when the cached key is missing or has expired.  JWTs that have been verified are remembered until they
+     * expire (see {@link VerifiedJwtCache}), so verifying the same JWT again is just a lookup.
+     *
+     * Nothing here blocks the calling thread.  Fetching the pod's signing cert runs on the pod call executor, and the
+     * signature check runs on the JWT verification executor, which has a thread per core (see
+     * {@link AuthenticationExecutors}).  When either one is saturated the returned future fails with a
+     * {@link RejectedExecutionException}.
      *
      * The format of the JWT claims is:
      * {@code
@@ -185,41 +214,74 @@ public class AuthenticationService {
      *
      * @param jwt JSON Web Token from Symphony which includes user identification information
      * @param companyId company ID for pod which generated the JWT
-     * @return user's symphony username
-     * @throws LoginException if JWT is invalid
+     * @return user's symphony username.  Fails with a {@link LoginException} if the JWT is invalid.
      */
-    public String getUserFromJwt(String jwt, String companyId) throws LoginException {
-
-        AuthenticationClient authenticationClient = symphonyClientFactory.getAuthenticationClient(companyId);
+    public CompletableFuture<String> getUserFromJwt(String jwt, String companyId) {
+        long start = stageTimers.start();
+        return userFromJwt(jwt, companyId).whenComplete(
+                (username, failure) -> stageTimers.record("login", companyId, StageTimers.outcome(failure), start));
+    }
 
-        // Don't trust a JWT that isn't signed!!!
-        if (!Jwts.parser().isSigned(jwt)) {
-            throw new LoginException("JWT is not signed");
+    private CompletableFuture<String> userFromJwt(String jwt, String companyId) {
+        String username = verifiedJwtCache.getUsername(jwt, companyId);
+        if (username != null) {
+            return CompletableFuture.completedFuture(username);
         }
 
-        // Get the cert from the pod.  Should probably cache this.
-        PodCertificate podCertificate = authenticationClient.getPodCertificate();
+        // Checks that don't need the pod's key come first, so that garbage is rejected cheaply
+        JwtVerifier.SignedJwt signedJwt;
+        try {
+            signedJwt = jwtVerifier.parse(jwt);
+        } catch (LoginException e) {
+            return failed(e);
+        }
 
-        // Get the public key from the cert
-        PublicKey publicKey;
+        // Get the public key from the pod's signing cert.  Only goes through the pod call executor if it isn't cached.
+        PublicKey cachedPublicKey = podCertificateCache.getCachedPublicKey(companyId);
+        CompletableFuture<PublicKey> publicKey;
         try {
-            X509Certificate x509Certificate = SecurityKeyUtils.parseX509Certificate(podCertificate.getCertificate());
-            publicKey = x509Certificate.getPublicKey();
-        } catch (GeneralSecurityException e) {
-            throw new LoginException("Couldn't parse cert string from Symphony into X509Certificate object:" + e.getMessage());
+            publicKey = cachedPublicKey != null
+                    ? CompletableFuture.completedFuture(cachedPublicKey)
+                    : CompletableFuture.supplyAsync(() -> fetchPublicKey(companyId), podCallExecutor);
+        } catch (RejectedExecutionException e) {
+            return failed(e);
         }
 
-        Jws<Claims> claims = Jwts.parser()
-                                 .setSigningKey(publicKey)
-                                 .parseClaimsJws(jwt);
+        return publicKey.thenApplyAsync(key -> verify(jwt, companyId, signedJwt, key), jwtVerificationExecutor);
+    }
 
-        // Double check that the algorithm is the expected RS512 to ensure cookie hasn't been forged and signed using
-        // public key.
-        if (!SignatureAlgorithm.RS512.name().equals(claims.getHeader().getAlgorithm())) {
-            throw new LoginException("Invalid JWT algorithm: " + claims.getHeader().getAlgorithm());
+    private PublicKey fetchPublicKey(String companyId) {
+        long start = stageTimers.start();
+        String outcome = StageTimers.ERROR;
+        try {
+            PublicKey publicKey = podCertificateCache.getPublicKey(companyId);
+            outcome = StageTimers.SUCCESS;
+            return publicKey;
+        } catch (LoginException e) {
+            throw new CompletionException(e);
+        } finally {
+            stageTimers.record("fetch-pod-cert", companyId, outcome, start);
         }
+    }
+
+    private String verify(String jwt, String companyId, JwtVerifier.SignedJwt signedJwt, PublicKey publicKey) {
+        long start = stageTimers.start();
+        JwtClaims claims;
+        try {
+            claims = jwtVerifier.verify(signedJwt, publicKey);
+        } catch (LoginException e) {
+            stageTimers.record("verify-jwt", companyId, StageTimers.INVALID, start);
+            throw new CompletionException(e);
+        }
+        stageTimers.record("verify-jwt", companyId, StageTimers.SUCCESS, start);
+
+        verifiedJwtCache.put(jwt, companyId, claims.getUsername(), claims.getExpiration());
+        return claims.getUsername();
+    }
 
-        Map userMap = (Map) claims.getBody().get("user");
-        return (String) userMap.get("username");
+    private static <T> CompletableFuture<T> failed(Throwable failure) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(failure);
+        return future;
     }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.symphony.example.authentication;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor with a fixed number of threads and a bounded queue, for authentication work that must not be allowed to
+ * pile up.  When all threads are busy and the queue is full, new work is rejected with a
+ * {@link RejectedExecutionException}, and the endpoints respond with HTTP 503.  See {@link AuthenticationExecutors}
+ * for the executors the app uses.
+ *
+ * Active threads, queued work, rejections and time spent queued are exposed through the actuator metrics endpoint,
+ * named after the executor.  The average wait is the increase in the wait time counter divided by the increase in the
+ * executed counter.
+ */
+public class BoundedExecutor implements Executor, PublicMetrics {
+
+    private final String name;
+
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder executed = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder waitNanos = new LongAdder();
+
+    /**
+     * @param name used in thread and metric names, like "pod-calls"
+     * @param threads number of threads running the work
+     * @param queueCapacity maximum number of tasks waiting for a thread
+     */
+    public BoundedExecutor(String name, int threads, int queueCapacity) {
+        this.name = name;
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                          new ArrayBlockingQueue<>(queueCapacity),
+                                          runnable -> {
+                                              Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+                                              thread.setDaemon(true);
+                                              return thread;
+                                          });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                waitNanos.add(System.nanoTime() - queuedAt);
+                executed.increment();
+                command.run();
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the executor.  Work still queued is abandoned.
+     */
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    @VisibleForTesting
+    int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    @VisibleForTesting
+    long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(new Metric<>("gauge.authentication." + name + ".active", executor.getActiveCount()),
+                             new Metric<>("gauge.authentication." + name + ".queued", executor.getQueue().size()),
+                             new Metric<>("counter.authentication." + name + ".executed", executed.sum()),
+                             new Metric<>("counter.authentication." + name + ".rejected", rejected.sum()),
+                             new Metric<>("counter.authentication." + name + ".wait-millis",
+                                          TimeUnit.NANOSECONDS.toMillis(waitNanos.sum())));
+    }
+}
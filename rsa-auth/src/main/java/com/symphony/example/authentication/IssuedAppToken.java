@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import lombok.Value;
+
+/**
+ * App token issued by {@link AuthenticationService#initiateAppAuthentication(String)}, with the receipt for the token
+ * pair if the token store returned one.
+ */
+@Value
+public class IssuedAppToken {
+    // Token sent to the pod, and returned to the front end
+    private String appToken;
+
+    // Receipt the front end must send back with the token pair, or null if the token store holds the pair itself
+    private String receipt;
+
+    // How long, in seconds, the receipt can be used
+    private int receiptTtlSeconds;
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import javax.security.auth.login.LoginException;
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Reads the claims this app uses (sub, exp, nbf, user.username and user.companyId) from a JWT's JSON payload with a
+ * streaming parser.  Other claims are skipped without being turned into objects, so reading a JWT only allocates the
+ * few strings that are kept.
+ */
+public final class JwtClaimReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private JwtClaimReader() {
+    }
+
+    /**
+     * Reads the claims from a JWT payload.
+     *
+     * @param payload decoded JWT payload (a JSON object)
+     * @return the claims.  Claims that are missing, or don't have the expected type, are null.
+     * @throws LoginException if the payload isn't a JSON object
+     */
+    public static JwtClaims read(byte[] payload) throws LoginException {
+        String subject = null;
+        String username = null;
+        String companyId = null;
+        Date expiration = null;
+        Date notBefore = null;
+
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new LoginException("Malformed JWT");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "sub":
+                        subject = text(parser, value);
+                        break;
+                    case "exp":
+                        expiration = date(parser, value);
+                        break;
+                    case "nbf":
+                        notBefore = date(parser, value);
+                        break;
+                    case "user":
+                        if (value != JsonToken.START_OBJECT) {
+                            parser.skipChildren();
+                            break;
+                        }
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String userField = parser.getCurrentName();
+                            JsonToken userValue = parser.nextToken();
+                            if ("username".equals(userField)) {
+                                username = text(parser, userValue);
+                            } else if ("companyId".equals(userField)) {
+                                companyId = text(parser, userValue);
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                        break;
+                    default:
+                        // Skips nested objects and arrays, does nothing for a scalar
+                        parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new LoginException("Malformed JWT: " + e.getMessage());
+        }
+
+        return new JwtClaims(subject, username, companyId, expiration, notBefore);
+    }
+
+    private static String text(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    /**
+     * Reads a numeric date, which is in seconds since the epoch.
+     */
+    private static Date date(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isNumeric()) {
+            return new Date(parser.getLongValue() * 1000);
+        }
+        parser.skipChildren();
+        return null;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import lombok.Value;
+
+import java.util.Date;
+
+/**
+ * The claims this app uses from a Symphony JWT.  Everything else in the JWT (names, titles, avatar URLs, etc.) is
+ * skipped when the JWT is read.
+ */
+@Value
+public class JwtClaims {
+
+    // Symphony user ID, or null if missing
+    private String subject;
+
+    // Symphony username, or null if missing
+    private String username;
+
+    // Company (pod) ID of the user, or null if missing
+    private String companyId;
+
+    // Expiration date of the JWT, or null if it doesn't expire
+    private Date expiration;
+
+    // Date before which the JWT isn't valid, or null if it is valid straight away
+    private Date notBefore;
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+
+import javax.security.auth.login.LoginException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.time.Clock;
+import java.util.Base64;
+
+/**
+ * Verifies the RS512 signed JWTs that Symphony issues for users.  The JWT is split once, and checks that don't need
+ * the pod's key (three parts, a signature, an RS512 header) are done first, so that garbage is rejected without any
+ * RSA work.  Only the claims this app uses are read from a verified JWT (see {@link JwtClaimReader}).
+ *
+ * Every failure is reported as a LoginException.
+ */
+public class JwtVerifier {
+
+    private static final String ALGORITHM = "RS512";
+
+    private static final String SIGNATURE_ALGORITHM = "SHA512withRSA";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @VisibleForTesting
+    Clock clock = Clock.systemUTC();
+
+    /**
+     * Splits a JWT and checks its header.  Doesn't verify the signature.
+     *
+     * @param jwt JSON Web Token from Symphony
+     * @return the JWT's parts, ready to be verified
+     * @throws LoginException if the JWT is malformed, isn't signed, or isn't signed with RS512
+     */
+    public SignedJwt parse(String jwt) throws LoginException {
+        int headerEnd = jwt.indexOf('.');
+        int payloadEnd = headerEnd < 0 ? -1 : jwt.indexOf('.', headerEnd + 1);
+        if (payloadEnd < 0 || jwt.indexOf('.', payloadEnd + 1) >= 0) {
+            throw new LoginException("Malformed JWT");
+        }
+        if (payloadEnd == jwt.length() - 1) {
+            // Don't trust a JWT that isn't signed!!!
+            throw new LoginException("JWT is not signed");
+        }
+
+        // Check that the algorithm is the expected RS512 to ensure the JWT hasn't been forged and signed using the
+        // public key as an HMAC secret
+        JsonNode header = readJson(jwt.substring(0, headerEnd));
+        String algorithm = header.path("alg").asText();
+        if (!ALGORITHM.equals(algorithm)) {
+            throw new LoginException("Invalid JWT algorithm: " + algorithm);
+        }
+
+        return new SignedJwt(jwt.substring(0, payloadEnd), jwt.substring(headerEnd + 1, payloadEnd),
+                             jwt.substring(payloadEnd + 1));
+    }
+
+    /**
+     * Verifies the signature of a JWT, checks that it is current, and reads the user's claims.
+     *
+     * @param signedJwt JWT returned by {@link #parse(String)}
+     * @param publicKey public key from the pod's signing cert
+     * @return the claims this app uses
+     * @throws LoginException if the signature doesn't match the key, or the JWT has expired or isn't valid yet
+     */
+    public JwtClaims verify(SignedJwt signedJwt, PublicKey publicKey) throws LoginException {
+        boolean verified;
+        try {
+            Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            signature.initVerify(publicKey);
+            signature.update(signedJwt.signingInput.getBytes(StandardCharsets.US_ASCII));
+            verified = signature.verify(decode(signedJwt.signature));
+        } catch (GeneralSecurityException e) {
+            throw new LoginException("Couldn't verify JWT signature: " + e.getMessage());
+        }
+        if (!verified) {
+            throw new LoginException("JWT signature doesn't match pod's signing cert");
+        }
+
+        JwtClaims claims = JwtClaimReader.read(decode(signedJwt.payload));
+        long now = clock.millis();
+        if (claims.getExpiration() != null && now >= claims.getExpiration().getTime()) {
+            throw new LoginException("JWT has expired");
+        }
+        if (claims.getNotBefore() != null && now < claims.getNotBefore().getTime()) {
+            throw new LoginException("JWT is not valid yet");
+        }
+        if (claims.getUsername() == null) {
+            throw new LoginException("JWT has no username");
+        }
+        return claims;
+    }
+
+    private static JsonNode readJson(String part) throws LoginException {
+        try {
+            JsonNode json = OBJECT_MAPPER.readTree(decode(part));
+            if (json == null || !json.isObject()) {
+                throw new LoginException("Malformed JWT");
+            }
+            return json;
+        } catch (IOException e) {
+            throw new LoginException("Malformed JWT: " + e.getMessage());
+        }
+    }
+
+    private static byte[] decode(String part) throws LoginException {
+        try {
+            return Base64.getUrlDecoder().decode(part);
+        } catch (IllegalArgumentException e) {
+            throw new LoginException("Malformed JWT: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A JWT whose header has been checked, but whose signature hasn't been verified.
+     */
+    public static class SignedJwt {
+        // Encoded header and payload, which the signature covers
+        private final String signingInput;
+        private final String payload;
+        private final String signature;
+
+        private SignedJwt(String signingInput, String payload, String signature) {
+            this.signingInput = signingInput;
+            this.payload = payload;
+            this.signature = signature;
+        }
+    }
+}
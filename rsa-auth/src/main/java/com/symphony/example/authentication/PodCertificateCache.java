@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.symphony.example.utils.SecurityKeyUtils;
+import com.symphony.example.utils.SingleFlight;
+import com.symphony.symphony.client.PodCertificate;
+import com.symphony.symphony.client.SymphonyClientFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.security.auth.login.LoginException;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the public key from each pod's JWT signing certificate, keyed by company ID.  An entry expires when the
+ * certificate expires or when the configured TTL elapses, whichever comes first.  Once 80% of an entry's lifetime has
+ * elapsed, the next lookup triggers a background refresh and keeps using the cached key until the refreshed one
+ * arrives.  In steady state, verifying a JWT doesn't need a call to the pod.
+ *
+ * Fetches are coalesced per pod: initial loads, reloads of expired entries and background refreshes for the same
+ * company ID that overlap in time share a single call to the pod.
+ */
+@Component
+@Slf4j
+public class PodCertificateCache {
+
+    // Fraction of an entry's lifetime after which it is refreshed in the background
+    private static final double REFRESH_AHEAD_FRACTION = 0.8;
+
+    private final SymphonyClientFactory symphonyClientFactory;
+
+    private final long ttlMillis;
+
+    private final ExecutorService refreshExecutor;
+
+    private final LoadingCache<String, PodPublicKey> cache;
+
+    private final SingleFlight<String, PodPublicKey> fetches = new SingleFlight<>();
+
+    @VisibleForTesting
+    Clock clock = Clock.systemUTC();
+
+    @Autowired
+    public PodCertificateCache(SymphonyClientFactory symphonyClientFactory, AuthenticationConfig authenticationConfig) {
+        this.symphonyClientFactory = symphonyClientFactory;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(authenticationConfig.getPodCertificateCacheTtlSeconds());
+
+        refreshExecutor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "pod-certificate-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        CacheLoader<String, PodPublicKey> loader = new CacheLoader<String, PodPublicKey>() {
+            @Override
+            public PodPublicKey load(String companyId) throws Exception {
+                return fetches.execute(companyId, () -> fetch(companyId));
+            }
+        };
+
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(authenticationConfig.getPodCertificateCacheMaximumSize())
+                .build(CacheLoader.asyncReloading(loader, refreshExecutor));
+    }
+
+    /**
+     * Stops the background refresh threads.
+     */
+    @PreDestroy
+    public void stop() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns the public key used by the pod to sign JWTs.  Fetches the signing cert from the pod if it isn't cached
+     * or if the cached entry has expired.
+     *
+     * @param companyId company ID for pod
+     * @return public key from the pod's signing cert
+     * @throws LoginException if the cert from the pod can't be parsed
+     * @throws IllegalStateException if no pod info has been registered for the supplied company ID
+     */
+    public PublicKey getPublicKey(String companyId) throws LoginException {
+        PodPublicKey entry = get(companyId);
+        long now = clock.millis();
+
+        if (now >= entry.expiresAt) {
+            // Expired (TTL or cert).  The pod may have a new cert by now, so fetch it again.
+            cache.asMap().remove(companyId, entry);
+            entry = get(companyId);
+
+            if (now >= entry.expiresAt) {
+                // The pod's cert itself has expired.  Use it, but don't cache it.
+                log.warn("Signing cert for pod {} expired at {}", companyId, Instant.ofEpochMilli(entry.notAfter));
+                cache.asMap().remove(companyId, entry);
+            }
+        }
+        else if (now >= entry.refreshAt) {
+            // Reloads asynchronously.  Does nothing if a refresh is already in progress.
+            cache.refresh(companyId);
+        }
+
+        return entry.publicKey;
+    }
+
+    /**
+     * Returns the public key used by the pod to sign JWTs if it is cached and hasn't expired.  Never calls the pod,
+     * though it may start a background refresh.
+     *
+     * @param companyId company ID for pod
+     * @return public key from the pod's signing cert, or null if {@link #getPublicKey(String)} would have to fetch it
+     */
+    public PublicKey getCachedPublicKey(String companyId) {
+        PodPublicKey entry = cache.getIfPresent(companyId);
+        long now = clock.millis();
+        if (entry == null || now >= entry.expiresAt) {
+            return null;
+        }
+        if (now >= entry.refreshAt) {
+            cache.refresh(companyId);
+        }
+        return entry.publicKey;
+    }
+
+    private PodPublicKey get(String companyId) throws LoginException {
+        try {
+            return cache.get(companyId);
+        } catch (ExecutionException e) {
+            throw new LoginException("Couldn't parse cert string from Symphony into X509Certificate object:" + e.getCause().getMessage());
+        } catch (UncheckedExecutionException e) {
+            // Errors talking to the pod (or missing pod info) are passed through as is
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private PodPublicKey fetch(String companyId) throws Exception {
+        PodCertificate podCertificate = symphonyClientFactory.getAuthenticationClient(companyId).getPodCertificate();
+        X509Certificate x509Certificate = SecurityKeyUtils.parseX509Certificate(podCertificate.getCertificate());
+
+        long loadedAt = clock.millis();
+        long notAfter = x509Certificate.getNotAfter().getTime();
+        long expiresAt = Math.min(loadedAt + ttlMillis, notAfter);
+        long refreshAt = loadedAt + (long) ((expiresAt - loadedAt) * REFRESH_AHEAD_FRACTION);
+
+        log.info("Fetched signing cert for pod {}.  Caching until {}", companyId, Instant.ofEpochMilli(expiresAt));
+        return new PodPublicKey(x509Certificate.getPublicKey(), notAfter, expiresAt, refreshAt);
+    }
+
+    /**
+     * Public key from a pod's signing cert and the times at which it should be refreshed and expired.
+     */
+    private static class PodPublicKey {
+        final PublicKey publicKey;
+        final long notAfter;
+        final long expiresAt;
+        final long refreshAt;
+
+        PodPublicKey(PublicKey publicKey, long notAfter, long expiresAt, long refreshAt) {
+            this.publicKey = publicKey;
+            this.notAfter = notAfter;
+            this.expiresAt = expiresAt;
+            this.refreshAt = refreshAt;
+        }
+    }
+}
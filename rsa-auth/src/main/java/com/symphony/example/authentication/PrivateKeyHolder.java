@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.symphony.example.utils.SecurityKeyUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Holds this app's private RSA key, parsed once from the PEM file configured in {@link AuthenticationConfig}.  The
+ * directory containing the PEM file is watched, and when the file is modified (or replaced) the key is re-read and
+ * swapped in atomically.  This allows the key to be rotated without restarting the app while keeping file I/O and
+ * key parsing off the request path.
+ *
+ * If the new file can't be parsed (e.g. it is only partially written), the previous key is kept and the error is
+ * logged.  The next modification event will trigger another attempt.
+ */
+@Component
+@Slf4j
+public class PrivateKeyHolder {
+
+    private final Path pemPath;
+
+    private final AtomicReference<PrivateKey> privateKey = new AtomicReference<>();
+
+    private WatchService watchService;
+
+    @Autowired
+    public PrivateKeyHolder(AuthenticationConfig authenticationConfig) {
+        this.pemPath = Paths.get(authenticationConfig.getPrivateKeyPemFilename()).toAbsolutePath();
+    }
+
+    /**
+     * Loads the key and starts watching the PEM file for changes.  Fails fast if the key can't be loaded at startup.
+     */
+    @PostConstruct
+    public void start() {
+        privateKey.set(loadPrivateKey());
+
+        try {
+            watchService = pemPath.getFileSystem().newWatchService();
+            pemPath.getParent().register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't watch private key PEM file [" + pemPath + "] for changes", e);
+        }
+
+        Thread watcher = new Thread(this::watch, "private-key-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Stops watching the PEM file.
+     */
+    @PreDestroy
+    public void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Returns the current private key.
+     */
+    public PrivateKey getPrivateKey() {
+        return privateKey.get();
+    }
+
+    /**
+     * Re-reads the PEM file and swaps in the new key.  Keeps the current key if the file can't be read or parsed.
+     *
+     * @return true if the key was replaced
+     */
+    @VisibleForTesting
+    boolean reload() {
+        try {
+            privateKey.set(loadPrivateKey());
+            log.info("Reloaded private key from [{}]", pemPath);
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Couldn't reload private key from [{}].  Keeping current key.", pemPath, e);
+            return false;
+        }
+    }
+
+    private PrivateKey loadPrivateKey() {
+        String privateKeyPem = SecurityKeyUtils.readPemFromFile(pemPath.toString());
+        try {
+            return SecurityKeyUtils.parseRSAPrivateKey(privateKeyPem);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error parsing private key PEM file", e);
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (pemPath.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    reload();
+                }
+                key.reset();
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Shutting down
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.symphony.example.pods.PodDirectory;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.security.auth.login.LoginException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Timers for the stages of the app authentication flow (signing this app's JWT, the pod's authenticate call, fetching
+ * a pod's signing cert, verifying a JWT, etc.), tagged by company ID and outcome, so a slow pod or a slow stage can be
+ * told apart from the rest.  The timers are Micrometer timers, held in a registry private to this class, and are
+ * exposed through the actuator metrics endpoint as
+ * {@code timer.authentication.stage.<stage>.<company ID>.<outcome>.<statistic>}, where statistic is count, mean, max
+ * or a percentile (p50, p99, p99_9...).  Times are in milliseconds.  Percentiles and max cover the last couple of
+ * minutes.
+ *
+ * Stages that aren't for a single pod, like validating a batch of token pairs, are tagged with company ID "none".
+ * Company IDs come from unauthenticated requests, so stages for a company ID that isn't registered in the
+ * {@link PodDirectory} are tagged with company ID "unknown".  Otherwise junk company IDs could use up the timers.
+ *
+ * Each timer with percentiles holds a few KB of histograms, so only the first
+ * {@link AuthenticationConfig#getStageTimerMaximumPods()} company IDs seen (counting "none" and "unknown") get timers.
+ * Later ones aren't recorded.
+ */
+@Component
+public class StageTimers implements PublicMetrics {
+
+    public static final String SUCCESS = "success";
+
+    // The request was refused (bad JWT, invalid token pair, etc.)
+    public static final String INVALID = "invalid";
+
+    // Something went wrong (pod unreachable, executor saturated, etc.)
+    public static final String ERROR = "error";
+
+    private static final String NAME = "authentication.stage";
+
+    private static final String COMPANY_ID = "companyId";
+
+    private static final String NONE = "none";
+
+    private static final String UNKNOWN = "unknown";
+
+    private final PodDirectory podDirectory;
+
+    private final MeterRegistry registry;
+
+    private final double[] percentiles;
+
+    @Autowired
+    public StageTimers(AuthenticationConfig authenticationConfig, PodDirectory podDirectory) {
+        this(authenticationConfig, podDirectory, Clock.SYSTEM);
+    }
+
+    @VisibleForTesting
+    StageTimers(AuthenticationConfig authenticationConfig, PodDirectory podDirectory, Clock clock) {
+        this.podDirectory = podDirectory;
+        registry = new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock);
+        registry.config()
+                .meterFilter(MeterFilter.maximumAllowableTags(NAME, COMPANY_ID,
+                                                              authenticationConfig.getStageTimerMaximumPods(),
+                                                              MeterFilter.deny()));
+        percentiles = authenticationConfig.getStageTimerPercentiles().stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    /**
+     * Returns the start time of a stage, to pass to {@link #record(String, String, String, long)} when it ends.
+     */
+    public long start() {
+        return registry.config().clock().monotonicTime();
+    }
+
+    /**
+     * Records the time taken by a stage.
+     *
+     * @param stage name of the stage
+     * @param companyId company ID of the pod the stage was for, as given by the request
+     * @param outcome {@link #SUCCESS}, {@link #INVALID} or {@link #ERROR}
+     * @param start value returned by {@link #start()} when the stage started
+     */
+    public void record(String stage, String companyId, String outcome, long start) {
+        Timer.builder(NAME)
+             .tags("stage", stage, COMPANY_ID, companyIdTag(companyId), "outcome", outcome)
+             .publishPercentiles(percentiles)
+             .register(registry)
+             .record(start() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs a stage and records the time it took.  The outcome is {@link #ERROR} if the stage throws.
+     */
+    public <T> T time(String stage, String companyId, Supplier<T> work) {
+        long start = start();
+        String outcome = ERROR;
+        try {
+            T result = work.get();
+            outcome = SUCCESS;
+            return result;
+        } finally {
+            record(stage, companyId, outcome, start);
+        }
+    }
+
+    /**
+     * Runs a check and records the time it took.  The outcome is {@link #SUCCESS} if the check passes, {@link #INVALID}
+     * if it fails, and {@link #ERROR} if it throws.
+     */
+    public boolean check(String stage, String companyId, BooleanSupplier check) {
+        long start = start();
+        String outcome = ERROR;
+        try {
+            boolean passed = check.getAsBoolean();
+            outcome = passed ? SUCCESS : INVALID;
+            return passed;
+        } finally {
+            record(stage, companyId, outcome, start);
+        }
+    }
+
+    /**
+     * Returns the outcome of a stage that completed with a failure (or with none): {@link #INVALID} for a
+     * LoginException, {@link #ERROR} for anything else.
+     */
+    public static String outcome(Throwable failure) {
+        if (failure == null) {
+            return SUCCESS;
+        }
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        return cause instanceof LoginException ? INVALID : ERROR;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        for (Meter meter : registry.getMeters()) {
+            if (!(meter instanceof Timer)) {
+                continue;
+            }
+            Meter.Id id = meter.getId();
+            String prefix = "timer." + NAME + "." + id.getTag("stage") + "." + id.getTag(COMPANY_ID) + "."
+                            + id.getTag("outcome") + ".";
+            HistogramSnapshot snapshot = ((Timer) meter).takeSnapshot();
+            metrics.add(new Metric<>(prefix + "count", snapshot.count()));
+            metrics.add(new Metric<>(prefix + "mean", snapshot.mean(TimeUnit.MILLISECONDS)));
+            metrics.add(new Metric<>(prefix + "max", snapshot.max(TimeUnit.MILLISECONDS)));
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                metrics.add(new Metric<>(prefix + percentileName(percentile.percentile()),
+                                         percentile.value(TimeUnit.MILLISECONDS)));
+            }
+        }
+        return metrics;
+    }
+
+    private String companyIdTag(String companyId) {
+        if (companyId == null) {
+            return NONE;
+        }
+        return podDirectory.contains(companyId) ? companyId : UNKNOWN;
+    }
+
+    private static String percentileName(double percentile) {
+        // 0.99 -> p99, 0.999 -> p99_9
+        return "p" + BigDecimal.valueOf(percentile).movePointRight(2).stripTrailingZeros().toPlainString().replace('.', '_');
+    }
+}
@@ -13,22 +13,88 @@
 
 package com.symphony.example.authentication;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.symphony.example.tokens.Token;
 import org.springframework.stereotype.Component;
 
-import java.util.UUID;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 
 /**
- * Token generator for app tokens.  This is a simple implementation that just creates a random string.
+ * Token generator for app tokens.  Creates random 128 bit tokens.
+ *
+ * A single SecureRandom would make every request thread queue on its lock, so each thread has its own generator,
+ * seeded from the system's SecureRandom.  Generators fill a batch of tokens at a time, and mix in a fresh seed from
+ * the system's SecureRandom every {@link #RESEED_INTERVAL} tokens, so the shared source is only touched once in a
+ * long while.
  *
  * @author Dan Nathanson
  */
 @Component
 public class TokenGenerator {
 
+    @VisibleForTesting
+    static final int BATCH_SIZE = 64;
+
+    @VisibleForTesting
+    static final int RESEED_INTERVAL = 64 * 1024;
+
+    private static final int SEED_BYTES = 32;
+
+    // Source of seeds for the per thread generators
+    private final SecureRandom seeds = new SecureRandom();
+
+    private final ThreadLocal<Generator> generators = ThreadLocal.withInitial(Generator::new);
+
     /**
-     * Generates token using UUID random generator.
+     * Generates token using this thread's secure random generator.
      */
-    public String generateToken() {
-        return UUID.randomUUID().toString();
+    public Token generateToken() {
+        return generators.get().next();
+    }
+
+    private class Generator {
+        final SecureRandom random;
+
+        // Random bytes for the next tokens in the batch
+        final ByteBuffer batch = ByteBuffer.allocate(BATCH_SIZE * 16);
+
+        int tokensSinceSeeded;
+
+        Generator() {
+            try {
+                // Pure Java DRBG, so it doesn't share a lock or file descriptor with other threads' generators
+                random = SecureRandom.getInstance("SHA1PRNG");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("No SHA1PRNG secure random algorithm", e);
+            }
+            random.setSeed(seed());
+            batch.position(batch.limit());
+        }
+
+        Token next() {
+            if (!batch.hasRemaining()) {
+                fill();
+            }
+            return new Token(batch.getLong(), batch.getLong());
+        }
+
+        private void fill() {
+            if (tokensSinceSeeded >= RESEED_INTERVAL) {
+                // Adds to the generator's state rather than replacing it
+                random.setSeed(seed());
+                tokensSinceSeeded = 0;
+            }
+            random.nextBytes(batch.array());
+            batch.clear();
+            tokensSinceSeeded += BATCH_SIZE;
+        }
+
+        private byte[] seed() {
+            byte[] seed = new byte[SEED_BYTES];
+            seeds.nextBytes(seed);
+            return seed;
+        }
     }
 }
@@ -25,4 +25,7 @@ public class ValidateTokensRequest {
     private String companyId;
     private String symphonyToken;
     private String appToken;
+
+    // Receipt for the pair from the stateless token store.  Browsers send it in a cookie instead.
+    private String receipt;
 }
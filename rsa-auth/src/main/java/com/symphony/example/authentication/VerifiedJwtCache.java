@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers JWTs from Symphony that have already been verified.  The front end sends the same JWT to several
+ * endpoints during a login, so rather than checking the signature and parsing the claims each time, the username
+ * from a verified JWT is cached, keyed by the SHA-256 digest of the JWT.  An entry is only used until the JWT's own
+ * expiration date, and only for the pod that the JWT was verified against.
+ *
+ * Hit and miss counts are exposed through the actuator metrics endpoint.
+ */
+@Component
+public class VerifiedJwtCache implements PublicMetrics {
+
+    private final Cache<HashCode, VerifiedJwt> cache;
+
+    // Counted here rather than with Guava's stats, since expired entries and entries for another pod are misses
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    @VisibleForTesting
+    Clock clock = Clock.systemUTC();
+
+    @Autowired
+    public VerifiedJwtCache(AuthenticationConfig authenticationConfig) {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(authenticationConfig.getVerifiedJwtCacheMaximumSize())
+                .build();
+    }
+
+    /**
+     * Returns the username from a previously verified JWT.
+     *
+     * @param jwt JSON Web Token from Symphony
+     * @param companyId company ID for pod which generated the JWT
+     * @return Symphony username, or null if the JWT hasn't been verified for this pod or has expired since
+     */
+    public String getUsername(String jwt, String companyId) {
+        HashCode digest = digest(jwt);
+        VerifiedJwt verifiedJwt = cache.getIfPresent(digest);
+        if (verifiedJwt != null && clock.millis() >= verifiedJwt.expiresAt) {
+            cache.asMap().remove(digest, verifiedJwt);
+            verifiedJwt = null;
+        }
+
+        if (verifiedJwt == null || !verifiedJwt.companyId.equals(companyId)) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return verifiedJwt.username;
+    }
+
+    /**
+     * Records a JWT whose signature has been verified.  JWTs without an expiration date are not cached.
+     *
+     * @param jwt JSON Web Token from Symphony
+     * @param companyId company ID for pod whose signing cert verified the JWT
+     * @param username Symphony username from the JWT
+     * @param expiration expiration date from the JWT
+     */
+    public void put(String jwt, String companyId, String username, Date expiration) {
+        if (expiration != null && expiration.getTime() > clock.millis()) {
+            cache.put(digest(jwt), new VerifiedJwt(username, companyId, expiration.getTime()));
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(new Metric<>("counter.authentication.jwt.verification-cache.hits", hits.sum()),
+                             new Metric<>("counter.authentication.jwt.verification-cache.misses", misses.sum()),
+                             new Metric<>("gauge.authentication.jwt.verification-cache.size", cache.size()));
+    }
+
+    private static HashCode digest(String jwt) {
+        return Hashing.sha256().hashString(jwt, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Username extracted from a verified JWT, the pod it was verified against, and when the JWT expires.
+     */
+    private static class VerifiedJwt {
+        final String username;
+        final String companyId;
+        final long expiresAt;
+
+        VerifiedJwt(String username, String companyId, long expiresAt) {
+            this.username = username;
+            this.companyId = companyId;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -79,9 +79,9 @@ public class DirectoryWebhookController {
         }
 
         // Store pod info
-        podDirectory.addPodInfo(podInfo);
+        long version = podDirectory.addPodInfo(podInfo);
 
-        log.info("Received pod info callback: " + podInfo.toString());
+        log.info("Received pod info callback (version {}): {}", version, podInfo);
 
         return new ResponseEntity(HttpStatus.OK);
 
@@ -13,36 +13,139 @@
 
 package com.symphony.example.pods;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
-import java.util.Map;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Stores information about Symphony pods.  PodInfo is stored and retrieved using company IDs.  This information comes
  * from Symphony via webhook which is registered when the App is enabled for a pod using the Symphony Admin Portal.
  *
- * This implementation just stores pod info in an in-memory map.  A real implementation would probably store this in
- * something more persistent (ie. a database of some sort).
+ * This implementation stores pod info in an in-memory map.  If a journal directory is configured (see
+ * {@link PodDirectoryConfiguration}), updates are also written to a local journal (see {@link PodDirectoryJournal}),
+ * and the map is rebuilt from it on startup, so logins don't fail after a restart until each pod happens to call the
+ * webhook again.  A real implementation shared by several servers would probably store this in a database.
+ *
+ * Pod info is added by webhook threads while every login reads it, so entries are immutable and kept in a concurrent
+ * map.  Reads never lock.  Pod info is copied when it is added and again when it is read (see
+ * {@link VersionedPodInfo}), so a reader sees all of an update or none of it, whatever callers do with their PodInfo
+ * objects.
  */
 @Component
+@Slf4j
 public class PodDirectory {
-    private Map<String, PodInfo> podCache = new HashMap<>();
+    private final ConcurrentMap<String, VersionedPodInfo> podCache = new ConcurrentHashMap<>();
+
+    private final List<Consumer<VersionedPodInfo>> listeners = new CopyOnWriteArrayList<>();
+
+    // Null if pod info is only kept in memory
+    private final PodDirectoryJournal journal;
+
+    /**
+     * Creates a directory that only keeps pod info in memory.
+     */
+    public PodDirectory() {
+        this.journal = null;
+    }
+
+    @Autowired
+    public PodDirectory(PodDirectoryConfiguration configuration) {
+        if (configuration.getJournalDirectory() == null) {
+            this.journal = null;
+        } else {
+            this.journal = new PodDirectoryJournal(Paths.get(configuration.getJournalDirectory()),
+                                                   configuration.getCompactAfterEntries(),
+                                                   configuration.getJournalQueueCapacity(), podCache::values);
+        }
+    }
+
+    /**
+     * Restores pod info from the journal, if there is one, and starts writing updates to it.
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        journal.load(podCache);
+        log.info("Restored pod info for {} pods in {} ms", podCache.size(),
+                 TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        journal.start();
+    }
+
+    /**
+     * Writes pending updates to the journal.
+     */
+    @PreDestroy
+    public void stop() {
+        if (journal != null) {
+            journal.stop();
+        }
+    }
+
+    /**
+     * Registers a listener that is called with each update, after it has been added.  Listeners are called on the
+     * thread adding the pod info, and updates of the same pod from different threads may arrive out of order, so
+     * listeners should use the version to ignore an update older than one they have seen.
+     */
+    public void addListener(Consumer<VersionedPodInfo> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Adds pod info to the directory, replacing any previous pod info for the pod.
+     *
+     * @return version of the pod's entry; one more than the version it replaced
+     */
+    public long addPodInfo(PodInfo podInfo) {
+        // compute() serializes updates of the same pod, so versions don't repeat.  Readers don't wait for it.
+        VersionedPodInfo versioned = podCache.compute(
+                podInfo.getCompanyId(),
+                (companyId, previous) -> new VersionedPodInfo(podInfo,
+                                                              previous == null ? 1 : previous.getVersion() + 1));
+        if (journal != null) {
+            journal.append(versioned);
+        }
+        listeners.forEach(listener -> listener.accept(versioned));
+        return versioned.getVersion();
+    }
 
     /**
-     * Adds pod info to the directory.
+     * Returns true if pod info has been registered for the company ID.
      */
-    public void addPodInfo(PodInfo podInfo) {
-        podCache.put(podInfo.getCompanyId(), podInfo);
+    public boolean contains(String companyId) {
+        return companyId != null && podCache.containsKey(companyId);
     }
 
     /**
-     * Returns pod info for pod with specified company ID.  It is an error if there is no pod info.
+     * Returns pod info for pod with specified company ID.  It is an error if there is no pod info.  The returned
+     * object is a copy, so changing it doesn't change the directory.
      *
      * @throws IllegalStateException if no pod info has been registered for the supplied company ID
      */
     public PodInfo getPodInfo(String companyId) {
-        PodInfo podInfo = podCache.get(companyId);
+        return getVersionedPodInfo(companyId).getPodInfo();
+    }
+
+    /**
+     * Returns pod info for pod with specified company ID, with its version.  It is an error if there is no pod info.
+     *
+     * @throws IllegalStateException if no pod info has been registered for the supplied company ID
+     */
+    public VersionedPodInfo getVersionedPodInfo(String companyId) {
+        VersionedPodInfo podInfo = podCache.get(companyId);
         if (podInfo == null) {
             throw new IllegalStateException("Missing pod info for pod with company ID '" + companyId + "'. " +
                     "This information should have been populated via webhook callback from Symphony when the app was enable for the pod.");
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.pods;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration for the {@link PodDirectory}.  Properties are read from application.yaml and are prefixed with
+ * "pod-directory".
+ */
+@Data
+@ConfigurationProperties(prefix = "pod-directory")
+public class PodDirectoryConfiguration {
+
+    /**
+     * Directory holding the journal and snapshot of pod info, so that pods are known again after a restart.  Pod info
+     * is only kept in memory if not set.
+     */
+    private String journalDirectory;
+
+    /**
+     * Number of pod info updates written to the journal after which it is compacted into a new snapshot.
+     */
+    private int compactAfterEntries = 10000;
+
+    /**
+     * Maximum number of pod info updates waiting to be written to the journal.  If more arrive, a snapshot is written
+     * instead, so updates are never lost and the webhook never waits.
+     */
+    private int journalQueueCapacity = 10000;
+}
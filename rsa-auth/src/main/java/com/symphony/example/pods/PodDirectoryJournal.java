@@ -0,0 +1,387 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.pods;
+
+import com.google.common.annotations.VisibleForTesting;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps pod info on disk, so that the {@link PodDirectory} can be rebuilt after a restart.  Every update is appended to
+ * a journal file.  When the journal has {@code compactAfterEntries} updates, the whole directory is written to a
+ * snapshot file and the journal is emptied.  On startup, the snapshot and then the journal are read back.
+ *
+ * Updates are queued and written by a background thread, with buffered sequential writes, so adding pod info never
+ * waits for the disk.  If the queue is full, the update is dropped from the journal and a snapshot is written instead,
+ * which includes it.  Files are flushed to the OS after each batch of updates, so they survive the app crashing but
+ * not necessarily the machine crashing.
+ *
+ * If writing fails (disk full, permissions changed, etc.), the journal is closed and updates aren't written to it.
+ * Writing a snapshot, which includes them, is retried every {@link #RETRY_MILLIS} ms, and the journal is reopened once
+ * a snapshot has been written.
+ *
+ * Both files are sequences of records: length, CRC32 and pod info with its version, with strings as UTF-8 preceded by
+ * their length.  A record that is cut short or doesn't match its CRC (e.g. the app died while writing it) ends the
+ * file.  An event type this build doesn't know (e.g. written by a newer build) is read as null.  Updates to the same
+ * pod may be written out of order, so the record with the highest version wins.
+ */
+@Slf4j
+class PodDirectoryJournal {
+
+    @VisibleForTesting
+    static final String JOURNAL_FILE = "pod-directory.journal";
+
+    @VisibleForTesting
+    static final String SNAPSHOT_FILE = "pod-directory.snapshot";
+
+    // Length and CRC
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    // Time between attempts to write a snapshot after writing failed
+    @VisibleForTesting
+    static final long RETRY_MILLIS = 1000;
+
+    private final Path journalPath;
+
+    private final Path snapshotPath;
+
+    private final int compactAfterEntries;
+
+    // Current contents of the directory, for snapshots
+    private final Supplier<Collection<VersionedPodInfo>> contents;
+
+    private final BlockingQueue<VersionedPodInfo> queue;
+
+    private final Thread writer;
+
+    private volatile boolean snapshotNeeded;
+
+    private volatile boolean stopping;
+
+    // Null while writing is failing
+    private OutputStream journal;
+
+    private int journalEntries;
+
+    // System.nanoTime() after which writing a snapshot is tried again, while writing is failing
+    private long retryAt;
+
+    PodDirectoryJournal(Path directory, int compactAfterEntries, int queueCapacity,
+                        Supplier<Collection<VersionedPodInfo>> contents) {
+        this.journalPath = directory.resolve(JOURNAL_FILE);
+        this.snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        this.compactAfterEntries = compactAfterEntries;
+        this.contents = contents;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writer = new Thread(this::writeUpdates, "pod-directory-journal");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Reads the snapshot and the journal into the map.  Must be called once, before {@link #start()}.
+     *
+     * @param pods map of company ID to pod info, which gets the latest pod info for each pod
+     */
+    void load(Map<String, VersionedPodInfo> pods) throws IOException {
+        Files.createDirectories(journalPath.getParent());
+        read(snapshotPath, pods);
+        long validJournalBytes = read(journalPath, pods);
+
+        if (Files.exists(journalPath)) {
+            try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+                if (channel.size() > validJournalBytes) {
+                    log.warn("Discarding {} bytes of incomplete records at end of {}", channel.size() - validJournalBytes, journalPath);
+                    channel.truncate(validJournalBytes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the journal and starts writing updates to it.
+     */
+    void start() throws IOException {
+        journal = open(journalPath, StandardOpenOption.APPEND);
+        // The journal holds what was replayed at startup, so start the next restart from a snapshot
+        snapshotNeeded = Files.size(journalPath) > 0;
+        writer.start();
+    }
+
+    /**
+     * Writes the remaining updates and closes the journal.
+     */
+    void stop() {
+        stopping = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues an update to be written.  Never blocks.
+     */
+    void append(VersionedPodInfo podInfo) {
+        if (!queue.offer(podInfo)) {
+            // The snapshot will include this update
+            snapshotNeeded = true;
+        }
+    }
+
+    private void writeUpdates() {
+        List<VersionedPodInfo> batch = new ArrayList<>();
+        try {
+            while (!stopping || !queue.isEmpty()) {
+                VersionedPodInfo first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                    write(batch);
+                    batch.clear();
+                }
+                if (compactionDue()) {
+                    compact();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeJournal();
+        }
+    }
+
+    private boolean compactionDue() {
+        if (journal == null) {
+            return System.nanoTime() - retryAt >= 0;
+        }
+        return snapshotNeeded || journalEntries >= compactAfterEntries;
+    }
+
+    private void write(List<VersionedPodInfo> batch) {
+        if (journal == null) {
+            // The snapshot written when writing works again will include these updates
+            return;
+        }
+        try {
+            for (VersionedPodInfo podInfo : batch) {
+                journal.write(record(podInfo));
+            }
+            journal.flush();
+            journalEntries += batch.size();
+        } catch (IOException e) {
+            // The journal may end with part of a record, so nothing more is written to it until it has been emptied
+            writeFailed(e);
+        }
+    }
+
+    private void writeFailed(IOException e) {
+        log.error("Couldn't write pod directory journal or snapshot in {}.  Pod info updates will be lost on restart "
+                  + "until a snapshot can be written, which is tried every {} ms.", journalPath.getParent(), RETRY_MILLIS, e);
+        closeJournal();
+        retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RETRY_MILLIS);
+    }
+
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("Couldn't close pod directory journal {}", journalPath, e);
+        }
+        journal = null;
+    }
+
+    /**
+     * Writes the whole directory to a new snapshot, then empties the journal, reopening it if writing had failed.
+     * Updates still queued are written to the emptied journal, and any that are already in the snapshot are read back
+     * twice, which is harmless.
+     */
+    private void compact() {
+        boolean recovering = journal == null;
+        snapshotNeeded = false;
+        long start = System.nanoTime();
+
+        try {
+            Path newSnapshotPath = snapshotPath.resolveSibling(SNAPSHOT_FILE + ".new");
+            int pods = 0;
+            try (OutputStream snapshot = open(newSnapshotPath, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (VersionedPodInfo podInfo : contents.get()) {
+                    snapshot.write(record(podInfo));
+                    pods++;
+                }
+            }
+            Files.move(newSnapshotPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            closeJournal();
+            journal = open(journalPath, StandardOpenOption.TRUNCATE_EXISTING);
+            journalEntries = 0;
+            log.info("Compacted pod directory journal into snapshot of {} pods in {} ms", pods,
+                     TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            if (recovering) {
+                log.info("Writing pod directory journal {} again", journalPath);
+            }
+        } catch (IOException e) {
+            if (recovering) {
+                // Already logged as an error
+                log.debug("Still can't write pod directory snapshot {}", snapshotPath, e);
+                retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RETRY_MILLIS);
+            } else {
+                writeFailed(e);
+            }
+        }
+    }
+
+    private static OutputStream open(Path path, StandardOpenOption mode) throws IOException {
+        return new BufferedOutputStream(Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode),
+                                        BUFFER_BYTES);
+    }
+
+    /**
+     * Reads the records of a file into the map, keeping the highest version of each pod.
+     *
+     * @return number of bytes of whole, valid records
+     */
+    private static long read(Path path, Map<String, VersionedPodInfo> pods) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        CRC32 crc = new CRC32();
+        while (bytes.remaining() >= RECORD_HEADER_BYTES) {
+            int position = bytes.position();
+            int length = bytes.getInt();
+            int expectedCrc = bytes.getInt();
+            if (length < 0 || length > bytes.remaining()) {
+                bytes.position(position);
+                break;
+            }
+            crc.reset();
+            crc.update(bytes.array(), bytes.position(), length);
+            if ((int) crc.getValue() != expectedCrc) {
+                bytes.position(position);
+                break;
+            }
+
+            VersionedPodInfo podInfo = parse(bytes);
+            pods.merge(podInfo.getPodInfo().getCompanyId(), podInfo,
+                       (existing, read) -> read.getVersion() > existing.getVersion() ? read : existing);
+        }
+        return bytes.position();
+    }
+
+    private static byte[] record(VersionedPodInfo versioned) {
+        PodInfo podInfo = versioned.getPodInfo();
+        PodInfo.PodInfoPayload payload = podInfo.getPayload();
+        byte[][] strings = {
+                utf8(podInfo.getCompanyId()),
+                utf8(podInfo.getAppId()),
+                utf8(podInfo.getEventType() != null ? podInfo.getEventType().name() : null),
+                utf8(payload != null ? payload.getPodUrl() : null),
+                utf8(payload != null ? payload.getAgentUrl() : null),
+                utf8(payload != null ? payload.getSessionAuthUrl() : null)
+        };
+        int length = 8 + 1;
+        for (byte[] string : strings) {
+            length += 4 + (string != null ? string.length : 0);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + length);
+        record.position(RECORD_HEADER_BYTES);
+        record.putLong(versioned.getVersion());
+        record.put((byte) (payload != null ? 1 : 0));
+        for (byte[] string : strings) {
+            record.putInt(string != null ? string.length : -1);
+            if (string != null) {
+                record.put(string);
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_BYTES, length);
+        record.putInt(0, length);
+        record.putInt(4, (int) crc.getValue());
+        return record.array();
+    }
+
+    private static VersionedPodInfo parse(ByteBuffer record) {
+        long version = record.getLong();
+        boolean hasPayload = record.get() != 0;
+        PodInfo podInfo = new PodInfo();
+        podInfo.setCompanyId(string(record));
+        podInfo.setAppId(string(record));
+        String eventType = string(record);
+        podInfo.setEventType(eventType(eventType, podInfo.getCompanyId()));
+        String podUrl = string(record);
+        String agentUrl = string(record);
+        String sessionAuthUrl = string(record);
+        if (hasPayload) {
+            PodInfo.PodInfoPayload payload = new PodInfo.PodInfoPayload();
+            payload.setPodUrl(podUrl);
+            payload.setAgentUrl(agentUrl);
+            payload.setSessionAuthUrl(sessionAuthUrl);
+            podInfo.setPayload(payload);
+        }
+        return new VersionedPodInfo(podInfo, version);
+    }
+
+    private static PodInfo.EventType eventType(String name, String companyId) {
+        if (name == null) {
+            return null;
+        }
+        try {
+            return PodInfo.EventType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown event type {} in pod info for pod {}, restored without it", name, companyId);
+            return null;
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static String string(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+}
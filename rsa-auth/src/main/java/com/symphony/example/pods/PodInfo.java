@@ -25,6 +25,24 @@ public class PodInfo {
     private EventType eventType;
     private PodInfoPayload payload;
 
+    /**
+     * Returns a copy of this pod info, including its payload.
+     */
+    public PodInfo copy() {
+        PodInfo copy = new PodInfo();
+        copy.setAppId(appId);
+        copy.setCompanyId(companyId);
+        copy.setEventType(eventType);
+        if (payload != null) {
+            PodInfoPayload payloadCopy = new PodInfoPayload();
+            payloadCopy.setAgentUrl(payload.getAgentUrl());
+            payloadCopy.setPodUrl(payload.getPodUrl());
+            payloadCopy.setSessionAuthUrl(payload.getSessionAuthUrl());
+            copy.setPayload(payloadCopy);
+        }
+        return copy;
+    }
+
     public enum EventType {
         APP_ENABLED,
         appEnabled,
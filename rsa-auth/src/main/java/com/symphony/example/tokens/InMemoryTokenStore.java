@@ -0,0 +1,246 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.tokens;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.hash.Hashing;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token store held in this server's memory.  This won't work for horizontally scaled servers without sticky sessions
+ * since it is a local cache.  Use {@link RedisTokenStore} for that.
+ *
+ * Each token pair is held as the 128 bit app token and 128 bits of the digest of the symphony token, in primitive
+ * arrays (see {@link TokenTable}), which takes a fraction of the memory of holding them as strings.
+ *
+ * Token pairs are partitioned by company ID, so that a single pod creating lots of token pairs can't evict the
+ * pending token pairs of other pods.  Each partition holds at most the configured number of pairs per pod; beyond that
+ * the pod's own oldest pair is evicted.  The total across all partitions is also capped.  When the cap is reached,
+ * the oldest pair of the largest partition is evicted, so the pods with the most pending pairs give them up first.
+ *
+ * Occupancy and evictions, in total and per partition, are exposed through the actuator metrics endpoint.
+ */
+@Component
+@ConditionalOnProperty(prefix = "token-store", name = "type", havingValue = "memory", matchIfMissing = true)
+public class InMemoryTokenStore implements TokenStore, PublicMetrics {
+
+    private final ConcurrentMap<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    private final long ttlNanos;
+
+    private final int maximumSizePerPod;
+
+    private final int maximumSize;
+
+    private final Ticker ticker;
+
+    // Token pairs held in all partitions
+    private final AtomicInteger size = new AtomicInteger();
+
+    // Evictions because the total reached the maximum size
+    private final LongAdder ceilingEvictions = new LongAdder();
+
+    @Autowired
+    public InMemoryTokenStore(TokenStoreConfiguration configuration) {
+        this(configuration, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    InMemoryTokenStore(TokenStoreConfiguration configuration, Ticker ticker) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(configuration.getTtlSeconds());
+        this.maximumSizePerPod = configuration.getMaximumSizePerPod();
+        this.maximumSize = configuration.getMaximumSize();
+        this.ticker = ticker;
+    }
+
+    @Override
+    public String put(String companyId, Token appToken, String symphonyToken) {
+        partitions.computeIfAbsent(companyId, Partition::new).put(appToken, digest(symphonyToken));
+
+        while (size.get() > maximumSize) {
+            if (largestPartition().evictEldest()) {
+                ceilingEvictions.increment();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean validate(String companyId, Token appToken, String symphonyToken, String receipt) {
+        Partition partition = partitions.get(companyId);
+        return partition != null && partition.validate(appToken, digest(symphonyToken));
+    }
+
+    /**
+     * Checks the pairs pod by pod, locking each pod's partition once.
+     */
+    @Override
+    public boolean[] validateAll(List<TokenPair> tokenPairs) {
+        boolean[] valid = new boolean[tokenPairs.size()];
+        Token[] symphonyTokenDigests = new Token[valid.length];
+        Map<String, List<Integer>> indexesByPod = new HashMap<>();
+        for (int i = 0; i < valid.length; i++) {
+            symphonyTokenDigests[i] = digest(tokenPairs.get(i).getSymphonyToken());
+            indexesByPod.computeIfAbsent(tokenPairs.get(i).getCompanyId(), companyId -> new ArrayList<>()).add(i);
+        }
+        indexesByPod.forEach((companyId, indexes) -> {
+            Partition partition = partitions.get(companyId);
+            if (partition != null) {
+                partition.validateAll(tokenPairs, symphonyTokenDigests, indexes, valid);
+            }
+        });
+        return valid;
+    }
+
+    @Override
+    public boolean consume(String companyId, Token appToken, String symphonyToken, String receipt) {
+        Partition partition = partitions.get(companyId);
+        return partition != null && partition.consume(appToken, digest(symphonyToken));
+    }
+
+    @Override
+    public int getTtlSeconds() {
+        return (int) TimeUnit.NANOSECONDS.toSeconds(ttlNanos);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("gauge.tokens.size", size.get()));
+        metrics.add(new Metric<>("counter.tokens.evictions.maximum-size", ceilingEvictions.sum()));
+        for (Partition partition : partitions.values()) {
+            metrics.add(new Metric<>("gauge.tokens.pod." + partition.companyId + ".size", partition.size));
+            metrics.add(new Metric<>("counter.tokens.pod." + partition.companyId + ".evictions", partition.evictions.sum()));
+        }
+        return metrics;
+    }
+
+    /**
+     * Symphony tokens are strings of unknown length chosen by the pod.  Only 128 bits of their SHA-256 digest are
+     * kept, which is enough to check that the front end sent back the same token.
+     */
+    private static Token digest(String symphonyToken) {
+        ByteBuffer digest = ByteBuffer.wrap(Hashing.sha256().hashString(symphonyToken, StandardCharsets.UTF_8).asBytes());
+        return new Token(digest.getLong(), digest.getLong());
+    }
+
+    private Partition largestPartition() {
+        Partition largest = null;
+        for (Partition partition : partitions.values()) {
+            if (largest == null || partition.size > largest.size) {
+                largest = partition;
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * Token pairs for one pod, oldest first.  Since all pairs have the same TTL, the oldest pair is also the first to
+     * expire.
+     */
+    private class Partition {
+        final String companyId;
+
+        // Maps app token to digest of symphony token, with expiration time
+        final TokenTable tokenPairs = new TokenTable();
+
+        // Evictions because this pod reached its maximum size, or because it was the largest when the total did
+        final LongAdder evictions = new LongAdder();
+
+        volatile int size;
+
+        Partition(String companyId) {
+            this.companyId = companyId;
+        }
+
+        synchronized void put(Token appToken, Token symphonyTokenDigest) {
+            long now = ticker.read();
+            removeExpired(now);
+            tokenPairs.put(appToken.getHigh(), appToken.getLow(),
+                           symphonyTokenDigest.getHigh(), symphonyTokenDigest.getLow(), now + ttlNanos);
+            updateSize();
+            if (tokenPairs.size() > maximumSizePerPod) {
+                evictEldest();
+            }
+        }
+
+        synchronized boolean validate(Token appToken, Token symphonyTokenDigest) {
+            removeExpired(ticker.read());
+            return tokenPairs.contains(appToken.getHigh(), appToken.getLow(),
+                                       symphonyTokenDigest.getHigh(), symphonyTokenDigest.getLow());
+        }
+
+        synchronized void validateAll(List<TokenPair> pairs, Token[] symphonyTokenDigests, List<Integer> indexes,
+                                      boolean[] valid) {
+            removeExpired(ticker.read());
+            for (int index : indexes) {
+                Token appToken = pairs.get(index).getAppToken();
+                valid[index] = tokenPairs.contains(appToken.getHigh(), appToken.getLow(),
+                                                   symphonyTokenDigests[index].getHigh(), symphonyTokenDigests[index].getLow());
+            }
+        }
+
+        synchronized boolean consume(Token appToken, Token symphonyTokenDigest) {
+            removeExpired(ticker.read());
+            boolean consumed = tokenPairs.remove(appToken.getHigh(), appToken.getLow(),
+                                                 symphonyTokenDigest.getHigh(), symphonyTokenDigest.getLow());
+            updateSize();
+            return consumed;
+        }
+
+        /**
+         * Makes room by removing expired pairs or, if there are none, the oldest pair.
+         *
+         * @return true if a pair that hadn't expired was evicted
+         */
+        synchronized boolean evictEldest() {
+            if (removeExpired(ticker.read()) > 0 || !tokenPairs.removeEldest()) {
+                return false;
+            }
+            updateSize();
+            evictions.increment();
+            return true;
+        }
+
+        private int removeExpired(long now) {
+            int removed = tokenPairs.removeExpired(now);
+            updateSize();
+            return removed;
+        }
+
+        private void updateSize() {
+            int newSize = tokenPairs.size();
+            InMemoryTokenStore.this.size.addAndGet(newSize - size);
+            size = newSize;
+        }
+    }
+}
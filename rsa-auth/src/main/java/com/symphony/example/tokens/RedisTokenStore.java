@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.tokens;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token store kept in Redis, so that it is shared by all servers.  A token pair created by one server can be
+ * validated by any other, so servers can run behind a plain round-robin load balancer.  Each pair is stored under a
+ * key made from the company ID and the app token, and is expired by Redis.  Memory is limited by the Redis server's
+ * own configuration (maxmemory), not per pod.
+ */
+@Component
+@ConditionalOnProperty(prefix = "token-store", name = "type", havingValue = "redis")
+@Slf4j
+public class RedisTokenStore implements TokenStore {
+
+    // Deletes the key only if it holds the expected symphony token, so that checking and removing is atomic
+    private static final String CONSUME_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+
+    private final JedisPool jedisPool;
+
+    private final String keyPrefix;
+
+    private final long ttlMillis;
+
+    @Autowired
+    public RedisTokenStore(TokenStoreConfiguration configuration) {
+        this.jedisPool = new JedisPool(new JedisPoolConfig(), configuration.getRedisHost(), configuration.getRedisPort());
+        this.keyPrefix = configuration.getRedisKeyPrefix();
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(configuration.getTtlSeconds());
+        log.info("Storing tokens in Redis at {}:{}", configuration.getRedisHost(), configuration.getRedisPort());
+    }
+
+    /**
+     * Closes the connections to Redis.
+     */
+    @PreDestroy
+    public void stop() {
+        jedisPool.close();
+    }
+
+    @Override
+    public String put(String companyId, Token appToken, String symphonyToken) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.psetex(key(companyId, appToken), ttlMillis, symphonyToken);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean validate(String companyId, Token appToken, String symphonyToken, String receipt) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            return symphonyToken.equals(jedis.get(key(companyId, appToken)));
+        }
+    }
+
+    /**
+     * Fetches all the pairs with one MGET, so the batch costs one round trip to Redis.
+     */
+    @Override
+    public boolean[] validateAll(List<TokenPair> tokenPairs) {
+        boolean[] valid = new boolean[tokenPairs.size()];
+        if (valid.length == 0) {
+            return valid;
+        }
+        String[] keys = new String[valid.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = key(tokenPairs.get(i).getCompanyId(), tokenPairs.get(i).getAppToken());
+        }
+        List<String> symphonyTokens;
+        try (Jedis jedis = jedisPool.getResource()) {
+            symphonyTokens = jedis.mget(keys);
+        }
+        for (int i = 0; i < valid.length; i++) {
+            valid[i] = tokenPairs.get(i).getSymphonyToken().equals(symphonyTokens.get(i));
+        }
+        return valid;
+    }
+
+    @Override
+    public boolean consume(String companyId, Token appToken, String symphonyToken, String receipt) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            Object deleted = jedis.eval(CONSUME_SCRIPT, Collections.singletonList(key(companyId, appToken)),
+                                        Collections.singletonList(symphonyToken));
+            return Long.valueOf(1).equals(deleted);
+        }
+    }
+
+    @Override
+    public int getTtlSeconds() {
+        return (int) TimeUnit.MILLISECONDS.toSeconds(ttlMillis);
+    }
+
+    private String key(String companyId, Token appToken) {
+        return keyPrefix + companyId + ":" + appToken;
+    }
+}
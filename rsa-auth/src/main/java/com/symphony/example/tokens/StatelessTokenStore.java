@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.tokens;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token store that doesn't store anything.  Instead of remembering a token pair, it returns a receipt for it: the
+ * pair's expiration time and an HMAC-SHA256 over the app token (which is a random nonce), the expiration time, the
+ * company ID and the SHA-256 digest of the symphony token.  The front end sends the receipt back with the pair, and the
+ * pair is checked by recomputing the HMAC.  Any server with the same keys can validate any pair, no memory is used for
+ * pending pairs, and validation is just CPU work.
+ *
+ * Receipts are signed with the first configured key, and receipts signed with any of the configured keys are
+ * accepted.  Each receipt includes an ID for its key, so a key can be rotated without failing logins that are in
+ * progress, as long as every server accepts the new key before any server signs with it (see
+ * {@link TokenStoreConfiguration#getHmacKeys()}).
+ *
+ * Since nothing is stored, a pair can't be consumed: it can be validated any number of times until it expires.
+ */
+@Component
+@ConditionalOnProperty(prefix = "token-store", name = "type", havingValue = "stateless")
+@Slf4j
+public class StatelessTokenStore implements TokenStore {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final int MINIMUM_KEY_BYTES = 32;
+
+    // Key ID, expiration time and HMAC
+    private static final int RECEIPT_BYTES = 4 + 8 + 32;
+
+    private final Map<Integer, SecretKeySpec> keys;
+
+    private final int signingKeyId;
+
+    private final long ttlMillis;
+
+    @VisibleForTesting
+    Clock clock = Clock.systemUTC();
+
+    @Autowired
+    public StatelessTokenStore(TokenStoreConfiguration configuration) {
+        if (configuration.getHmacKeys().isEmpty()) {
+            throw new IllegalStateException("token-store.hmac-keys must be set to use the stateless token store");
+        }
+
+        Map<Integer, SecretKeySpec> keys = new LinkedHashMap<>();
+        for (String encodedKey : configuration.getHmacKeys()) {
+            byte[] key = Base64.getDecoder().decode(encodedKey);
+            if (key.length < MINIMUM_KEY_BYTES) {
+                throw new IllegalStateException("Keys in token-store.hmac-keys must be at least " + MINIMUM_KEY_BYTES + " bytes");
+            }
+            keys.putIfAbsent(keyId(key), new SecretKeySpec(key, ALGORITHM));
+        }
+        this.keys = ImmutableMap.copyOf(keys);
+        this.signingKeyId = keyId(Base64.getDecoder().decode(configuration.getHmacKeys().get(0)));
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(configuration.getTtlSeconds());
+        log.info("Signing token pair receipts, {} key(s) accepted", this.keys.size());
+    }
+
+    @Override
+    public String put(String companyId, Token appToken, String symphonyToken) {
+        long expiresAt = clock.millis() + ttlMillis;
+        byte[] receipt = ByteBuffer.allocate(RECEIPT_BYTES)
+                                   .putInt(signingKeyId)
+                                   .putLong(expiresAt)
+                                   .put(hmac(keys.get(signingKeyId), signingKeyId, expiresAt, companyId, appToken, symphonyToken))
+                                   .array();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(receipt);
+    }
+
+    @Override
+    public boolean validate(String companyId, Token appToken, String symphonyToken, String receipt) {
+        if (receipt == null) {
+            return false;
+        }
+
+        ByteBuffer bytes;
+        try {
+            bytes = ByteBuffer.wrap(Base64.getUrlDecoder().decode(receipt));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (bytes.remaining() != RECEIPT_BYTES) {
+            return false;
+        }
+
+        int keyId = bytes.getInt();
+        long expiresAt = bytes.getLong();
+        byte[] signature = new byte[bytes.remaining()];
+        bytes.get(signature);
+
+        SecretKeySpec key = keys.get(keyId);
+        if (key == null || clock.millis() >= expiresAt) {
+            return false;
+        }
+        return MessageDigest.isEqual(signature, hmac(key, keyId, expiresAt, companyId, appToken, symphonyToken));
+    }
+
+    @Override
+    public boolean consume(String companyId, Token appToken, String symphonyToken, String receipt) {
+        return validate(companyId, appToken, symphonyToken, receipt);
+    }
+
+    @Override
+    public int getTtlSeconds() {
+        return (int) TimeUnit.MILLISECONDS.toSeconds(ttlMillis);
+    }
+
+    private static byte[] hmac(SecretKeySpec key, int keyId, long expiresAt, String companyId, Token appToken,
+                               String symphonyToken) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            // Company ID is the only variable length field, so it goes last
+            mac.update(ByteBuffer.allocate(4 + 8 + 16 + 32)
+                                 .putInt(keyId)
+                                 .putLong(expiresAt)
+                                 .putLong(appToken.getHigh())
+                                 .putLong(appToken.getLow())
+                                 .put(Hashing.sha256().hashString(symphonyToken, StandardCharsets.UTF_8).asBytes())
+                                 .array());
+            return mac.doFinal(companyId.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Couldn't compute " + ALGORITHM, e);
+        }
+    }
+
+    private static int keyId(byte[] key) {
+        return Hashing.sha256().hashBytes(key).asInt();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.tokens;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * A 128 bit token, like the app token generated by this app.  Held as two longs, and only encoded as a string (URL safe
+ * base64, without padding) when sent over HTTP.
+ */
+@Getter
+@EqualsAndHashCode
+public final class Token {
+
+    // 16 bytes in base64, without padding
+    private static final int ENCODED_LENGTH = 22;
+
+    private final long high;
+    private final long low;
+
+    public Token(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Creates a token from 128 random bits.
+     *
+     * @param random source of random bits.  Should be a SecureRandom for tokens used for authentication.
+     */
+    public static Token random(Random random) {
+        return new Token(random.nextLong(), random.nextLong());
+    }
+
+    /**
+     * Decodes a token from its string form.
+     *
+     * @param encoded URL safe base64 encoding of the token, as returned by {@link #toString()}
+     * @return the token
+     * @throws IllegalArgumentException if the string isn't an encoded token
+     */
+    public static Token parse(String encoded) {
+        if (encoded.length() != ENCODED_LENGTH) {
+            throw new IllegalArgumentException("Not a token: " + encoded);
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(Base64.getUrlDecoder().decode(encoded));
+        return new Token(bytes.getLong(), bytes.getLong());
+    }
+
+    /**
+     * Returns the URL safe base64 encoding of the token.
+     */
+    @Override
+    public String toString() {
+        byte[] bytes = ByteBuffer.allocate(16).putLong(high).putLong(low).array();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
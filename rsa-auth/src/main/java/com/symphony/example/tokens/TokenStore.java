@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.tokens;
+
+import java.util.List;
+
+/**
+ * Stores the token pairs exchanged with the pod during the App Authentication flow, so that they can be validated when
+ * the front end sends them back.  Each pair is kept for a limited time (see {@link TokenStoreConfiguration}).
+ *
+ * The implementation is chosen with the "token-store.type" property.  The in-memory store only works for a single
+ * server (or with sticky sessions).  The Redis store is shared by all servers, so any server can validate a token pair
+ * created by another.  The stateless store keeps nothing: it returns a signed receipt for the pair, which the front
+ * end sends back with the pair, so any server holding the signing key can validate it.
+ */
+public interface TokenStore {
+
+    /**
+     * Stores a token pair.
+     *
+     * @param companyId ID of company/pod the tokens were exchanged with
+     * @param appToken token generated by this app
+     * @param symphonyToken token returned by the pod
+     * @return receipt that must be presented with the pair to validate it, or null if the store holds the pair itself
+     */
+    String put(String companyId, Token appToken, String symphonyToken);
+
+    /**
+     * Checks a token pair.  The pair remains stored.
+     *
+     * @param companyId ID of company/pod the tokens were exchanged with
+     * @param appToken token generated by this app
+     * @param symphonyToken token returned by the pod
+     * @param receipt receipt returned when the pair was stored, if any
+     * @return true if the pair is stored for the pod and hasn't expired
+     */
+    boolean validate(String companyId, Token appToken, String symphonyToken, String receipt);
+
+    /**
+     * Checks a batch of token pairs, which may be for different pods.  The pairs remain stored.  Stores override this
+     * to check the whole batch in one pass, rather than one pair at a time.
+     *
+     * @param tokenPairs pairs to check
+     * @return for each pair, in the same order, true if the pair is stored for its pod and hasn't expired
+     */
+    default boolean[] validateAll(List<TokenPair> tokenPairs) {
+        boolean[] valid = new boolean[tokenPairs.size()];
+        for (int i = 0; i < valid.length; i++) {
+            TokenPair pair = tokenPairs.get(i);
+            valid[i] = validate(pair.getCompanyId(), pair.getAppToken(), pair.getSymphonyToken(), pair.getReceipt());
+        }
+        return valid;
+    }
+
+    /**
+     * Checks a token pair and removes it, so that it can only be used once.
+     *
+     * @param companyId ID of company/pod the tokens were exchanged with
+     * @param appToken token generated by this app
+     * @param symphonyToken token returned by the pod
+     * @param receipt receipt returned when the pair was stored, if any
+     * @return true if the pair was stored for the pod and hadn't expired
+     */
+    boolean consume(String companyId, Token appToken, String symphonyToken, String receipt);
+
+    /**
+     * Returns how long, in seconds, a stored pair can be validated.
+     */
+    int getTtlSeconds();
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.tokens;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configuration for the {@link TokenStore}.  Properties are read from application.yaml and are prefixed with
+ * "token-store".
+ */
+@Data
+@ConfigurationProperties(prefix = "token-store")
+public class TokenStoreConfiguration {
+
+    /**
+     * Which store to use: "memory" (default), "redis" or "stateless".
+     */
+    private String type = "memory";
+
+    /**
+     * How long, in seconds, a token pair can be validated after it was created.
+     */
+    private int ttlSeconds = 300;
+
+    /**
+     * Maximum number of token pairs held by the in-memory store for one pod.  Protects other pods from a pod that
+     * creates lots of token pairs.
+     */
+    private int maximumSizePerPod = 1000;
+
+    /**
+     * Maximum number of token pairs held by the in-memory store for all pods.  Protects against DDoS attacks.
+     */
+    private int maximumSize = 100000;
+
+    /**
+     * Host of the Redis server used by the Redis store.
+     */
+    private String redisHost = "localhost";
+
+    /**
+     * Port of the Redis server used by the Redis store.
+     */
+    private int redisPort = 6379;
+
+    /**
+     * Prefix for the keys of token pairs in Redis.  Allows the Redis server to be shared with other data.
+     */
+    private String redisKeyPrefix = "app-auth:token:";
+
+    /**
+     * Base64 encoded secret keys (at least 32 bytes) used by the stateless store to sign receipts.  The first key signs
+     * new receipts, all of them are accepted.  To rotate when servers are upgraded one at a time, first add the new key
+     * second on every server, then move it first, and remove the old key once the TTL has passed.  Adding the new key
+     * first in one step fails logins signed by upgraded servers and validated by the others.
+     */
+    private List<String> hmacKeys = new ArrayList<>();
+}
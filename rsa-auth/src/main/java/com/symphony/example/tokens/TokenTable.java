@@ -0,0 +1,242 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.tokens;
+
+/**
+ * Table of 128 bit keys to 128 bit values with expiration times, held in primitive arrays rather than as objects.
+ * Entries are kept in a ring in the order they were added, which is also the order they expire, since all entries
+ * have the same TTL.  Lookups go through an open addressing (linear probing) index of ring positions.  Removing an
+ * entry that isn't the oldest leaves a hole in the ring, which is skipped when the oldest entries are removed and
+ * dropped when the ring is resized.
+ *
+ * Not thread safe.
+ */
+class TokenTable {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Ring of entries.  Entry with sequence number n is at position n & (capacity - 1)
+    private long[] keyHigh;
+    private long[] keyLow;
+    private long[] valueHigh;
+    private long[] valueLow;
+    private long[] expiresAt;
+    private boolean[] removed;
+
+    // Open addressing index.  Holds ring position + 1, or 0 for an empty slot.  Twice the ring capacity, so it is
+    // never more than half full.
+    private int[] index;
+
+    // Sequence numbers of the oldest entry and of the next entry to be added
+    private long head;
+    private long tail;
+
+    private int size;
+
+    TokenTable() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Returns the number of entries, including expired entries that haven't been removed yet.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds an entry, replacing any entry with the same key.
+     */
+    void put(long keyHigh, long keyLow, long valueHigh, long valueLow, long expiresAt) {
+        int existing = find(keyHigh, keyLow);
+        if (existing >= 0) {
+            // Removed and added again so that the ring stays in expiration order
+            removeAt(existing);
+        }
+
+        if (tail - head == this.keyHigh.length) {
+            // Ring is full (possibly with holes).  Resize so that at least a third is free after dropping the holes.
+            int capacity = INITIAL_CAPACITY;
+            while (capacity < size + size / 2) {
+                capacity <<= 1;
+            }
+            resize(capacity);
+        }
+
+        int position = position(tail++);
+        this.keyHigh[position] = keyHigh;
+        this.keyLow[position] = keyLow;
+        this.valueHigh[position] = valueHigh;
+        this.valueLow[position] = valueLow;
+        this.expiresAt[position] = expiresAt;
+        this.removed[position] = false;
+        insertIntoIndex(position);
+        size++;
+    }
+
+    /**
+     * Returns true if there is an entry for the key with the value.  Doesn't check whether the entry has expired.
+     */
+    boolean contains(long keyHigh, long keyLow, long valueHigh, long valueLow) {
+        int position = find(keyHigh, keyLow);
+        return position >= 0 && this.valueHigh[position] == valueHigh && this.valueLow[position] == valueLow;
+    }
+
+    /**
+     * Removes the entry for the key if it has the value.
+     *
+     * @return true if the entry was removed
+     */
+    boolean remove(long keyHigh, long keyLow, long valueHigh, long valueLow) {
+        int position = find(keyHigh, keyLow);
+        if (position >= 0 && this.valueHigh[position] == valueHigh && this.valueLow[position] == valueLow) {
+            removeAt(position);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the oldest entries while they have expired.
+     *
+     * @param now current time, from the same clock as the expiration times
+     * @return number of entries removed
+     */
+    int removeExpired(long now) {
+        int removedCount = 0;
+        while (size > 0 && now - expiresAt[position(head)] >= 0) {
+            removeAt(position(head));
+            removedCount++;
+        }
+        if (size == 0 && keyHigh.length > INITIAL_CAPACITY) {
+            // Give the memory back when a pod has no pending tokens
+            allocate(INITIAL_CAPACITY);
+        }
+        return removedCount;
+    }
+
+    /**
+     * Removes the oldest entry.
+     *
+     * @return true if there was an entry to remove
+     */
+    boolean removeEldest() {
+        if (size == 0) {
+            return false;
+        }
+        removeAt(position(head));
+        return true;
+    }
+
+    private void removeAt(int position) {
+        removed[position] = true;
+        deleteFromIndex(position);
+        size--;
+
+        // Skip holes so that head is always the oldest entry
+        while (head < tail && removed[position(head)]) {
+            head++;
+        }
+    }
+
+    private int find(long keyHigh, long keyLow) {
+        int mask = index.length - 1;
+        for (int slot = hash(keyHigh, keyLow) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+            int position = index[slot] - 1;
+            if (this.keyHigh[position] == keyHigh && this.keyLow[position] == keyLow) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private void insertIntoIndex(int position) {
+        int mask = index.length - 1;
+        int slot = hash(keyHigh[position], keyLow[position]) & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = position + 1;
+    }
+
+    private void deleteFromIndex(int position) {
+        int mask = index.length - 1;
+        int slot = hash(keyHigh[position], keyLow[position]) & mask;
+        while (index[slot] != position + 1) {
+            slot = (slot + 1) & mask;
+        }
+
+        // Backward shift deletion: move later entries of the probe sequence into the hole, so lookups don't need
+        // tombstones
+        int hole = slot;
+        for (int next = (hole + 1) & mask; index[next] != 0; next = (next + 1) & mask) {
+            int home = hash(keyHigh[index[next] - 1], keyLow[index[next] - 1]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                index[hole] = index[next];
+                hole = next;
+            }
+        }
+        index[hole] = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeyHigh = keyHigh;
+        long[] oldKeyLow = keyLow;
+        long[] oldValueHigh = valueHigh;
+        long[] oldValueLow = valueLow;
+        long[] oldExpiresAt = expiresAt;
+        boolean[] oldRemoved = removed;
+        long oldHead = head;
+        long oldTail = tail;
+        int oldMask = oldKeyHigh.length - 1;
+
+        allocate(capacity);
+        for (long sequence = oldHead; sequence < oldTail; sequence++) {
+            int oldPosition = (int) (sequence & oldMask);
+            if (!oldRemoved[oldPosition]) {
+                int position = position(tail++);
+                keyHigh[position] = oldKeyHigh[oldPosition];
+                keyLow[position] = oldKeyLow[oldPosition];
+                valueHigh[position] = oldValueHigh[oldPosition];
+                valueLow[position] = oldValueLow[oldPosition];
+                expiresAt[position] = oldExpiresAt[oldPosition];
+                insertIntoIndex(position);
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keyHigh = new long[capacity];
+        keyLow = new long[capacity];
+        valueHigh = new long[capacity];
+        valueLow = new long[capacity];
+        expiresAt = new long[capacity];
+        removed = new boolean[capacity];
+        index = new int[capacity * 2];
+        head = 0;
+        tail = 0;
+        size = 0;
+    }
+
+    private int position(long sequence) {
+        return (int) (sequence & (keyHigh.length - 1));
+    }
+
+    private static int hash(long high, long low) {
+        // Tokens are random, so any bits will do.  Mixed anyway in case they aren't.
+        long hash = (high ^ low) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts events and reports both the running total and the average rate per second over the last minute.  Events
+ * are recorded into one bucket per second, so recording is a couple of atomic operations and never blocks.
+ */
+public class RateCounter {
+
+    private static final int WINDOW_SECONDS = 60;
+
+    private final AtomicLong total = new AtomicLong();
+
+    // Count per second, and the (epoch) second each bucket currently holds
+    private final AtomicLongArray counts = new AtomicLongArray(WINDOW_SECONDS);
+    private final AtomicLongArray seconds = new AtomicLongArray(WINDOW_SECONDS);
+
+    /**
+     * Records one event.
+     */
+    public void increment() {
+        total.incrementAndGet();
+
+        long second = System.currentTimeMillis() / 1000;
+        int bucket = (int) (second % WINDOW_SECONDS);
+        long bucketSecond = seconds.get(bucket);
+        if (bucketSecond != second && seconds.compareAndSet(bucket, bucketSecond, second)) {
+            counts.set(bucket, 0);
+        }
+        counts.incrementAndGet(bucket);
+    }
+
+    /**
+     * Returns the number of events recorded since this counter was created.
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * Returns the average number of events per second over the last minute.  This is approximate: an event recorded
+     * at the exact moment its bucket rolls over to a new second may not be counted.
+     */
+    public double getRatePerSecond() {
+        long now = System.currentTimeMillis() / 1000;
+        long sum = 0;
+        for (int bucket = 0; bucket < WINDOW_SECONDS; bucket++) {
+            if (now - seconds.get(bucket) < WINDOW_SECONDS) {
+                sum += counts.get(bucket);
+            }
+        }
+        return (double) sum / WINDOW_SECONDS;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.symphony.client;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint (/circuitbreakers) listing the state of each pod's circuit breaker and bulkhead, and the most
+ * recent circuit breaker state changes.  Only pods with a client in the {@link SymphonyClientFactory} are listed.
+ */
+@Component
+public class CircuitBreakersEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+    private final SymphonyClientFactory clientFactory;
+
+    @Autowired
+    public CircuitBreakersEndpoint(SymphonyClientFactory clientFactory) {
+        super("circuitbreakers");
+        this.clientFactory = clientFactory;
+    }
+
+    @Override
+    public Map<String, Object> invoke() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("pods", clientFactory.getCircuitBreakers());
+        result.put("transitions", clientFactory.getCircuitBreakerTransitions());
+        return result;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.symphony.client;
+
+import com.google.common.base.Ticker;
+import feign.FeignException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Authentication client for one pod that limits the number of calls in flight to the pod (a bulkhead), and stops
+ * calling the pod while its {@link PodCircuitBreaker} is open.  Either way, calls that aren't made fail at once with a
+ * {@link PodUnavailableException}, rather than tying up a thread until the pod times out.
+ *
+ * Calls that fail with I/O errors or HTTP 5xx count as failures.  HTTP 4xx responses mean the pod is up and rejected
+ * the request, so they don't.
+ */
+class GuardedAuthenticationClient implements AuthenticationClient {
+
+    private final String companyId;
+    private final AuthenticationClient delegate;
+    private final PodCircuitBreaker circuitBreaker;
+    private final Semaphore bulkhead;
+    private final int maxConcurrentCalls;
+    private final Ticker ticker;
+    private final LongAdder bulkheadRejections;
+    private final LongAdder circuitBreakerRejections;
+
+    GuardedAuthenticationClient(String companyId, AuthenticationClient delegate, PodCircuitBreaker circuitBreaker,
+                                int maxConcurrentCalls, Ticker ticker, LongAdder bulkheadRejections,
+                                LongAdder circuitBreakerRejections) {
+        this.companyId = companyId;
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = new Semaphore(maxConcurrentCalls);
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.ticker = ticker;
+        this.bulkheadRejections = bulkheadRejections;
+        this.circuitBreakerRejections = circuitBreakerRejections;
+    }
+
+    @Override
+    public PodCertificate getPodCertificate() {
+        return call(delegate::getPodCertificate);
+    }
+
+    @Override
+    public AuthenticateResponse authenticate(AuthenticateRequest request) {
+        return call(() -> delegate.authenticate(request));
+    }
+
+    /**
+     * Describes the pod's Feign client, which names the pod's base URL.
+     */
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    PodCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Returns the number of calls to the pod in flight.
+     */
+    int getConcurrentCalls() {
+        return maxConcurrentCalls - bulkhead.availablePermits();
+    }
+
+    private <T> T call(Supplier<T> call) {
+        if (!bulkhead.tryAcquire()) {
+            bulkheadRejections.increment();
+            throw new PodUnavailableException(companyId, "too many calls in flight", 1);
+        }
+        try {
+            PodCircuitBreaker.Permission permission;
+            try {
+                permission = circuitBreaker.acquirePermission();
+            } catch (PodUnavailableException e) {
+                circuitBreakerRejections.increment();
+                throw e;
+            }
+            long start = ticker.read();
+            boolean failed = true;
+            try {
+                T result = call.get();
+                failed = false;
+                return result;
+            } catch (FeignException e) {
+                failed = e.status() < 400 || e.status() >= 500;
+                throw e;
+            } finally {
+                circuitBreaker.record(permission, failed, ticker.read() - start);
+            }
+        } finally {
+            bulkhead.release();
+        }
+    }
+}
@@ -15,6 +15,11 @@ package com.symphony.symphony.client;
 
 import feign.Client;
 import feign.okhttp.OkHttpClient;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -26,13 +31,17 @@ import java.io.InputStream;
 import java.security.*;
 import java.security.cert.CertificateException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Builds OkHttpClient configured with custom trust store.
+ * Builds OkHttpClient configured with custom trust store, connection pool, timeouts and HTTP versions.
  *
  * @author Dan Nathanson
  */
 @Component
+@Slf4j
 public class HttpClientBuilder {
     private SymphonyClientConfiguration symphonyClientConfiguration;
 
@@ -45,6 +54,17 @@ public class HttpClientBuilder {
      * Builds a HTTP Client for Feign which support custom trust store from application.yaml
      */
     public Client buildClient() {
+        return new OkHttpClient(buildOkHttpClient(EventListener.NONE));
+    }
+
+    /**
+     * Builds the OkHttpClient used by {@link #buildClient()}, with the trust store, connection pool, timeouts and
+     * dispatcher limits from application.yaml.
+     *
+     * @param eventListener notified of the connections and calls made by the client.  Shared by all calls, so it must
+     *                      be thread safe.
+     */
+    public okhttp3.OkHttpClient buildOkHttpClient(EventListener eventListener) {
 
         //
         // Set up trust manager (for trusted server certs).  Can probably just use the standard cacerts file
@@ -109,11 +129,40 @@ public class HttpClientBuilder {
             throw new RuntimeException("Couldn't initialize SSLContext", e);
         }
 
-        Client okHttpClient = new OkHttpClient(new okhttp3.OkHttpClient.Builder()
-                .sslSocketFactory(sslContext.getSocketFactory(), trustManager)
-                .build());
+        List<Protocol> protocols = Collections.singletonList(Protocol.HTTP_1_1);
+        if (symphonyClientConfiguration.isHttp2()) {
+            protocols = Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1);
+            if (!isAlpnSupported()) {
+                log.warn("HTTP/2 is enabled, but this JVM doesn't support ALPN (needs Java 9+ or 8u252+).  Pods will be "
+                         + "called with HTTP/1.1.");
+            }
+        }
 
-        return okHttpClient;
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(symphonyClientConfiguration.getMaxRequestsPerHost());
+
+        return new okhttp3.OkHttpClient.Builder()
+                .sslSocketFactory(sslContext.getSocketFactory(), trustManager)
+                .connectionPool(new ConnectionPool(symphonyClientConfiguration.getMaxIdleConnections(),
+                                                   symphonyClientConfiguration.getKeepAliveSeconds(), TimeUnit.SECONDS))
+                .connectTimeout(symphonyClientConfiguration.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .readTimeout(symphonyClientConfiguration.getReadTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .writeTimeout(symphonyClientConfiguration.getWriteTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .protocols(protocols)
+                .dispatcher(dispatcher)
+                .eventListener(eventListener)
+                .build();
     }
 
+    /**
+     * OkHttp negotiates HTTP/2 with the JDK's ALPN API, which was added in Java 9 and backported to Java 8 update 252.
+     */
+    private static boolean isAlpnSupported() {
+        try {
+            SSLParameters.class.getMethod("setApplicationProtocols", String[].class);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.symphony.client;
+
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker for the calls to one pod.  The outcomes of the most recent calls are kept in a ring of
+ * {@link SymphonyClientConfiguration#getCircuitBreakerWindowSize()} entries.  Once enough calls have been recorded, the
+ * circuit opens when the share of failed calls, or of slow calls, reaches its threshold.  While the circuit is open,
+ * calls fail at once with a {@link PodUnavailableException}.  When the open time has passed, a few trial calls are let
+ * through: the circuit closes if they all succeed in time, and opens again otherwise.
+ *
+ * Synchronized, since the work done while holding the lock is tiny compared with a call to a pod.
+ */
+class PodCircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Told about every change of a breaker's state.  Called while holding the breaker's lock, so must be quick.
+     */
+    interface TransitionListener {
+        void transitioned(String companyId, State from, State to);
+    }
+
+    /**
+     * Returned by {@link #acquirePermission()} and passed back to {@link #record(Permission, boolean, long)}, so that
+     * the outcome only counts in the state the call started in.
+     */
+    static final class Permission {
+
+        private final State state;
+        private final long transitions;
+
+        private Permission(State state, long transitions) {
+            this.state = state;
+            this.transitions = transitions;
+        }
+
+        boolean isTrial() {
+            return state == State.HALF_OPEN;
+        }
+    }
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final String companyId;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long slowCallNanos;
+    private final int slowCallRateThreshold;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final Ticker ticker;
+    private final TransitionListener listener;
+
+    // Ring of the outcomes of recent calls, FAILED and/or SLOW bits
+    private final byte[] outcomes;
+    private int next;
+    private int recorded;
+    private int failed;
+    private int slow;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+
+    // Number of state changes so far, telling apart the calls started in each spell of a state
+    private long transitions;
+
+    // Trial calls that may still start, and that have succeeded, while half open
+    private int trialPermits;
+    private int trialSuccesses;
+
+    PodCircuitBreaker(String companyId, SymphonyClientConfiguration configuration, Ticker ticker,
+                      TransitionListener listener) {
+        this.companyId = companyId;
+        this.outcomes = new byte[configuration.getCircuitBreakerWindowSize()];
+        this.minimumCalls = Math.min(configuration.getCircuitBreakerMinimumCalls(), outcomes.length);
+        this.failureRateThreshold = configuration.getCircuitBreakerFailureRateThreshold();
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getCircuitBreakerSlowCallMillis());
+        this.slowCallRateThreshold = configuration.getCircuitBreakerSlowCallRateThreshold();
+        this.openNanos = TimeUnit.SECONDS.toNanos(configuration.getCircuitBreakerOpenSeconds());
+        this.halfOpenCalls = configuration.getCircuitBreakerHalfOpenCalls();
+        this.ticker = ticker;
+        this.listener = listener;
+    }
+
+    /**
+     * Checks that a call to the pod may start.  Must be followed by {@link #record(Permission, boolean, long)} once the
+     * call ends.
+     *
+     * @return Permission for the call, a trial call if the circuit is half open
+     * @throws PodUnavailableException if the circuit is open, or is half open and all trial calls have started
+     */
+    synchronized Permission acquirePermission() {
+        if (state == State.OPEN) {
+            long remaining = openedAt + openNanos - ticker.read();
+            if (remaining > 0) {
+                throw new PodUnavailableException(companyId, "circuit breaker is open",
+                                                  Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining)));
+            }
+            transition(State.HALF_OPEN);
+            trialPermits = halfOpenCalls;
+            trialSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialPermits == 0) {
+                throw new PodUnavailableException(companyId, "circuit breaker is waiting for trial calls", 1);
+            }
+            trialPermits--;
+        }
+        return new Permission(state, transitions);
+    }
+
+    /**
+     * Records the outcome of a call that was permitted by {@link #acquirePermission()}.  Calls that started before the
+     * circuit last changed state are ignored: a call started while closed doesn't count as a trial call, and a trial
+     * call from an earlier half open spell doesn't count towards this one.
+     *
+     * @param permission returned when the call started
+     * @param failed true if the pod failed the call, rather than rejecting the request
+     * @param durationNanos how long the call took
+     */
+    synchronized void record(Permission permission, boolean failed, long durationNanos) {
+        if (permission.transitions != transitions) {
+            return;
+        }
+        boolean slowCall = durationNanos >= slowCallNanos;
+        switch (state) {
+            case HALF_OPEN:
+                if (failed || slowCall) {
+                    open();
+                } else if (++trialSuccesses == halfOpenCalls) {
+                    clearWindow();
+                    transition(State.CLOSED);
+                }
+                break;
+            case CLOSED:
+                add((byte) ((failed ? FAILED : 0) | (slowCall ? SLOW : 0)));
+                if (recorded >= minimumCalls
+                    && (this.failed * 100 >= failureRateThreshold * recorded
+                        || slow * 100 >= slowCallRateThreshold * recorded)) {
+                    open();
+                }
+                break;
+            default:
+                // No calls are permitted while open
+                break;
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the percentage of failed calls in the window, or -1 if too few calls have been recorded.
+     */
+    synchronized int getFailureRate() {
+        return recorded < minimumCalls ? -1 : failed * 100 / recorded;
+    }
+
+    /**
+     * Returns the percentage of slow calls in the window, or -1 if too few calls have been recorded.
+     */
+    synchronized int getSlowCallRate() {
+        return recorded < minimumCalls ? -1 : slow * 100 / recorded;
+    }
+
+    private void add(byte outcome) {
+        if (recorded == outcomes.length) {
+            remove(outcomes[next]);
+        } else {
+            recorded++;
+        }
+        outcomes[next] = outcome;
+        failed += outcome & FAILED;
+        slow += (outcome & SLOW) >> 1;
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void remove(byte outcome) {
+        failed -= outcome & FAILED;
+        slow -= (outcome & SLOW) >> 1;
+    }
+
+    private void open() {
+        openedAt = ticker.read();
+        transition(State.OPEN);
+    }
+
+    private void clearWindow() {
+        next = 0;
+        recorded = 0;
+        failed = 0;
+        slow = 0;
+    }
+
+    private void transition(State to) {
+        State from = state;
+        state = to;
+        transitions++;
+        listener.transitioned(companyId, from, to);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.symphony.client;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP connections to pods, shared by the Feign clients of all pods.  Counts the connections opened (and how many of
+ * them negotiated HTTP/2) and the TLS handshakes made, and can open a connection to a pod before it is needed
+ * ("warming"), so that the first login doesn't wait for the TCP and TLS handshakes.  A warmed connection stays in the
+ * pool for the keep-alive time.
+ */
+@Slf4j
+class PodConnections {
+
+    // Warming only needs the connection, so any endpoint will do.  The pod cert is small, public, and fetched by this
+    // app anyway.
+    private static final String WARMING_PATH = "/pod/v1/podcert";
+
+    private final OkHttpClient httpClient;
+
+    // Shares the connection pool, but doesn't follow redirects to other hosts
+    private final OkHttpClient warmingClient;
+
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsFailed = new LongAdder();
+    private final LongAdder http2Connections = new LongAdder();
+    private final LongAdder connectionsAcquired = new LongAdder();
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder warmingFailures = new LongAdder();
+
+    PodConnections(HttpClientBuilder clientBuilder) {
+        httpClient = clientBuilder.buildOkHttpClient(new ConnectionCounter());
+        warmingClient = httpClient.newBuilder()
+                .followRedirects(false)
+                .followSslRedirects(false)
+                .build();
+    }
+
+    OkHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Opens a connection to a pod in the background.  Beyond the maximum requests per host, warming requests wait for
+     * earlier ones to the same host to finish.
+     *
+     * @param baseUrl base URL of the pod
+     */
+    void warm(String baseUrl) {
+        HttpUrl url = HttpUrl.parse(baseUrl + WARMING_PATH);
+        if (url == null) {
+            log.warn("Can't warm connection to pod, not an HTTP URL: {}", baseUrl);
+            return;
+        }
+        warmingClient.newCall(new Request.Builder().url(url).build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                log.info("Couldn't warm connection to pod at {}: {}", baseUrl, e.toString());
+                warmingFailures.increment();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                // Any response means the connection is open.  Reading the body returns the connection to the pool.
+                try {
+                    response.body().string();
+                } catch (IOException e) {
+                    log.debug("Couldn't read pod cert while warming connection to {}", baseUrl, e);
+                } finally {
+                    response.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Closes idle connections and stops the threads used for warming.
+     */
+    void close() {
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+    }
+
+    Collection<Metric<?>> metrics() {
+        ConnectionPool connectionPool = httpClient.connectionPool();
+        int idle = connectionPool.idleConnectionCount();
+        return Arrays.asList(new Metric<>("gauge.symphony.client.connections.active", connectionPool.connectionCount() - idle),
+                             new Metric<>("gauge.symphony.client.connections.idle", idle),
+                             new Metric<>("counter.symphony.client.connections.opened", connectionsOpened.sum()),
+                             new Metric<>("counter.symphony.client.connections.failed", connectionsFailed.sum()),
+                             new Metric<>("counter.symphony.client.connections.http2", http2Connections.sum()),
+                             new Metric<>("counter.symphony.client.connections.acquired", connectionsAcquired.sum()),
+                             new Metric<>("counter.symphony.client.connections.tls-handshakes", handshakes.sum()),
+                             new Metric<>("counter.symphony.client.connections.warming-failures", warmingFailures.sum()));
+    }
+
+    /**
+     * Counts connection events for all calls.  Acquired connections that weren't opened came from the pool.
+     */
+    private class ConnectionCounter extends EventListener {
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectionsOpened.increment();
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            if (protocol == Protocol.HTTP_2) {
+                http2Connections.increment();
+            }
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol,
+                                  IOException ioe) {
+            connectionsFailed.increment();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            handshakes.increment();
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            connectionsAcquired.increment();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.symphony.client;
+
+/**
+ * Thrown instead of calling a pod when the pod's circuit breaker is open, or when too many calls to the pod are
+ * already in flight.
+ */
+public class PodUnavailableException extends RuntimeException {
+
+    private final String companyId;
+
+    private final long retryAfterSeconds;
+
+    public PodUnavailableException(String companyId, String reason, long retryAfterSeconds) {
+        super("Pod " + companyId + " is unavailable: " + reason);
+        this.companyId = companyId;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public String getCompanyId() {
+        return companyId;
+    }
+
+    /**
+     * Returns how long, in seconds, the caller should wait before trying again.
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -26,4 +26,101 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @ConfigurationProperties(prefix = "symphony.client")
 public class SymphonyClientConfiguration {
     private String truststoreFilename;
+
+    /**
+     * Maximum number of pods that have a Feign client at once.  The least recently used clients are evicted beyond
+     * this, and rebuilt when their pod is next used.
+     */
+    private int clientCacheMaximumSize = 1000;
+
+    /**
+     * Minutes after which the client of a pod that hasn't been used is evicted.
+     */
+    private int clientCacheIdleMinutes = 60;
+
+    /**
+     * Maximum number of idle connections kept open to pods, for all pods together.
+     */
+    private int maxIdleConnections = 100;
+
+    /**
+     * Seconds an idle connection to a pod is kept open.
+     */
+    private int keepAliveSeconds = 300;
+
+    /**
+     * Milliseconds to wait for a connection to a pod to be opened.
+     */
+    private int connectTimeoutMillis = 10000;
+
+    /**
+     * Milliseconds to wait for data from a pod, once connected.
+     */
+    private int readTimeoutMillis = 10000;
+
+    /**
+     * Milliseconds to wait for a pod to accept data, once connected.
+     */
+    private int writeTimeoutMillis = 10000;
+
+    /**
+     * Maximum number of asynchronous requests, such as connection warming, in flight to one pod host.  Calls made by
+     * the Feign clients are synchronous, and are limited by the threads that make them.
+     */
+    private int maxRequestsPerHost = 5;
+
+    /**
+     * Whether a connection is opened to a pod when the pod info webhook registers it, so that the first login doesn't
+     * wait for the TCP and TLS handshakes.
+     */
+    private boolean warmConnections = true;
+
+    /**
+     * Whether HTTP/2 is offered to pods, negotiated with ALPN during the TLS handshake.  Concurrent calls to a pod that
+     * accepts it share one connection.  Pods that don't accept it are called with HTTP/1.1, one connection per call in
+     * flight.
+     */
+    private boolean http2 = true;
+
+    /**
+     * Maximum number of calls in flight to one pod.  Calls beyond this fail at once with HTTP 503, so a pod that hangs
+     * can't hold every thread that calls pods.  The default matches the default number of pod call threads, so one
+     * busy pod can use all of them; lower it to keep threads free for other pods.
+     */
+    private int maxConcurrentCallsPerPod = 64;
+
+    /**
+     * Number of recent calls to a pod whose outcomes decide whether the pod's circuit breaker opens.
+     */
+    private int circuitBreakerWindowSize = 20;
+
+    /**
+     * Minimum number of recorded calls before a pod's circuit breaker can open.
+     */
+    private int circuitBreakerMinimumCalls = 10;
+
+    /**
+     * Percentage of failed calls (I/O errors and HTTP 5xx) at which a pod's circuit breaker opens.
+     */
+    private int circuitBreakerFailureRateThreshold = 50;
+
+    /**
+     * Calls to a pod taking at least this many milliseconds are slow.
+     */
+    private int circuitBreakerSlowCallMillis = 5000;
+
+    /**
+     * Percentage of slow calls at which a pod's circuit breaker opens.
+     */
+    private int circuitBreakerSlowCallRateThreshold = 50;
+
+    /**
+     * Seconds an open circuit breaker fails calls at once, before letting trial calls through.
+     */
+    private int circuitBreakerOpenSeconds = 30;
+
+    /**
+     * Number of trial calls that must succeed, in time, to close a pod's circuit breaker again.
+     */
+    private int circuitBreakerHalfOpenCalls = 3;
 }
@@ -13,59 +13,307 @@
 
 package com.symphony.symphony.client;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
 import com.symphony.example.pods.PodDirectory;
 import com.symphony.example.pods.PodInfo;
+import com.symphony.example.pods.VersionedPodInfo;
 import feign.Client;
 import feign.Feign;
+import feign.Request;
+import feign.Retryer;
+import feign.codec.Decoder;
+import feign.codec.Encoder;
 import feign.jackson.JacksonDecoder;
 import feign.jackson.JacksonEncoder;
+import feign.okhttp.OkHttpClient;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Creates and manages Feign clients for Symphony pods.  Each pod requires a different Feign client instance since
  * the pod host is configured into the client when it is built.
  *
+ * Clients are built on first use, and kept for the most recently used pods only, bounded by
+ * {@link SymphonyClientConfiguration#getClientCacheMaximumSize()} and evicted after
+ * {@link SymphonyClientConfiguration#getClientCacheIdleMinutes()} without use.  An evicted pod's client is rebuilt from
+ * the {@link PodDirectory} when the pod is next used, so memory doesn't grow with the number of registered pods.  All
+ * clients share the HTTP client and the Jackson encoder and decoder, which are thread safe.
+ *
+ * The HTTP client's connection pool and timeouts are configured in {@link SymphonyClientConfiguration}.  When the pod
+ * info webhook registers a pod, a connection to the pod is opened in the background, so that the first login doesn't
+ * wait for the TCP and TLS handshakes.
+ *
+ * When the pod info webhook tells the {@link PodDirectory} about a pod that has a client, the client is rebuilt if the
+ * pod's URL changed, so logins never go to a pod's old host.  Each pod's client is replaced atomically, so getting a
+ * client is a single lookup.
+ *
+ * Each pod's client has its own {@link PodCircuitBreaker} and a limit on the calls in flight to the pod
+ * ({@link GuardedAuthenticationClient}), so a pod that is down or hangs fails logins for that pod at once, and doesn't
+ * hold the threads that call other pods.  Feign doesn't retry failed calls, since retries would hide failures from the
+ * circuit breaker and multiply the time a hung pod holds a thread.  Circuit breaker state changes are logged, counted,
+ * and listed by the {@link CircuitBreakersEndpoint}.
+ *
  * @author Dan Nathanson
  */
 @Component
-public class SymphonyClientFactory {
-    private Map<String, AuthenticationClient> clients = new HashMap<>();
-    private Client okHttpClient;
-    private PodDirectory podDirectory;
+@Slf4j
+public class SymphonyClientFactory implements PublicMetrics {
+    private static final int MAX_TRANSITIONS = 100;
+
+    private final Cache<String, PodClient> clients;
+    private final PodConnections connections;
+    private final Client okHttpClient;
+    private final Request.Options options;
+    private final boolean warmConnections;
+    private final Encoder encoder = new JacksonEncoder();
+    private final Decoder decoder = new JacksonDecoder();
+    private final PodDirectory podDirectory;
+    private final SymphonyClientConfiguration configuration;
+    private final Ticker ticker;
+
+    // Most recent circuit breaker state changes, oldest first
+    private final Deque<CircuitBreakerTransition> transitions = new ArrayDeque<>();
+
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder circuitsOpened = new LongAdder();
+    private final LongAdder circuitsHalfOpened = new LongAdder();
+    private final LongAdder circuitsClosed = new LongAdder();
+    private final LongAdder circuitBreakerRejections = new LongAdder();
+    private final LongAdder bulkheadRejections = new LongAdder();
 
     @Autowired
-    public SymphonyClientFactory(HttpClientBuilder clientBuilder, PodDirectory podDirectory) {
+    public SymphonyClientFactory(HttpClientBuilder clientBuilder, PodDirectory podDirectory,
+                                 SymphonyClientConfiguration configuration) {
+        this(clientBuilder, podDirectory, configuration, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    SymphonyClientFactory(HttpClientBuilder clientBuilder, PodDirectory podDirectory,
+                          SymphonyClientConfiguration configuration, Ticker ticker) {
         this.podDirectory = podDirectory;
-        this.okHttpClient = clientBuilder.buildClient();
+        this.configuration = configuration;
+        this.ticker = ticker;
+        this.connections = new PodConnections(clientBuilder);
+        this.okHttpClient = new OkHttpClient(connections.getHttpClient());
+        // Same timeouts as the OkHttpClient.  Otherwise Feign's OkHttpClient builds another one for every request.
+        this.options = new Request.Options(configuration.getConnectTimeoutMillis(), configuration.getReadTimeoutMillis());
+        this.warmConnections = configuration.isWarmConnections();
+        this.clients = CacheBuilder.newBuilder()
+                .maximumSize(configuration.getClientCacheMaximumSize())
+                .expireAfterAccess(configuration.getClientCacheIdleMinutes(), TimeUnit.MINUTES)
+                .ticker(ticker)
+                .removalListener(this::clientRemoved)
+                .build();
+        podDirectory.addListener(this::podInfoUpdated);
     }
 
     /**
-     * Returns a Feign client for the Symphony authentication REST endpoints.  Reuses existing client if already
-     * built, otherwise builds and caches a new one.
+     * Returns a Feign client for the Symphony authentication REST endpoints.  Its calls throw
+     * {@link PodUnavailableException} without calling the pod when the pod's circuit breaker is open or too many calls
+     * to the pod are in flight.
      * @param companyId ID of company/pod for which client is needed
      * @return REST client for pod
-     * @throws IllegalStateException if no pod info is present for pod ID
+     * @throws IllegalStateException if no pod info is present for pod ID, or it has no pod URL
      */
     public AuthenticationClient getAuthenticationClient(String companyId) {
-        // Gets pod info from PodDirectory. This will throw IllegalStateException if no pod info is available for pod ID
-        PodInfo podInfo = podDirectory.getPodInfo(companyId);
+        PodClient podClient = clients.getIfPresent(companyId);
+        if (podClient == null) {
+            // Gets pod info from PodDirectory. This will throw IllegalStateException if no pod info is available for pod ID
+            VersionedPodInfo podInfo = podDirectory.getVersionedPodInfo(companyId);
+            String baseUrl = baseUrl(podInfo.getPodInfo());
+            podClient = clients.asMap().compute(companyId,
+                                                (id, existing) -> update(id, existing, podInfo.getVersion(), baseUrl));
+        }
+        return podClient.authenticationClient;
+    }
 
-        final String podHost = podInfo.getPayload().getPodUrl();
+    /**
+     * Closes idle connections to pods.
+     */
+    @PreDestroy
+    public void stop() {
+        connections.close();
+    }
 
-        // BUG - in 1.53.2, the PodInfo object doesn't contain the pod's base URL.  podUrl is <baseurl>/pod, so we can
-        // derive baseUrl from podUrl.
-        final String baseUrl = podHost.substring(0, podHost.indexOf("/pod"));
+    /**
+     * Returns the state of the circuit breaker and bulkhead of each pod that has a client, by company ID.
+     */
+    public Map<String, Map<String, Object>> getCircuitBreakers() {
+        Map<String, Map<String, Object>> circuitBreakers = new LinkedHashMap<>();
+        clients.asMap().forEach((companyId, podClient) -> {
+            GuardedAuthenticationClient client = podClient.authenticationClient;
+            PodCircuitBreaker circuitBreaker = client.getCircuitBreaker();
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("state", circuitBreaker.getState());
+            status.put("failureRate", circuitBreaker.getFailureRate());
+            status.put("slowCallRate", circuitBreaker.getSlowCallRate());
+            status.put("concurrentCalls", client.getConcurrentCalls());
+            circuitBreakers.put(companyId, status);
+        });
+        return circuitBreakers;
+    }
+
+    /**
+     * Returns the most recent circuit breaker state changes, oldest first.
+     */
+    public List<CircuitBreakerTransition> getCircuitBreakerTransitions() {
+        synchronized (transitions) {
+            return new ArrayList<>(transitions);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>(connections.metrics());
+        metrics.addAll(Arrays.asList(new Metric<>("gauge.symphony.client.cache.size", clients.size()),
+                                     new Metric<>("counter.symphony.client.cache.builds", builds.sum()),
+                                     new Metric<>("counter.symphony.client.cache.evictions", evictions.sum()),
+                                     new Metric<>("gauge.symphony.client.circuit-breaker.open", openCircuits()),
+                                     new Metric<>("counter.symphony.client.circuit-breaker.opened",
+                                                  circuitsOpened.sum()),
+                                     new Metric<>("counter.symphony.client.circuit-breaker.half-opened",
+                                                  circuitsHalfOpened.sum()),
+                                     new Metric<>("counter.symphony.client.circuit-breaker.closed",
+                                                  circuitsClosed.sum()),
+                                     new Metric<>("counter.symphony.client.circuit-breaker.rejections",
+                                                  circuitBreakerRejections.sum()),
+                                     new Metric<>("counter.symphony.client.bulkhead.rejections",
+                                                  bulkheadRejections.sum())));
+        return metrics;
+    }
+
+    /**
+     * Only pods that have a client are updated.  Other pods get a client on first use, so registering lots of pods
+     * doesn't evict the clients of pods in use.  The connection is warmed either way.
+     */
+    private void podInfoUpdated(VersionedPodInfo podInfo) {
+        String baseUrl;
+        try {
+            baseUrl = baseUrl(podInfo.getPodInfo());
+        } catch (IllegalStateException e) {
+            log.warn("Can't build client for pod: {}", e.getMessage());
+            // Don't keep using the old host.  Lookups will fail until the pod info is fixed.
+            clients.asMap().computeIfPresent(podInfo.getPodInfo().getCompanyId(),
+                                             (companyId, existing) -> existing.version < podInfo.getVersion() ? null : existing);
+            return;
+        }
+        if (warmConnections) {
+            connections.warm(baseUrl);
+        }
+        clients.asMap().computeIfPresent(podInfo.getPodInfo().getCompanyId(),
+                                         (companyId, existing) -> update(companyId, existing, podInfo.getVersion(), baseUrl));
+    }
 
-        // Return existing (or create, cache and return new instance)
-        return clients.computeIfAbsent(companyId, k -> Feign.builder()
-                .encoder(new JacksonEncoder())
-                .decoder(new JacksonDecoder())
+    /**
+     * Makes sure the pod's client is for the base URL, unless the client was built from newer pod info.  A client for
+     * a new URL gets a new circuit breaker, since the old one's outcomes were for the old host.
+     */
+    private PodClient update(String companyId, PodClient existing, long version, String baseUrl) {
+        if (existing != null && existing.version >= version) {
+            return existing;
+        }
+        if (existing != null && existing.baseUrl.equals(baseUrl)) {
+            return new PodClient(version, baseUrl, existing.authenticationClient);
+        }
+        log.debug("Building client for pod {} at {}", companyId, baseUrl);
+        builds.increment();
+        AuthenticationClient client = Feign.builder()
+                .encoder(encoder)
+                .decoder(decoder)
                 .client(okHttpClient)
-                .target(AuthenticationClient.class, baseUrl));
+                .options(options)
+                .retryer(Retryer.NEVER_RETRY)
+                .target(AuthenticationClient.class, baseUrl);
+        PodCircuitBreaker circuitBreaker = new PodCircuitBreaker(companyId, configuration, ticker,
+                                                                 this::circuitBreakerTransitioned);
+        return new PodClient(version, baseUrl, new GuardedAuthenticationClient(
+                companyId, client, circuitBreaker, configuration.getMaxConcurrentCallsPerPod(), ticker,
+                bulkheadRejections, circuitBreakerRejections));
+    }
+
+    private void circuitBreakerTransitioned(String companyId, PodCircuitBreaker.State from,
+                                            PodCircuitBreaker.State to) {
+        switch (to) {
+            case OPEN:
+                log.warn("Circuit breaker for pod {} is open, calls to the pod will fail for {} seconds",
+                         companyId, configuration.getCircuitBreakerOpenSeconds());
+                circuitsOpened.increment();
+                break;
+            case HALF_OPEN:
+                log.info("Circuit breaker for pod {} is half open, trying calls to the pod", companyId);
+                circuitsHalfOpened.increment();
+                break;
+            default:
+                log.info("Circuit breaker for pod {} is closed", companyId);
+                circuitsClosed.increment();
+                break;
+        }
+        synchronized (transitions) {
+            if (transitions.size() == MAX_TRANSITIONS) {
+                transitions.removeFirst();
+            }
+            transitions.addLast(new CircuitBreakerTransition(companyId, from.name(), to.name(),
+                                                             Instant.now().toString()));
+        }
+    }
+
+    private long openCircuits() {
+        return clients.asMap().values().stream()
+                .filter(podClient -> podClient.authenticationClient.getCircuitBreaker().getState()
+                                     == PodCircuitBreaker.State.OPEN)
+                .count();
+    }
+
+    private void clientRemoved(RemovalNotification<String, PodClient> notification) {
+        if (notification.wasEvicted()) {
+            log.debug("Evicted client for pod {} ({})", notification.getKey(), notification.getCause());
+            evictions.increment();
+        }
     }
 
+    private static String baseUrl(PodInfo podInfo) {
+        // BUG - in 1.53.2, the PodInfo object doesn't contain the pod's base URL.  podUrl is <baseurl>/pod, so we can
+        // derive baseUrl from podUrl.  Only a trailing "/pod", since the host name may start with "pod".
+        String podUrl = podInfo.getPayload() != null ? podInfo.getPayload().getPodUrl() : null;
+        String path = podUrl != null && podUrl.endsWith("/") ? "/pod/" : "/pod";
+        if (podUrl == null || !podUrl.endsWith(path)) {
+            throw new IllegalStateException("Pod URL for pod with company ID '" + podInfo.getCompanyId()
+                                            + "' doesn't end with /pod: " + podUrl);
+        }
+        return podUrl.substring(0, podUrl.length() - path.length());
+    }
+
+    private static class PodClient {
+        // Version of the pod info the client was built from
+        final long version;
+        final String baseUrl;
+        final GuardedAuthenticationClient authenticationClient;
+
+        PodClient(long version, String baseUrl, GuardedAuthenticationClient authenticationClient) {
+            this.version = version;
+            this.baseUrl = baseUrl;
+            this.authenticationClient = authenticationClient;
+        }
+    }
 }
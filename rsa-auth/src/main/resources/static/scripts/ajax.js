@@ -2,7 +2,8 @@ function Ajax () {
 }
 
 Ajax.prototype = {
-    call : function(url, data, method, contentType) {
+    // If withXhr is set, resolves {data, xhr} so that the caller can read response headers
+    call : function(url, data, method, contentType, withXhr) {
         data = (data === undefined)?{}:data;
 
         var deferred = Q.defer();
@@ -21,7 +22,7 @@ Ajax.prototype = {
             dataType: type,
             contentType: contentType?contentType:undefined,
             error: this.onAjaxError.bind(this, deferred),
-            success: this.onAjaxSuccess.bind(this, deferred),
+            success: this.onAjaxSuccess.bind(this, deferred, withXhr),
             type: method,
             url: url,
             xhrFields: {
@@ -32,9 +33,9 @@ Ajax.prototype = {
         return deferred.promise;
     },
 
-    onAjaxSuccess : function(deferred, response, status, xhr)
+    onAjaxSuccess : function(deferred, withXhr, response, status, xhr)
     {
-        deferred.resolve(response);
+        deferred.resolve(withXhr ? {data: response, xhr: xhr} : response);
     },
 
     onAjaxError : function(deferred, jqXHR, textStatus, errorThrown)
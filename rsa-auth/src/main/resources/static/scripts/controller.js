@@ -17,6 +17,11 @@ var appToken;
 // ID of pod/company - comes back from 'hello'
 var companyId;
 
+// Receipt for the token pair, returned from /authentication when the server doesn't store the pair, passed to
+// /validateTokens.  Sent in the request body since browsers blocking third party cookies (like Safari) don't send
+// the receipt cookie from inside the Symphony client.
+var receipt;
+
 // Kicks off app authentication flow at server.  Passes pod ID which came from 'hello' call previously.
 // Returns Symphony token.
 function authenticate(response) {
@@ -24,12 +29,13 @@ function authenticate(response) {
     console.log('Response: ', response);
     companyId = ''+ response.pod;
 
-    // /initiate-app-auth returns app token in body (only)
-    return ajax.call('/initiate-app-auth', companyId, 'POST', 'text/text')
-        .then(function(data)
+    // /initiate-app-auth returns app token in body, and receipt (if any) in a header
+    return ajax.call('/initiate-app-auth', companyId, 'POST', 'text/text', true)
+        .then(function(result)
         {
-            appToken = data;
-            return Q({appId: appId, tokenA: data});
+            appToken = result.data;
+            receipt = result.xhr.getResponseHeader('X-App-Auth-Receipt') || undefined;
+            return Q({appId: appId, tokenA: result.data});
         }.bind(this));
 }
 
@@ -41,7 +47,8 @@ function validate(response)
     var request = {
         companyId : companyId,
         symphonyToken : response.tokenS,
-        appToken : appToken
+        appToken : appToken,
+        receipt : receipt
     };
 
     return ajax.call('/validate-tokens', request, 'POST', 'application/json')
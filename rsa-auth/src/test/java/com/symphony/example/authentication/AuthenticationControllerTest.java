@@ -16,21 +16,31 @@ package com.symphony.example.authentication;
 import com.symphony.example.users.User;
 import com.symphony.example.users.UserNotFoundException;
 import com.symphony.example.users.UserService;
+import com.symphony.symphony.client.PodUnavailableException;
 import io.restassured.module.mockmvc.RestAssuredMockMvc;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import javax.security.auth.login.LoginException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 import static io.restassured.module.mockmvc.RestAssuredMockMvc.given;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.isEmptyOrNullString;
+import static org.hamcrest.Matchers.nullValue;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
@@ -45,34 +55,89 @@ public class AuthenticationControllerTest {
     private AuthenticationService authenticationService;
     @Mock
     private UserService userService;
+    @Captor
+    private ArgumentCaptor<List<ValidateTokensRequest>> validateTokensRequests;
+
+    private BoundedExecutor podCallExecutor;
 
     @Before
     public void setup() {
+        podCallExecutor = new AuthenticationExecutors().podCallExecutor(new AuthenticationConfig());
     }
 
     @After
     public void tearDown() {
         RestAssuredMockMvc.reset();
+        podCallExecutor.stop();
     }
 
     @Test
     public void authenticate() throws Exception {
-        Mockito.when(authenticationService.initiateAppAuthentication("pod-id")).thenReturn("symphony-token");
+        Mockito.when(authenticationService.initiateAppAuthentication("pod-id")).thenReturn(new IssuedAppToken("app-token", null, 300));
+        given()
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
+                .body("pod-id")
+        .when()
+                .async().post("/initiate-app-auth")
+        .then()
+                .assertThat().statusCode(200)
+                .header("Set-Cookie", nullValue())
+                .header("X-App-Auth-Receipt", nullValue())
+                .body(equalTo("\"app-token\""));
+    }
+
+    @Test
+    public void authenticateSetsReceiptCookie() throws Exception {
+        Mockito.when(authenticationService.initiateAppAuthentication("pod-id")).thenReturn(new IssuedAppToken("app-token", "receipt", 300));
+        given()
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
+                .body("pod-id")
+        .when()
+                .async().post("/initiate-app-auth")
+        .then()
+                .assertThat().statusCode(200)
+                .header("X-App-Auth-Receipt", equalTo("receipt"))
+                .header("Set-Cookie", equalTo("app-auth-receipt-app-token=receipt; Max-Age=300; Path=/validate-tokens; HttpOnly; "
+                                              + "Secure; SameSite=None"))
+                .body(equalTo("\"app-token\""));
+    }
+
+    @Test
+    public void authenticateRejectedWhenPodCallsSaturated() throws Exception {
+        BoundedExecutor saturatedExecutor = Mockito.mock(BoundedExecutor.class);
+        Mockito.doThrow(new RejectedExecutionException()).when(saturatedExecutor).execute(Mockito.any());
         given()
-                .standaloneSetup(new AuthenticationController(authenticationService, userService))
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, saturatedExecutor))
                 .body("pod-id")
         .when()
                 .post("/initiate-app-auth")
         .then()
-                .assertThat(status().isOk())
-                .body(equalTo("\"symphony-token\""));
+                .assertThat(status().isServiceUnavailable())
+                .header("Retry-After", equalTo("1"));
+
+        Mockito.verifyZeroInteractions(authenticationService);
+    }
+
+    @Test
+    public void authenticateFailsFastWhenPodUnavailable() throws Exception {
+        Mockito.when(authenticationService.initiateAppAuthentication("pod-id"))
+               .thenThrow(new PodUnavailableException("pod-id", "circuit breaker is open", 25));
+        given()
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
+                .body("pod-id")
+        .when()
+                .async().post("/initiate-app-auth")
+        .then()
+                .assertThat().statusCode(503)
+                .header("Retry-After", equalTo("25"))
+                .body(equalTo("\"Pod pod-id is unavailable: circuit breaker is open\""));
     }
 
     @Test
     public void validateTokensValid() throws Exception {
-        Mockito.when(authenticationService.validateTokens("app-token", "symphony-token")).thenReturn(true);
+        Mockito.when(authenticationService.validateTokens("pod-id", "app-token", "symphony-token", null)).thenReturn(true);
         given()
-                .standaloneSetup(new AuthenticationController(authenticationService, userService))
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
                 .contentType("application/json")
                 .body("{" +
                       "    \"companyId\" : \"pod-id\"," +
@@ -88,9 +153,9 @@ public class AuthenticationControllerTest {
 
     @Test
     public void validateTokensInvalid() throws Exception {
-        Mockito.when(authenticationService.validateTokens("app-token", "symphony-token")).thenReturn(false);
+        Mockito.when(authenticationService.validateTokens("pod-id", "app-token", "symphony-token", null)).thenReturn(false);
         given()
-                .standaloneSetup(new AuthenticationController(authenticationService, userService))
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
                 .contentType("application/json")
                 .body("{" +
                       "    \"companyId\" : \"pod-id\"," +
@@ -104,11 +169,115 @@ public class AuthenticationControllerTest {
                 .body(equalTo("\"Invalid\""));
     }
 
+    @Test
+    public void validateTokensWithReceiptCookie() throws Exception {
+        Mockito.when(authenticationService.validateTokens("pod-id", "app-token", "symphony-token", "receipt")).thenReturn(true);
+        given()
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
+                .contentType("application/json")
+                .cookie("app-auth-receipt-app-token", "receipt")
+                .cookie("app-auth-receipt-other-app-token", "other-receipt")
+                .body("{" +
+                      "    \"companyId\" : \"pod-id\"," +
+                      "    \"appToken\" : \"app-token\"," +
+                      "    \"symphonyToken\" : \"symphony-token\"" +
+                      "}")
+        .when()
+                .post("/validate-tokens")
+        .then()
+                .assertThat(status().isOk())
+                .body(equalTo("\"Valid\""));
+    }
+
+    @Test
+    public void validateTokensBatch() throws Exception {
+        Mockito.when(authenticationService.validateTokens(Mockito.anyListOf(ValidateTokensRequest.class)))
+               .thenReturn(new boolean[] {true, false});
+        given()
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
+                .contentType("application/json")
+                .cookie("app-auth-receipt-app-token-1", "receipt-1")
+                .body("[" +
+                      "    { \"companyId\" : \"pod-id\", \"appToken\" : \"app-token-1\", \"symphonyToken\" : \"symphony-token-1\" }," +
+                      "    { \"companyId\" : \"pod-id\", \"appToken\" : \"app-token-2\", \"symphonyToken\" : \"symphony-token-2\" }" +
+                      "]")
+        .when()
+                .post("/validate-tokens/batch")
+        .then()
+                .assertThat(status().isOk())
+                .body("appToken", contains("app-token-1", "app-token-2"))
+                .body("valid", contains(true, false));
+
+        Mockito.verify(authenticationService).validateTokens(validateTokensRequests.capture());
+        assertThat(validateTokensRequests.getValue()).extracting("symphonyToken", "receipt")
+                                                     .containsExactly(tuple("symphony-token-1", "receipt-1"),
+                                                                      tuple("symphony-token-2", null));
+    }
+
+    @Test
+    public void validateTokensBatchEmpty() throws Exception {
+        given()
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
+                .contentType("application/json")
+                .body("[]")
+        .when()
+                .post("/validate-tokens/batch")
+        .then()
+                .assertThat(status().isBadRequest());
+
+        Mockito.verifyZeroInteractions(authenticationService);
+    }
+
+    @Test
+    public void validateTokensBatchNullPair() throws Exception {
+        Mockito.when(authenticationService.validateTokens(Mockito.<List<ValidateTokensRequest>>any()))
+               .thenReturn(new boolean[] {true, false});
+        given()
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
+                .contentType("application/json")
+                .body("[" +
+                      "    { \"companyId\" : \"pod-id\", \"appToken\" : \"app-token-1\", \"symphonyToken\" : \"symphony-token-1\" }," +
+                      "    null" +
+                      "]")
+        .when()
+                .post("/validate-tokens/batch")
+        .then()
+                .assertThat(status().isOk())
+                .body("appToken", contains("app-token-1", null))
+                .body("valid", contains(true, false));
+
+        Mockito.verify(authenticationService).validateTokens(validateTokensRequests.capture());
+        assertThat(validateTokensRequests.getValue()).hasSize(2).containsNull();
+    }
+
+    @Test
+    public void validateTokensBatchIncompletePair() throws Exception {
+        Mockito.when(authenticationService.validateTokens(Mockito.<List<ValidateTokensRequest>>any()))
+               .thenReturn(new boolean[] {true, false});
+        given()
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
+                .contentType("application/json")
+                .body("[" +
+                      "    { \"companyId\" : \"pod-id\", \"appToken\" : \"app-token-1\", \"symphonyToken\" : \"symphony-token-1\" }," +
+                      "    { \"companyId\" : \"pod-id\", \"appToken\" : \"app-token-2\" }" +
+                      "]")
+        .when()
+                .post("/validate-tokens/batch")
+        .then()
+                .assertThat(status().isOk())
+                .body("appToken", contains("app-token-1", "app-token-2"))
+                .body("valid", contains(true, false));
+
+        Mockito.verify(authenticationService).validateTokens(validateTokensRequests.capture());
+        assertThat(validateTokensRequests.getValue()).extracting("symphonyToken")
+                                                     .containsExactly("symphony-token-1", null);
+    }
+
     @Test
     public void validateTokensBadRequest() throws Exception {
-        Mockito.when(authenticationService.validateTokens("app-token", "symphony-token")).thenReturn(false);
+        Mockito.when(authenticationService.validateTokens("pod-id", "app-token", "symphony-token", null)).thenReturn(false);
         given()
-                .standaloneSetup(new AuthenticationController(authenticationService, userService))
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
         .when()
                 .post("/validate-tokens")
         .then()
@@ -118,20 +287,20 @@ public class AuthenticationControllerTest {
 
     @Test
     public void jwtLoginMappingFound() throws Exception {
-        Mockito.when(authenticationService.getUserFromJwt("the-jwt", "pod-id")).thenReturn("symphony-username");
+        Mockito.when(authenticationService.getUserFromJwt("the-jwt", "pod-id")).thenReturn(CompletableFuture.completedFuture("symphony-username"));
         User user = new User("display-name", "app-username");
         Mockito.when(userService.findBySymphonyId("symphony-username")).thenReturn(user);
         given()
-                .standaloneSetup(new AuthenticationController(authenticationService, userService))
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
                 .contentType("application/json")
                 .body("{ " +
                       "    \"companyId\" : \"pod-id\"," +
                       "    \"jwt\" : \"the-jwt\"" +
                       "}")
         .when()
-                .post("/login-with-jwt")
+                .async().post("/login-with-jwt")
         .then()
-                .assertThat(status().isOk())
+                .assertThat().statusCode(200)
                 .body("jwtValid", equalTo(true),
                       "userFound", equalTo(true),
                       "message", equalTo("Hello display-name"),
@@ -140,19 +309,19 @@ public class AuthenticationControllerTest {
 
     @Test
     public void jwtLoginNoMappingFound() throws Exception {
-        Mockito.when(authenticationService.getUserFromJwt("the-jwt", "pod-id")).thenReturn("symphony-username");
+        Mockito.when(authenticationService.getUserFromJwt("the-jwt", "pod-id")).thenReturn(CompletableFuture.completedFuture("symphony-username"));
         Mockito.when(userService.findBySymphonyId("symphony-username")).thenReturn(null);
         given()
-                .standaloneSetup(new AuthenticationController(authenticationService, userService))
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
                 .contentType("application/json")
                 .body("{ " +
                       "    \"companyId\" : \"pod-id\"," +
                       "    \"jwt\" : \"the-jwt\"" +
                       "}")
         .when()
-                .post("/login-with-jwt")
+                .async().post("/login-with-jwt")
         .then()
-                .assertThat(status().isOk())
+                .assertThat().statusCode(200)
                 .body("jwtValid", equalTo(true),
                       "userFound", equalTo(false),
                       "message", equalTo("Could not find user corresponding to Symphony username from JWT"),
@@ -162,19 +331,19 @@ public class AuthenticationControllerTest {
     @Test
     public void jwtLoginFailedAuth() throws Exception {
         Mockito.when(authenticationService.getUserFromJwt("the-jwt", "pod-id"))
-               .thenThrow(new LoginException("expected"));
+               .thenReturn(failedFuture(new LoginException("expected")));
 
         given()
-                .standaloneSetup(new AuthenticationController(authenticationService, userService))
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
                 .contentType("application/json")
                 .body("{ " +
                       "    \"companyId\" : \"pod-id\"," +
                       "    \"jwt\" : \"the-jwt\"" +
                       "}")
         .when()
-                .post("/login-with-jwt")
+                .async().post("/login-with-jwt")
         .then()
-                .assertThat(status().isUnauthorized())
+                .assertThat().statusCode(401)
                 .body("jwtValid", equalTo(false),
                       "userFound", equalTo(false),
                       "message", equalTo("Could not parse or verify signature of JWT"),
@@ -184,15 +353,15 @@ public class AuthenticationControllerTest {
     @Test
     public void jwtLoginBadRequest() throws Exception {
         given()
-                .standaloneSetup(new AuthenticationController(authenticationService, userService))
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
                 .contentType("application/json")
                 .body("{ " +
                       "    \"jwt\" : \"the-jwt\"" +
                       "}")
         .when()
-                .post("/login-with-jwt")
+                .async().post("/login-with-jwt")
         .then()
-                .assertThat(status().isBadRequest())
+                .assertThat().statusCode(400)
                 .body("jwtValid", equalTo(false),
                       "userFound", equalTo(false),
                       "message", equalTo("Missing JWT or pod ID in request"),
@@ -201,11 +370,11 @@ public class AuthenticationControllerTest {
 
     @Test
     public void usernameLoginMappingFound() throws Exception {
-        Mockito.when(authenticationService.getUserFromJwt("the-jwt", "company-id")).thenReturn("symphony-username");
+        Mockito.when(authenticationService.getUserFromJwt("the-jwt", "company-id")).thenReturn(CompletableFuture.completedFuture("symphony-username"));
         User user = new User("display-name", "app-username");
         Mockito.when(userService.get("app-username")).thenReturn(user);
         given()
-                .standaloneSetup(new AuthenticationController(authenticationService, userService))
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
                 .contentType("application/json")
                 .body("{ " +
                       "    \"username\" : \"app-username\"," +
@@ -213,9 +382,9 @@ public class AuthenticationControllerTest {
                       "    \"jwt\" : \"the-jwt\"" +
                       "}")
                 .when()
-                .post("/login-with-username")
+                .async().post("/login-with-username")
                 .then()
-                .assertThat(status().isOk())
+                .assertThat().statusCode(200)
                 .body("jwtValid", equalTo(true),
                       "userFound", equalTo(true),
                       "message", equalTo("Hello display-name"),
@@ -226,16 +395,16 @@ public class AuthenticationControllerTest {
     @Test
     public void usernameLoginBadRequest() throws Exception {
         given()
-                .standaloneSetup(new AuthenticationController(authenticationService, userService))
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
                 .contentType("application/json")
                 .body("{ " +
                       "    \"jwt\" : \"the-jwt\"," +
                       "    \"companyId\" : \"pod-id\"" +
                       "}")
                 .when()
-                .post("/login-with-username")
+                .async().post("/login-with-username")
                 .then()
-                .assertThat(status().isBadRequest())
+                .assertThat().statusCode(400)
                 .body("jwtValid", equalTo(false),
                         "userFound", equalTo(false),
                         "message", equalTo("Missing username, JWT or pod ID in request"),
@@ -244,10 +413,10 @@ public class AuthenticationControllerTest {
 
     @Test
     public void usernameLoginUserNotFound() throws Exception {
-        Mockito.when(authenticationService.getUserFromJwt("the-jwt", "pod-id")).thenReturn("symphony-username");
+        Mockito.when(authenticationService.getUserFromJwt("the-jwt", "pod-id")).thenReturn(CompletableFuture.completedFuture("symphony-username"));
         Mockito.when(userService.get("app-username")).thenThrow(new UserNotFoundException("expected"));
         given()
-                .standaloneSetup(new AuthenticationController(authenticationService, userService))
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
                 .contentType("application/json")
                 .body("{ " +
                         "    \"username\" : \"app-username\"," +
@@ -255,9 +424,9 @@ public class AuthenticationControllerTest {
                         "    \"jwt\" : \"the-jwt\"" +
                         "}")
                 .when()
-                .post("/login-with-username")
+                .async().post("/login-with-username")
                 .then()
-                .assertThat(status().isUnauthorized())
+                .assertThat().statusCode(401)
                 .body("jwtValid", equalTo(false),
                       "userFound", equalTo(false),
                       "message", equalTo("Could not find user with username 'app-username'"),
@@ -268,10 +437,10 @@ public class AuthenticationControllerTest {
     public void usernameLoginBadJwt() throws Exception {
         User user = new User("display-name", "app-username");
         Mockito.when(userService.get("app-username")).thenReturn(user);
-        Mockito.when(authenticationService.getUserFromJwt("the-jwt", "pod-id")).thenThrow(new LoginException("expected"));
+        Mockito.when(authenticationService.getUserFromJwt("the-jwt", "pod-id")).thenReturn(failedFuture(new LoginException("expected")));
 
         given()
-                .standaloneSetup(new AuthenticationController(authenticationService, userService))
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
                 .contentType("application/json")
                 .body("{ " +
                       "    \"username\" : \"app-username\"," +
@@ -279,14 +448,64 @@ public class AuthenticationControllerTest {
                       "    \"jwt\" : \"the-jwt\"" +
                       "}")
                 .when()
-                .post("/login-with-jwt")
+                .async().post("/login-with-username")
                 .then()
-                .assertThat(status().isUnauthorized())
+                .assertThat().statusCode(401)
                 .body("jwtValid", equalTo(false),
                       "userFound", equalTo(false),
                       "message", equalTo("Could not parse or verify signature of JWT"),
                       "userDisplayName", isEmptyOrNullString());
     }
 
+    @Test
+    public void jwtLoginRejectedWhenVerificationSaturated() throws Exception {
+        Mockito.when(authenticationService.getUserFromJwt("the-jwt", "pod-id"))
+               .thenReturn(failedFuture(new RejectedExecutionException()));
 
-}
\ No newline at end of file
+        given()
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
+                .contentType("application/json")
+                .body("{ " +
+                      "    \"companyId\" : \"pod-id\"," +
+                      "    \"jwt\" : \"the-jwt\"" +
+                      "}")
+        .when()
+                .async().post("/login-with-jwt")
+        .then()
+                .assertThat().statusCode(503)
+                .header("Retry-After", equalTo("1"))
+                .body("jwtValid", equalTo(false),
+                      "message", equalTo("Too many pending logins"));
+
+        Mockito.verifyZeroInteractions(userService);
+    }
+
+    @Test
+    public void jwtLoginFailsFastWhenPodUnavailable() throws Exception {
+        Mockito.when(authenticationService.getUserFromJwt("the-jwt", "pod-id"))
+               .thenReturn(failedFuture(new PodUnavailableException("pod-id", "circuit breaker is open", 25)));
+
+        given()
+                .standaloneSetup(new AuthenticationController(authenticationService, userService, podCallExecutor))
+                .contentType("application/json")
+                .body("{ " +
+                      "    \"companyId\" : \"pod-id\"," +
+                      "    \"jwt\" : \"the-jwt\"" +
+                      "}")
+        .when()
+                .async().post("/login-with-jwt")
+        .then()
+                .assertThat().statusCode(503)
+                .header("Retry-After", equalTo("25"))
+                .body("jwtValid", equalTo(false),
+                      "message", equalTo("Pod pod-id is unavailable: circuit breaker is open"));
+
+        Mockito.verifyZeroInteractions(userService);
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(new CompletionException(e));
+        return future;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import com.symphony.example.utils.SecurityKeyUtils;
+import com.symphony.example.web.AppConfig;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.Jwts;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test for AuthenticationJwtSigner.
+ */
+public class AuthenticationJwtSignerTest {
+
+    private static final long NOW = 1_500_000_000_000L;
+
+    private PrivateKeyHolder privateKeyHolder;
+
+    private PrivateKey privateKey;
+
+    private AuthenticationJwtSigner signer;
+
+    @Before
+    public void setup() throws Exception {
+        privateKey = SecurityKeyUtils.parseRSAPrivateKey(
+                SecurityKeyUtils.readPemFromFile("src/test/resources/test-app-private-key.pem"));
+        privateKeyHolder = mock(PrivateKeyHolder.class);
+        when(privateKeyHolder.getPrivateKey()).thenReturn(privateKey);
+
+        AppConfig appConfig = new AppConfig();
+        appConfig.setAppId("app-id");
+        AuthenticationConfig authenticationConfig = new AuthenticationConfig();
+        authenticationConfig.setAuthenticationJwtValiditySeconds(60);
+
+        signer = new AuthenticationJwtSigner(appConfig, privateKeyHolder, authenticationConfig);
+        signer.clock = Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC);
+    }
+
+    @After
+    public void tearDown() {
+        signer.stop();
+    }
+
+    @Test
+    public void jwtIsSignedWithAppIdAndExpiration() throws Exception {
+        signer.clock = Clock.systemUTC();
+        signer.start();
+
+        Jws<Claims> claims = Jwts.parser()
+                                 .setSigningKey(publicKeyFor(privateKey))
+                                 .parseClaimsJws(signer.getAuthenticationJwt());
+
+        assertThat(claims.getHeader().getAlgorithm()).isEqualTo("RS512");
+        assertThat(claims.getBody().getSubject()).isEqualTo("app-id");
+        assertThat(claims.getBody().getExpiration().getTime() - System.currentTimeMillis())
+                .isBetween(55_000L, 60_000L);
+    }
+
+    @Test
+    public void jwtIsSharedByConcurrentRequests() throws Exception {
+        signer.start();
+        String first = signer.getAuthenticationJwt();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(executor.submit(signer::getAuthenticationJwt));
+        }
+        for (Future<String> future : futures) {
+            assertThat(future.get()).isEqualTo(first);
+        }
+        executor.shutdown();
+
+        assertThat(signer.getSignatureCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void jwtIsResignedWhenCloseToExpiring() throws Exception {
+        signer.start();
+        String first = signer.getAuthenticationJwt();
+
+        // Still more than a quarter of the validity left
+        signer.clock = Clock.fixed(Instant.ofEpochMilli(NOW + 44_000), ZoneOffset.UTC);
+        assertThat(signer.getAuthenticationJwt()).isEqualTo(first);
+
+        signer.clock = Clock.fixed(Instant.ofEpochMilli(NOW + 46_000), ZoneOffset.UTC);
+        assertThat(signer.getAuthenticationJwt()).isNotEqualTo(first);
+        assertThat(signer.getSignatureCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void jwtIsResignedWhenKeyIsRotated() throws Exception {
+        signer.start();
+        String first = signer.getAuthenticationJwt();
+
+        PrivateKey rotated = SecurityKeyUtils.parseRSAPrivateKey(
+                SecurityKeyUtils.readPemFromFile("src/test/resources/test-app-private-key.pem"));
+        when(privateKeyHolder.getPrivateKey()).thenReturn(rotated);
+
+        String second = signer.getAuthenticationJwt();
+        assertThat(second).isNotSameAs(first);
+        assertThat(signer.getSignatureCount()).isEqualTo(2);
+        assertThat(signer.getAuthenticationJwt()).isSameAs(second);
+    }
+
+    @Test
+    public void signaturesAreExposedAsMetrics() throws Exception {
+        signer.start();
+        signer.refresh();
+
+        assertThat(signer.metrics())
+                .extracting(Metric::getName)
+                .containsExactly("counter.authentication.jwt.signatures",
+                                 "gauge.authentication.jwt.signatures.per-second");
+        Metric<?> signatures = signer.metrics().iterator().next();
+        assertThat(signatures.getValue()).isEqualTo(2L);
+    }
+
+    private static PublicKey publicKeyFor(PrivateKey privateKey) throws Exception {
+        RSAPrivateCrtKey rsaPrivateKey = (RSAPrivateCrtKey) privateKey;
+        return KeyFactory.getInstance("RSA")
+                         .generatePublic(new RSAPublicKeySpec(rsaPrivateKey.getModulus(), rsaPrivateKey.getPublicExponent()));
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.symphony.example.load.LoadDriver;
+import com.symphony.example.load.StubPod;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.embedded.LocalServerPort;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Load test for the asynchronous initiate-app-auth endpoint.  Many initiate calls wait on a stub pod that doesn't
+ * respond, called over HTTP by the app's real pod clients, while a token pair is validated with /validate-tokens.
+ * Since the initiate calls don't hold Tomcat threads (there are fewer Tomcat threads than initiate calls),
+ * /validate-tokens latency should be unaffected.
+ * Not part of the default build; run with {@code mvn test -P load-tests}.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+                properties = {"server.ssl.enabled=false",
+                              "server.tomcat.max-threads=50",
+                              "spring.mvc.async.request-timeout=120000",
+                              "authentication.pod-call-threads=16",
+                              "webhook.api-key=load-test-api-key",
+                              // Calls held by the paused pod are neither timed out nor counted as slow
+                              "symphony.client.read-timeout-millis=60000",
+                              "symphony.client.circuit-breaker-slow-call-millis=60000"})
+@Slf4j
+public class AuthenticationLoadTest {
+
+    private static final int INITIATE_CALLS = 500;
+
+    private static final int POD_CALL_THREADS = 16;
+
+    private static final int VALIDATE_CALLS = 20;
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    @Qualifier(AuthenticationExecutors.POD_CALL_EXECUTOR)
+    private BoundedExecutor podCallExecutor;
+
+    private StubPod pod;
+
+    private OkHttpClient httpClient;
+
+    @Before
+    public void setup() throws Exception {
+        pod = new StubPod("slow-pod", 0, 0);
+        pod.start();
+        new LoadDriver(url(""), "load-test-api-key", Collections.singletonList(pod), 1).registerPods();
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(INITIATE_CALLS + VALIDATE_CALLS);
+        dispatcher.setMaxRequestsPerHost(INITIATE_CALLS + VALIDATE_CALLS);
+        httpClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .readTimeout(60, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        pod.stop();
+        httpClient.dispatcher().executorService().shutdownNow();
+    }
+
+    @Test
+    public void validateTokensLatencyStaysFlatWhileInitiateCallsWaitOnPod() throws Exception {
+        // A token pair issued by the pod while it still responds
+        String appToken = initiateAppAuth();
+        Map<String, String> tokens = new HashMap<>();
+        tokens.put("companyId", pod.getCompanyId());
+        tokens.put("appToken", appToken);
+        tokens.put("symphonyToken", pod.getSymphonyToken(appToken));
+
+        // Warm up, then measure without load
+        measureValidateTokens(tokens);
+        List<Long> baseline = measureValidateTokens(tokens);
+
+        // Slow pod - doesn't respond until the test says so
+        pod.pause();
+
+        Queue<Integer> initiateStatuses = new ConcurrentLinkedQueue<>();
+        CountDownLatch initiateCallsDone = new CountDownLatch(INITIATE_CALLS);
+        for (int i = 0; i < INITIATE_CALLS; i++) {
+            Request request = new Request.Builder()
+                    .url(url("/initiate-app-auth"))
+                    .post(RequestBody.create(JSON, pod.getCompanyId()))
+                    .build();
+            httpClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    initiateCallsDone.countDown();
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    initiateStatuses.add(response.code());
+                    response.close();
+                    initiateCallsDone.countDown();
+                }
+            });
+        }
+
+        // Every initiate call has been accepted: some are waiting on the pod, the rest are queued for a pod call thread
+        long deadline = System.currentTimeMillis() + 30_000;
+        while ((pod.getPausedCalls() < POD_CALL_THREADS
+                || podCallExecutor.getQueueSize() < INITIATE_CALLS - POD_CALL_THREADS)
+               && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(pod.getPausedCalls()).as("calls waiting on pod").isEqualTo(POD_CALL_THREADS);
+        assertThat(podCallExecutor.getQueueSize()).as("calls queued").isEqualTo(INITIATE_CALLS - POD_CALL_THREADS);
+
+        List<Long> underLoad = measureValidateTokens(tokens);
+        log.info("/validate-tokens latency (ms) - baseline median: {}, max: {}.  With {} initiate calls waiting on pod - median: {}, max: {}",
+                 median(baseline), Collections.max(baseline), INITIATE_CALLS, median(underLoad), Collections.max(underLoad));
+
+        assertThat(Collections.max(underLoad)).isLessThan(1000L);
+        assertThat(median(underLoad)).isLessThanOrEqualTo(median(baseline) * 3 + 50);
+
+        pod.resume();
+        assertThat(initiateCallsDone.await(60, TimeUnit.SECONDS)).isTrue();
+        assertThat(initiateStatuses).hasSize(INITIATE_CALLS).containsOnly(200);
+    }
+
+    private String initiateAppAuth() throws IOException {
+        Request request = new Request.Builder()
+                .url(url("/initiate-app-auth"))
+                .post(RequestBody.create(JSON, pod.getCompanyId()))
+                .build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            assertThat(response.code()).isEqualTo(200);
+            return objectMapper.readValue(response.body().string(), String.class);
+        }
+    }
+
+    private List<Long> measureValidateTokens(Map<String, String> tokens) throws IOException {
+        List<Long> latencies = new ArrayList<>();
+        for (int i = 0; i < VALIDATE_CALLS; i++) {
+            Request request = new Request.Builder()
+                    .url(url("/validate-tokens"))
+                    .post(RequestBody.create(JSON, objectMapper.writeValueAsBytes(tokens)))
+                    .build();
+            long start = System.nanoTime();
+            try (Response response = httpClient.newCall(request).execute()) {
+                assertThat(response.code()).isEqualTo(200);
+            }
+            latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        return latencies;
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + port + path;
+    }
+
+    private static long median(List<Long> latencies) {
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+}
@@ -13,28 +13,54 @@
 
 package com.symphony.example.authentication;
 
+import com.symphony.example.pods.PodDirectory;
+import com.symphony.example.pods.PodInfo;
+import com.symphony.example.tokens.InMemoryTokenStore;
+import com.symphony.example.tokens.StatelessTokenStore;
+import com.symphony.example.tokens.Token;
+import com.symphony.example.tokens.TokenStore;
+import com.symphony.example.tokens.TokenStoreConfiguration;
 import com.symphony.example.utils.SecurityKeyUtils;
-import com.symphony.example.web.AppConfig;
+import com.symphony.example.utils.TestCertificates;
 import com.symphony.symphony.client.*;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.boot.actuate.metrics.Metric;
 
 import javax.security.auth.login.LoginException;
 import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
 import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
-import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
 
@@ -93,9 +119,12 @@ public class AuthenticationServiceTest {
             +"8lDA0ieE0BLHShQDunwC6t5aF+6bGasdaNO0zwUXgTzSrQsPOYMoZn8=\n"
             +"-----END RSA PRIVATE KEY-----\n";
 
-    @InjectMocks
     private AuthenticationService authenticationService;
 
+    private VerifiedJwtCache verifiedJwtCache;
+
+    private TokenStore tokenStore;
+
     @Mock
     private SymphonyClientFactory symphonyClientFactory;
 
@@ -106,46 +135,123 @@ public class AuthenticationServiceTest {
     private TokenGenerator tokenGenerator;
 
     @Mock
-    private AuthenticationConfig authenticationConfig;
+    private AuthenticationJwtSigner authenticationJwtSigner;
 
-    @Mock
-    private AppConfig appConfig;
+    private BoundedExecutor podCallExecutor;
+
+    private BoundedExecutor jwtVerificationExecutor;
+
+    private PodDirectory podDirectory;
+
+    private StageTimers stageTimers;
+
+    @Before
+    public void setup() {
+        AuthenticationConfig authenticationConfig = new AuthenticationConfig();
+        PodCertificateCache podCertificateCache = new PodCertificateCache(symphonyClientFactory, authenticationConfig);
+        verifiedJwtCache = new VerifiedJwtCache(authenticationConfig);
+        tokenStore = new InMemoryTokenStore(new TokenStoreConfiguration());
+        podCallExecutor = new AuthenticationExecutors().podCallExecutor(authenticationConfig);
+        jwtVerificationExecutor = new AuthenticationExecutors().jwtVerificationExecutor(authenticationConfig);
+        podDirectory = new PodDirectory();
+        stageTimers = new StageTimers(authenticationConfig, podDirectory);
+        authenticationService = new AuthenticationService(symphonyClientFactory, tokenGenerator, authenticationJwtSigner,
+                                                          podCertificateCache, verifiedJwtCache, tokenStore,
+                                                          podCallExecutor, jwtVerificationExecutor, stageTimers);
+    }
+
+    @After
+    public void tearDown() {
+        podCallExecutor.stop();
+        jwtVerificationExecutor.stop();
+    }
 
     @Test
     public void initiateAppAuthentication() throws Exception {
-        when(tokenGenerator.generateToken()).thenReturn("app-token");
-        when(authenticationConfig.getPrivateKeyPemFilename()).thenReturn("src/test/resources/test-app-private-key.pem");
-        when(appConfig.getAppId()).thenReturn("app-id");
+        Token token = new Token(1L, 2L);
+        when(tokenGenerator.generateToken()).thenReturn(token);
+        when(authenticationJwtSigner.getAuthenticationJwt()).thenReturn("app-jwt");
 
         AuthenticateResponse authenticateResponse = new AuthenticateResponse();
-        authenticateResponse.setAppToken("app-token");
+        authenticateResponse.setAppToken(token.toString());
         authenticateResponse.setSymphonyToken("symphony-token");
         authenticateResponse.setAppId("app-id");
 
-        // We have to use any-class matcher here because generated JWT has a time component so we can't test object
-        // equivalency.
-        when(mockClient.authenticate(any(AuthenticateRequest.class))).thenReturn(authenticateResponse);
+        when(mockClient.authenticate(eq(new AuthenticateRequest(token.toString(), "app-jwt")))).thenReturn(authenticateResponse);
 
         when(symphonyClientFactory.getAuthenticationClient(eq("test-pod-id"))).thenReturn(mockClient);
 
-        String appToken = authenticationService.initiateAppAuthentication("test-pod-id");
+        IssuedAppToken issued = authenticationService.initiateAppAuthentication("test-pod-id");
 
-        assertThat(appToken).as("app token").isEqualTo("app-token");
-        assertThat(authenticationService.tokenCache.getIfPresent("app-token")).isEqualTo("symphony-token");
+        assertThat(issued.getAppToken()).as("app token").isEqualTo(token.toString());
+        assertThat(issued.getReceipt()).as("receipt").isNull();
+        assertThat(tokenStore.validate("test-pod-id", token, "symphony-token", null)).isTrue();
     }
 
     @Test
     public void validateTokens() throws Exception {
-        assertThat(authenticationService.validateTokens(null, null)).isFalse();
-        assertThat(authenticationService.validateTokens("app-token", null)).isFalse();
-        assertThat(authenticationService.validateTokens(null, "symphony-token")).isFalse();
-        assertThat(authenticationService.validateTokens("app-token", "symphony-token")).isFalse();
+        Token token = new Token(1L, 2L);
+        String appToken = token.toString();
+        String otherAppToken = new Token(1L, 3L).toString();
+
+        assertThat(authenticationService.validateTokens("pod-id", null, null, null)).isFalse();
+        assertThat(authenticationService.validateTokens("pod-id", appToken, null, null)).isFalse();
+        assertThat(authenticationService.validateTokens("pod-id", null, "symphony-token", null)).isFalse();
+        assertThat(authenticationService.validateTokens("pod-id", appToken, "symphony-token", null)).isFalse();
+
+        tokenStore.put("pod-id", token, "symphony-token");
+
+        assertThat(authenticationService.validateTokens("pod-id", appToken, "not-symphony-token", null)).isFalse();
+        assertThat(authenticationService.validateTokens("pod-id", otherAppToken, "symphony-token", null)).isFalse();
+        assertThat(authenticationService.validateTokens("pod-id", "not-a-token", "symphony-token", null)).isFalse();
+        assertThat(authenticationService.validateTokens("pod-id", appToken, "symphony-token", null)).isTrue();
+        assertThat(authenticationService.validateTokens("other-pod-id", appToken, "symphony-token", null)).isFalse();
+        assertThat(authenticationService.validateTokens(null, appToken, "symphony-token", null)).isFalse();
+    }
+
+    @Test
+    public void validateTokensBatch() throws Exception {
+        Token token = new Token(1L, 2L);
+        Token otherToken = new Token(1L, 3L);
+        tokenStore.put("pod-id", token, "symphony-token");
+        tokenStore.put("other-pod-id", otherToken, "other-symphony-token");
+
+        boolean[] valid = authenticationService.validateTokens(Arrays.asList(
+                validateTokensRequest("pod-id", token.toString(), "symphony-token"),
+                validateTokensRequest("pod-id", "not-a-token", "symphony-token"),
+                validateTokensRequest("other-pod-id", otherToken.toString(), "other-symphony-token"),
+                validateTokensRequest("pod-id", null, "symphony-token"),
+                null,
+                validateTokensRequest("pod-id", otherToken.toString(), "other-symphony-token")));
+
+        assertThat(valid).containsExactly(true, false, true, false, false, false);
+    }
 
-        authenticationService.tokenCache.put("app-token", "symphony-token");
+    @Test
+    public void statelessTokenStoreReceipt() throws Exception {
+        TokenStoreConfiguration configuration = new TokenStoreConfiguration();
+        configuration.setHmacKeys(Collections.singletonList(Base64.getEncoder().encodeToString(new byte[32])));
+        authenticationService = new AuthenticationService(symphonyClientFactory, tokenGenerator, authenticationJwtSigner,
+                                                          new PodCertificateCache(symphonyClientFactory, new AuthenticationConfig()),
+                                                          verifiedJwtCache, new StatelessTokenStore(configuration),
+                                                          podCallExecutor, jwtVerificationExecutor, stageTimers);
+
+        Token token = new Token(1L, 2L);
+        when(tokenGenerator.generateToken()).thenReturn(token);
+        when(authenticationJwtSigner.getAuthenticationJwt()).thenReturn("app-jwt");
+        AuthenticateResponse authenticateResponse = new AuthenticateResponse();
+        authenticateResponse.setAppToken(token.toString());
+        authenticateResponse.setSymphonyToken("symphony-token");
+        when(mockClient.authenticate(eq(new AuthenticateRequest(token.toString(), "app-jwt")))).thenReturn(authenticateResponse);
+        when(symphonyClientFactory.getAuthenticationClient(eq("pod-id"))).thenReturn(mockClient);
+
+        IssuedAppToken issued = authenticationService.initiateAppAuthentication("pod-id");
 
-        assertThat(authenticationService.validateTokens("app-token", "not-symphony-token")).isFalse();
-        assertThat(authenticationService.validateTokens("not-app-token", "symphony-token")).isFalse();
-        assertThat(authenticationService.validateTokens("app-token", "symphony-token")).isTrue();
+        assertThat(issued.getReceipt()).as("receipt").isNotNull();
+        assertThat(issued.getReceiptTtlSeconds()).as("receipt TTL").isEqualTo(300);
+        assertThat(authenticationService.validateTokens("pod-id", issued.getAppToken(), "symphony-token", issued.getReceipt())).isTrue();
+        assertThat(authenticationService.validateTokens("pod-id", issued.getAppToken(), "symphony-token", null)).isFalse();
+        assertThat(authenticationService.validateTokens("pod-id", issued.getAppToken(), "other-symphony-token", issued.getReceipt())).isFalse();
     }
 
     @Test
@@ -156,10 +262,60 @@ public class AuthenticationServiceTest {
         when(symphonyClientFactory.getAuthenticationClient(eq("pod-id"))).thenReturn(mockClient);
 
         String jwt = generateJwt();
-        String displayName = authenticationService.getUserFromJwt(jwt, "pod-id");
+        String displayName = getUserFromJwt(jwt, "pod-id");
         assertThat(displayName).as("Symphony username").isEqualTo("symphony-username");
     }
 
+    @Test
+    public void getUserFromJwtRemembersVerifiedJwt() throws Exception {
+        PodCertificate podCertificate = new PodCertificate();
+        podCertificate.setCertificate(TEST_PUBLIC_KEY);
+        when(mockClient.getPodCertificate()).thenReturn(podCertificate);
+        when(symphonyClientFactory.getAuthenticationClient(eq("pod-id"))).thenReturn(mockClient);
+
+        String jwt = generateJwt();
+        assertThat(getUserFromJwt(jwt, "pod-id")).isEqualTo("symphony-username");
+        assertThat(verifiedJwtCache.getUsername(jwt, "pod-id")).isEqualTo("symphony-username");
+
+        // Not trusted for a different pod
+        when(symphonyClientFactory.getAuthenticationClient(eq("other-pod-id"))).thenReturn(mockClient);
+        PodCertificate otherPodCertificate = new PodCertificate();
+        otherPodCertificate.setCertificate(TestCertificates.toPem(TestCertificates.selfSignedCertificate(
+                TestCertificates.generateKeyPair(), new Date(System.currentTimeMillis() + 86_400_000L))));
+        when(mockClient.getPodCertificate()).thenReturn(otherPodCertificate);
+
+        assertThatThrownBy(() -> getUserFromJwt(jwt, "other-pod-id"))
+                .isInstanceOf(LoginException.class)
+                .hasMessageContaining("signature");
+    }
+
+    @Test
+    public void getUserFromJwtTimesEachStage() throws Exception {
+        PodCertificate podCertificate = new PodCertificate();
+        podCertificate.setCertificate(TEST_PUBLIC_KEY);
+        when(mockClient.getPodCertificate()).thenReturn(podCertificate);
+        when(symphonyClientFactory.getAuthenticationClient(eq("pod-id"))).thenReturn(mockClient);
+        PodInfo podInfo = new PodInfo();
+        podInfo.setCompanyId("pod-id");
+        podDirectory.addPodInfo(podInfo);
+
+        getUserFromJwt(generateJwt(), "pod-id");
+        assertThatThrownBy(() -> getUserFromJwt(generateUnsignedJwt(), "pod-id")).isInstanceOf(LoginException.class);
+        assertThatThrownBy(() -> getUserFromJwt(generateUnsignedJwt(), "junk-pod-id")).isInstanceOf(LoginException.class);
+        assertThat(authenticationService.validateTokens("pod-id", new Token(1L, 2L).toString(), "symphony-token", null)).isFalse();
+
+        Map<String, Object> metrics = stageTimers.metrics().stream()
+                .collect(Collectors.toMap(Metric::getName, Metric::getValue));
+        assertThat(metrics).containsEntry("timer.authentication.stage.fetch-pod-cert.pod-id.success.count", 1L)
+                           .containsEntry("timer.authentication.stage.verify-jwt.pod-id.success.count", 1L)
+                           .containsEntry("timer.authentication.stage.login.pod-id.success.count", 1L)
+                           .containsEntry("timer.authentication.stage.login.pod-id.invalid.count", 1L)
+                           .containsEntry("timer.authentication.stage.validate-tokens.pod-id.invalid.count", 1L)
+                           .containsEntry("timer.authentication.stage.login.unknown.invalid.count", 1L)
+                           .containsKey("timer.authentication.stage.login.pod-id.success.p99")
+                           .doesNotContainKey("timer.authentication.stage.login.junk-pod-id.invalid.count");
+    }
+
     @Test
     public void getUserJwtBadCert() throws Exception {
         PodCertificate podCertificate = new PodCertificate();
@@ -169,7 +325,7 @@ public class AuthenticationServiceTest {
 
         String jwt = generateJwt();
 
-        assertThatThrownBy(() -> authenticationService.getUserFromJwt(jwt, "pod-id"))
+        assertThatThrownBy(() -> getUserFromJwt(jwt, "pod-id"))
                 .isInstanceOf(LoginException.class)
                 .hasMessageContaining("Couldn't parse cert");
     }
@@ -183,11 +339,74 @@ public class AuthenticationServiceTest {
 
         String jwt = generateUnsignedJwt();
 
-        assertThatThrownBy(() -> authenticationService.getUserFromJwt(jwt, "pod-id"))
+        assertThatThrownBy(() -> getUserFromJwt(jwt, "pod-id"))
                 .isInstanceOf(LoginException.class)
                 .hasMessageContaining("JWT is not signed");
     }
 
+    @Test
+    public void concurrentLoginsFetchPodCertificateOnce() throws Exception {
+        PrivateKey privateKey = SecurityKeyUtils.parseRSAPrivateKey(TEST_PRIVATE_KEY);
+        KeyPair keyPair = new KeyPair(publicKeyFor(privateKey), privateKey);
+        PodCertificate podCertificate = new PodCertificate();
+        podCertificate.setCertificate(TestCertificates.toPem(
+                TestCertificates.selfSignedCertificate(keyPair, new Date(System.currentTimeMillis() + 86_400_000L))));
+
+        // Slow pod, so that all the logins arrive while the first fetch is in flight
+        AtomicInteger fetches = new AtomicInteger();
+        when(mockClient.getPodCertificate()).thenAnswer(invocation -> {
+            fetches.incrementAndGet();
+            Thread.sleep(200);
+            return podCertificate;
+        });
+        when(symphonyClientFactory.getAuthenticationClient(eq("pod-id"))).thenReturn(mockClient);
+
+        int logins = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(logins);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < logins; i++) {
+            String jwt = generateJwt();
+            futures.add(executor.submit(() -> {
+                start.await();
+                return getUserFromJwt(jwt, "pod-id");
+            }));
+        }
+        start.countDown();
+
+        for (Future<String> future : futures) {
+            assertThat(future.get()).isEqualTo("symphony-username");
+        }
+        executor.shutdown();
+
+        assertThat(fetches.get()).as("pod certificate fetches").isEqualTo(1);
+    }
+
+    /**
+     * Waits for the user from a JWT, throwing the failure as it was before it was wrapped by the future.
+     */
+    private String getUserFromJwt(String jwt, String companyId) throws Exception {
+        try {
+            return authenticationService.getUserFromJwt(jwt, companyId).join();
+        } catch (CompletionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    private static ValidateTokensRequest validateTokensRequest(String companyId, String appToken, String symphonyToken) {
+        ValidateTokensRequest request = new ValidateTokensRequest();
+        request.setCompanyId(companyId);
+        request.setAppToken(appToken);
+        request.setSymphonyToken(symphonyToken);
+        return request;
+    }
+
+    private static PublicKey publicKeyFor(PrivateKey privateKey) throws GeneralSecurityException {
+        RSAPrivateCrtKey rsaPrivateKey = (RSAPrivateCrtKey) privateKey;
+        return KeyFactory.getInstance("RSA")
+                         .generatePublic(new RSAPublicKeySpec(rsaPrivateKey.getModulus(), rsaPrivateKey.getPublicExponent()));
+    }
+
     private String generateJwt() throws GeneralSecurityException {
         PrivateKey privateKey = SecurityKeyUtils.parseRSAPrivateKey(TEST_PRIVATE_KEY);
         Map<String, String> userInfo = buildUserInfo();
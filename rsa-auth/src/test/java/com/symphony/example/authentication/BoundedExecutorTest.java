@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit test for BoundedExecutor.
+ */
+public class BoundedExecutorTest {
+
+    private BoundedExecutor executor;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setup() {
+        executor = new BoundedExecutor("jwt-verifications", 1, 2);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.stop();
+    }
+
+    @Test
+    public void rejectsWorkWhenQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            awaitRelease();
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        executor.execute(this::awaitRelease);
+        executor.execute(this::awaitRelease);
+
+        assertThatThrownBy(() -> executor.execute(this::awaitRelease)).isInstanceOf(RejectedExecutionException.class);
+        assertThat(executor.getRejectedCount()).isEqualTo(1);
+
+        Map<String, Number> metrics = metrics();
+        assertThat(metrics.get("gauge.authentication.jwt-verifications.active")).isEqualTo(1);
+        assertThat(metrics.get("gauge.authentication.jwt-verifications.queued")).isEqualTo(2);
+        assertThat(metrics.get("counter.authentication.jwt-verifications.rejected")).isEqualTo(1L);
+    }
+
+    @Test
+    public void recordsTimeSpentQueued() throws Exception {
+        executor.execute(() -> sleep(100));
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(done::countDown);
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+
+        Map<String, Number> metrics = metrics();
+        assertThat(metrics.get("counter.authentication.jwt-verifications.executed")).isEqualTo(2L);
+        assertThat(metrics.get("counter.authentication.jwt-verifications.wait-millis").longValue()).isGreaterThanOrEqualTo(90);
+    }
+
+    private Map<String, Number> metrics() {
+        return executor.metrics().stream().collect(Collectors.toMap(Metric::getName, Metric::getValue));
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import org.junit.Test;
+
+import javax.security.auth.login.LoginException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit test for JwtClaimReader.
+ */
+public class JwtClaimReaderTest {
+
+    @Test
+    public void readsOnlyTheClaimsThisAppUses() throws Exception {
+        JwtClaims claims = read("{\"aud\":\"app-id\",\"iss\":\"Symphony Communication Services LLC.\","
+                                + "\"roles\":[\"a\",{\"sub\":\"not-this-one\"}],\"sub\":\"12345\","
+                                + "\"exp\":1500000060,\"nbf\":1500000000,"
+                                + "\"user\":{\"id\":12345,\"displayName\":\"Symphony User\","
+                                + "\"links\":{\"username\":\"not-this-one\"},\"username\":\"symphony-username\","
+                                + "\"companyId\":\"pod-1\",\"avatarUrl\":\"https://symphony.com/a.png\"},"
+                                + "\"username\":\"not-this-one\"}");
+
+        assertThat(claims.getSubject()).isEqualTo("12345");
+        assertThat(claims.getUsername()).isEqualTo("symphony-username");
+        assertThat(claims.getCompanyId()).isEqualTo("pod-1");
+        assertThat(claims.getExpiration()).isEqualTo(new Date(1500000060_000L));
+        assertThat(claims.getNotBefore()).isEqualTo(new Date(1500000000_000L));
+    }
+
+    @Test
+    public void missingClaimsOrClaimsOfTheWrongTypeAreNull() throws Exception {
+        assertThat(read("{}")).isEqualTo(new JwtClaims(null, null, null, null, null));
+        assertThat(read("{\"sub\":12345,\"exp\":\"tomorrow\",\"nbf\":{\"a\":1},\"user\":[\"username\"]}"))
+                .isEqualTo(new JwtClaims(null, null, null, null, null));
+        assertThat(read("{\"user\":{\"username\":{\"a\":\"b\"},\"companyId\":[1]}}"))
+                .isEqualTo(new JwtClaims(null, null, null, null, null));
+    }
+
+    @Test
+    public void payloadThatIsNotAJsonObjectIsRejected() {
+        for (String payload : new String[] {"", "[]", "\"sub\"", "not json", "{\"sub\":\"12345\"",
+                                            "{\"user\":{\"username\":\"symphony-username\"}"}) {
+            assertThatThrownBy(() -> read(payload)).as(payload).isInstanceOf(LoginException.class);
+        }
+    }
+
+    private static JwtClaims read(String json) throws LoginException {
+        return JwtClaimReader.read(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
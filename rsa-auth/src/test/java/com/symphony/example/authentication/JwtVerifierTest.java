@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import com.symphony.example.utils.TestCertificates;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.security.auth.login.LoginException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit test for JwtVerifier.
+ */
+public class JwtVerifierTest {
+
+    private static final long NOW_SECONDS = 1_500_000_000L;
+
+    private static KeyPair podKeyPair;
+
+    private JwtVerifier jwtVerifier;
+
+    @BeforeClass
+    public static void generateKeyPair() throws Exception {
+        podKeyPair = TestCertificates.generateKeyPair();
+    }
+
+    @Before
+    public void setup() {
+        jwtVerifier = new JwtVerifier();
+        jwtVerifier.clock = Clock.fixed(Instant.ofEpochSecond(NOW_SECONDS), ZoneOffset.UTC);
+    }
+
+    @Test
+    public void verify() throws Exception {
+        String jwt = jwt().signWith(SignatureAlgorithm.RS512, podKeyPair.getPrivate()).compact();
+
+        JwtClaims claims = jwtVerifier.verify(jwtVerifier.parse(jwt), podKeyPair.getPublic());
+
+        assertThat(claims.getSubject()).isEqualTo("symphony-user-id");
+        assertThat(claims.getUsername()).isEqualTo("symphony-username");
+        assertThat(claims.getCompanyId()).isEqualTo("pod-1");
+        assertThat(claims.getExpiration()).isEqualTo(new Date((NOW_SECONDS + 60) * 1000));
+    }
+
+    @Test
+    public void unsignedJwtIsRejected() {
+        String jwt = jwt().compact();
+
+        assertThatThrownBy(() -> jwtVerifier.parse(jwt))
+                .isInstanceOf(LoginException.class)
+                .hasMessageContaining("JWT is not signed");
+    }
+
+    @Test
+    public void otherAlgorithmsAreRejectedBeforeVerifying() {
+        // Forged by using the pod's public key as an HMAC secret
+        String hmacJwt = jwt().signWith(SignatureAlgorithm.HS512, podKeyPair.getPublic().getEncoded()).compact();
+        String rs256Jwt = jwt().signWith(SignatureAlgorithm.RS256, podKeyPair.getPrivate()).compact();
+
+        assertThatThrownBy(() -> jwtVerifier.parse(hmacJwt))
+                .isInstanceOf(LoginException.class)
+                .hasMessageContaining("Invalid JWT algorithm: HS512");
+        assertThatThrownBy(() -> jwtVerifier.parse(rs256Jwt))
+                .isInstanceOf(LoginException.class)
+                .hasMessageContaining("Invalid JWT algorithm: RS256");
+    }
+
+    @Test
+    public void malformedJwtsAreRejected() {
+        String header = encode("{\"alg\":\"RS512\"}");
+        for (String jwt : new String[] {"", "garbage", "a.b", "a.b.c.d", header + ".payload",
+                                        "!!!." + encode("{}") + ".c", encode("not json") + ".b.c",
+                                        encode("[]") + ".b.c"}) {
+            assertThatThrownBy(() -> jwtVerifier.parse(jwt)).as(jwt).isInstanceOf(LoginException.class);
+        }
+    }
+
+    @Test
+    public void wrongKeyOrTamperedPayloadIsRejected() throws Exception {
+        String jwt = jwt().signWith(SignatureAlgorithm.RS512, podKeyPair.getPrivate()).compact();
+        String[] parts = jwt.split("\\.");
+        String tampered = parts[0] + "." + encode("{\"user\":{\"username\":\"someone-else\"}}") + "." + parts[2];
+
+        assertThatThrownBy(() -> jwtVerifier.verify(jwtVerifier.parse(jwt), TestCertificates.generateKeyPair().getPublic()))
+                .isInstanceOf(LoginException.class)
+                .hasMessageContaining("signature");
+        assertThatThrownBy(() -> jwtVerifier.verify(jwtVerifier.parse(tampered), podKeyPair.getPublic()))
+                .isInstanceOf(LoginException.class)
+                .hasMessageContaining("signature");
+    }
+
+    @Test
+    public void expiredOrNotYetValidJwtIsRejected() {
+        String expired = jwt().claim(Claims.EXPIRATION, NOW_SECONDS)
+                              .signWith(SignatureAlgorithm.RS512, podKeyPair.getPrivate()).compact();
+        String notYetValid = jwt().claim(Claims.NOT_BEFORE, NOW_SECONDS + 1)
+                                  .signWith(SignatureAlgorithm.RS512, podKeyPair.getPrivate()).compact();
+
+        assertThatThrownBy(() -> jwtVerifier.verify(jwtVerifier.parse(expired), podKeyPair.getPublic()))
+                .isInstanceOf(LoginException.class)
+                .hasMessageContaining("expired");
+        assertThatThrownBy(() -> jwtVerifier.verify(jwtVerifier.parse(notYetValid), podKeyPair.getPublic()))
+                .isInstanceOf(LoginException.class)
+                .hasMessageContaining("not valid yet");
+    }
+
+    @Test
+    public void jwtWithoutUsernameIsRejected() {
+        String jwt = Jwts.builder().claim(Claims.SUBJECT, "symphony-user-id")
+                         .signWith(SignatureAlgorithm.RS512, podKeyPair.getPrivate()).compact();
+
+        assertThatThrownBy(() -> jwtVerifier.verify(jwtVerifier.parse(jwt), podKeyPair.getPublic()))
+                .isInstanceOf(LoginException.class)
+                .hasMessageContaining("no username");
+    }
+
+    private static JwtBuilder jwt() {
+        Map<String, String> user = new HashMap<>();
+        user.put("id", "symphony-user-id");
+        user.put("username", "symphony-username");
+        user.put("displayName", "Symphony User");
+        user.put("companyId", "pod-1");
+        return Jwts.builder()
+                   .claim(Claims.ISSUER, "Symphony Communication Services LLC.")
+                   .claim(Claims.SUBJECT, "symphony-user-id")
+                   .claim(Claims.EXPIRATION, NOW_SECONDS + 60)
+                   .claim("user", user);
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import com.symphony.example.utils.TestCertificates;
+import com.symphony.symphony.client.AuthenticationClient;
+import com.symphony.symphony.client.PodCertificate;
+import com.symphony.symphony.client.SymphonyClientFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.security.auth.login.LoginException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test for PodCertificateCache.
+ */
+public class PodCertificateCacheTest {
+
+    private static final long HOUR = 3_600_000L;
+
+    private static KeyPair keyPair;
+    private static KeyPair otherKeyPair;
+
+    private final long now = System.currentTimeMillis();
+
+    private SymphonyClientFactory symphonyClientFactory;
+
+    private AuthenticationClient authenticationClient;
+
+    private PodCertificateCache podCertificateCache;
+
+    @BeforeClass
+    public static void generateKeys() throws Exception {
+        keyPair = TestCertificates.generateKeyPair();
+        otherKeyPair = TestCertificates.generateKeyPair();
+    }
+
+    @Before
+    public void setup() {
+        authenticationClient = mock(AuthenticationClient.class);
+        symphonyClientFactory = mock(SymphonyClientFactory.class);
+        when(symphonyClientFactory.getAuthenticationClient("pod-id")).thenReturn(authenticationClient);
+
+        AuthenticationConfig authenticationConfig = new AuthenticationConfig();
+        authenticationConfig.setPodCertificateCacheTtlSeconds(3600);
+        podCertificateCache = new PodCertificateCache(symphonyClientFactory, authenticationConfig);
+        setTime(now);
+    }
+
+    @After
+    public void tearDown() {
+        podCertificateCache.stop();
+    }
+
+    @Test
+    public void publicKeyIsCached() throws Exception {
+        when(authenticationClient.getPodCertificate()).thenReturn(podCertificate(keyPair, now + 24 * HOUR));
+
+        assertThat(podCertificateCache.getPublicKey("pod-id")).isEqualTo(keyPair.getPublic());
+        assertThat(podCertificateCache.getPublicKey("pod-id")).isEqualTo(keyPair.getPublic());
+
+        verify(authenticationClient, times(1)).getPodCertificate();
+    }
+
+    @Test
+    public void cachedPublicKeyNeverCallsPod() throws Exception {
+        when(authenticationClient.getPodCertificate()).thenReturn(podCertificate(keyPair, now + 24 * HOUR));
+
+        assertThat(podCertificateCache.getCachedPublicKey("pod-id")).isNull();
+        verify(authenticationClient, times(0)).getPodCertificate();
+
+        podCertificateCache.getPublicKey("pod-id");
+        assertThat(podCertificateCache.getCachedPublicKey("pod-id")).isEqualTo(keyPair.getPublic());
+
+        setTime(now + HOUR);
+        assertThat(podCertificateCache.getCachedPublicKey("pod-id")).isNull();
+        verify(authenticationClient, times(1)).getPodCertificate();
+    }
+
+    @Test
+    public void entryExpiresAfterTtl() throws Exception {
+        when(authenticationClient.getPodCertificate()).thenReturn(podCertificate(keyPair, now + 24 * HOUR),
+                                                                  podCertificate(otherKeyPair, now + 24 * HOUR));
+        podCertificateCache.getPublicKey("pod-id");
+
+        setTime(now + HOUR);
+
+        assertThat(podCertificateCache.getPublicKey("pod-id")).isEqualTo(otherKeyPair.getPublic());
+        verify(authenticationClient, times(2)).getPodCertificate();
+    }
+
+    @Test
+    public void entryExpiresWithCert() throws Exception {
+        when(authenticationClient.getPodCertificate()).thenReturn(podCertificate(keyPair, now + 10 * 60_000),
+                                                                  podCertificate(otherKeyPair, now + 24 * HOUR));
+        podCertificateCache.getPublicKey("pod-id");
+
+        // Well before the TTL, but after the cert has expired
+        setTime(now + 11 * 60_000);
+
+        assertThat(podCertificateCache.getPublicKey("pod-id")).isEqualTo(otherKeyPair.getPublic());
+        verify(authenticationClient, times(2)).getPodCertificate();
+    }
+
+    @Test
+    public void entryIsRefreshedAheadOfExpiry() throws Exception {
+        when(authenticationClient.getPodCertificate()).thenReturn(podCertificate(keyPair, now + 24 * HOUR),
+                                                                  podCertificate(otherKeyPair, now + 24 * HOUR));
+        podCertificateCache.getPublicKey("pod-id");
+
+        setTime(now + 50 * 60_000);
+
+        // Cached key is returned while the refresh happens in the background
+        assertThat(podCertificateCache.getPublicKey("pod-id")).isEqualTo(keyPair.getPublic());
+        verify(authenticationClient, timeout(5000).times(2)).getPodCertificate();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!podCertificateCache.getPublicKey("pod-id").equals(otherKeyPair.getPublic())
+               && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(podCertificateCache.getPublicKey("pod-id")).isEqualTo(otherKeyPair.getPublic());
+    }
+
+    @Test
+    public void reloadAfterExpiryJoinsRefreshInFlight() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(authenticationClient.getPodCertificate()).thenReturn(podCertificate(keyPair, now + 24 * HOUR))
+                                                      .thenAnswer(invocation -> {
+                                                          release.await();
+                                                          return podCertificate(otherKeyPair, now + 24 * HOUR);
+                                                      });
+        podCertificateCache.getPublicKey("pod-id");
+
+        // Start a background refresh that blocks in the call to the pod
+        setTime(now + 50 * 60_000);
+        podCertificateCache.getPublicKey("pod-id");
+        verify(authenticationClient, timeout(5000).times(2)).getPodCertificate();
+
+        // Entry expires while the refresh is still in flight
+        setTime(now + HOUR);
+        AtomicReference<PublicKey> result = new AtomicReference<>();
+        Thread lookup = new Thread(() -> {
+            try {
+                result.set(podCertificateCache.getPublicKey("pod-id"));
+            } catch (LoginException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        lookup.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (lookup.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        release.countDown();
+        lookup.join(5000);
+
+        assertThat(result.get()).isEqualTo(otherKeyPair.getPublic());
+        verify(authenticationClient, times(2)).getPodCertificate();
+    }
+
+    @Test
+    public void expiredCertIsNotCached() throws Exception {
+        when(authenticationClient.getPodCertificate()).thenReturn(podCertificate(keyPair, now - HOUR));
+
+        assertThat(podCertificateCache.getPublicKey("pod-id")).isEqualTo(keyPair.getPublic());
+
+        // Refetched in case the pod has a newer cert
+        verify(authenticationClient, times(2)).getPodCertificate();
+    }
+
+    @Test
+    public void badCert() throws Exception {
+        PodCertificate podCertificate = new PodCertificate();
+        podCertificate.setCertificate("bad");
+        when(authenticationClient.getPodCertificate()).thenReturn(podCertificate);
+
+        assertThatThrownBy(() -> podCertificateCache.getPublicKey("pod-id"))
+                .isInstanceOf(LoginException.class)
+                .hasMessageContaining("Couldn't parse cert");
+    }
+
+    @Test
+    public void missingPodInfo() throws Exception {
+        when(symphonyClientFactory.getAuthenticationClient("unknown-pod-id"))
+                .thenThrow(new IllegalStateException("Missing pod info"));
+
+        assertThatThrownBy(() -> podCertificateCache.getPublicKey("unknown-pod-id"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Missing pod info");
+    }
+
+    private void setTime(long millis) {
+        podCertificateCache.clock = Clock.fixed(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+    private static PodCertificate podCertificate(KeyPair keyPair, long notAfter) throws Exception {
+        PodCertificate podCertificate = new PodCertificate();
+        podCertificate.setCertificate(
+                TestCertificates.toPem(TestCertificates.selfSignedCertificate(keyPair, new Date(notAfter))));
+        return podCertificate;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import com.symphony.example.pods.PodDirectory;
+import com.symphony.example.pods.PodInfo;
+import io.micrometer.core.instrument.MockClock;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import javax.security.auth.login.LoginException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit test for StageTimers.
+ */
+public class StageTimersTest {
+
+    private final MockClock clock = new MockClock();
+
+    private StageTimers stageTimers;
+
+    @Before
+    public void setup() {
+        AuthenticationConfig authenticationConfig = new AuthenticationConfig();
+        authenticationConfig.setStageTimerPercentiles(Arrays.asList(0.5, 0.999));
+        authenticationConfig.setStageTimerMaximumPods(2);
+        PodDirectory podDirectory = new PodDirectory();
+        for (String companyId : new String[] {"pod-1", "pod-2", "pod-3"}) {
+            PodInfo podInfo = new PodInfo();
+            podInfo.setCompanyId(companyId);
+            podDirectory.addPodInfo(podInfo);
+        }
+        stageTimers = new StageTimers(authenticationConfig, podDirectory, clock);
+    }
+
+    @Test
+    public void recordsTimePerStagePodAndOutcome() {
+        long start = stageTimers.start();
+        clock.add(20, TimeUnit.MILLISECONDS);
+        stageTimers.record("pod-authenticate", "pod-1", StageTimers.SUCCESS, start);
+        stageTimers.time("sign-jwt", "pod-1", () -> {
+            clock.add(5, TimeUnit.MILLISECONDS);
+            return "jwt";
+        });
+        assertThatThrownBy(() -> stageTimers.time("sign-jwt", "pod-1", () -> {
+            throw new IllegalStateException("expected");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(stageTimers.check("validate-tokens", null, () -> false)).isFalse();
+
+        Map<String, Object> metrics = metrics();
+        assertThat(metrics).containsEntry("timer.authentication.stage.pod-authenticate.pod-1.success.count", 1L)
+                           .containsEntry("timer.authentication.stage.pod-authenticate.pod-1.success.mean", 20.0)
+                           .containsEntry("timer.authentication.stage.pod-authenticate.pod-1.success.max", 20.0)
+                           .containsKeys("timer.authentication.stage.pod-authenticate.pod-1.success.p50",
+                                         "timer.authentication.stage.pod-authenticate.pod-1.success.p99_9")
+                           .containsEntry("timer.authentication.stage.sign-jwt.pod-1.success.mean", 5.0)
+                           .containsEntry("timer.authentication.stage.sign-jwt.pod-1.error.count", 1L)
+                           .containsEntry("timer.authentication.stage.validate-tokens.none.invalid.count", 1L);
+    }
+
+    @Test
+    public void podsBeyondMaximumAreNotTimed() {
+        for (String companyId : new String[] {"pod-1", "pod-2", "pod-3"}) {
+            stageTimers.record("login", companyId, StageTimers.SUCCESS, stageTimers.start());
+        }
+
+        assertThat(metrics()).containsKeys("timer.authentication.stage.login.pod-1.success.count",
+                                           "timer.authentication.stage.login.pod-2.success.count")
+                             .doesNotContainKey("timer.authentication.stage.login.pod-3.success.count");
+    }
+
+    @Test
+    public void unregisteredCompanyIdsDontUseUpPodTimers() {
+        for (int i = 0; i < 1000; i++) {
+            stageTimers.record("login", "junk-" + i, StageTimers.INVALID, stageTimers.start());
+        }
+        stageTimers.record("login", "pod-1", StageTimers.SUCCESS, stageTimers.start());
+
+        assertThat(metrics()).containsEntry("timer.authentication.stage.login.unknown.invalid.count", 1000L)
+                             .containsEntry("timer.authentication.stage.login.pod-1.success.count", 1L)
+                             .doesNotContainKey("timer.authentication.stage.login.junk-0.invalid.count");
+    }
+
+    @Test
+    public void outcomeOfFailure() {
+        assertThat(StageTimers.outcome(null)).isEqualTo(StageTimers.SUCCESS);
+        assertThat(StageTimers.outcome(new LoginException())).isEqualTo(StageTimers.INVALID);
+        assertThat(StageTimers.outcome(new CompletionException(new LoginException()))).isEqualTo(StageTimers.INVALID);
+        assertThat(StageTimers.outcome(new CompletionException(new IllegalStateException()))).isEqualTo(StageTimers.ERROR);
+    }
+
+    private Map<String, Object> metrics() {
+        return stageTimers.metrics().stream().collect(Collectors.toMap(Metric::getName, Metric::getValue));
+    }
+}
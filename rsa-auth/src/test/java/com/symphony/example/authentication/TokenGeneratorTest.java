@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import com.symphony.example.tokens.Token;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit test for TokenGenerator.
+ */
+public class TokenGeneratorTest {
+
+    private final TokenGenerator tokenGenerator = new TokenGenerator();
+
+    @Test
+    public void tokensAreUniqueAcrossBatchesAndReseeds() {
+        Set<Token> tokens = new HashSet<>();
+        for (int i = 0; i < TokenGenerator.RESEED_INTERVAL * 2 + TokenGenerator.BATCH_SIZE / 2; i++) {
+            assertThat(tokens.add(tokenGenerator.generateToken())).isTrue();
+        }
+    }
+
+    @Test
+    public void threadsGetDifferentTokens() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<Token>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    List<Token> generated = new ArrayList<>();
+                    for (int j = 0; j < 10000; j++) {
+                        generated.add(tokenGenerator.generateToken());
+                    }
+                    return generated;
+                }));
+            }
+
+            Set<Token> tokens = new HashSet<>();
+            for (Future<List<Token>> future : futures) {
+                tokens.addAll(future.get());
+            }
+            assertThat(tokens).hasSize(80000);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.authentication;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Unit test for VerifiedJwtCache.
+ */
+public class VerifiedJwtCacheTest {
+
+    private static final long NOW = 1_500_000_000_000L;
+
+    private VerifiedJwtCache verifiedJwtCache;
+
+    @Before
+    public void setup() {
+        verifiedJwtCache = new VerifiedJwtCache(new AuthenticationConfig());
+        setTime(NOW);
+    }
+
+    @Test
+    public void verifiedJwtIsRemembered() {
+        verifiedJwtCache.put("jwt", "pod-id", "symphony-username", new Date(NOW + 60_000));
+
+        assertThat(verifiedJwtCache.getUsername("jwt", "pod-id")).isEqualTo("symphony-username");
+        assertThat(verifiedJwtCache.getUsername("other-jwt", "pod-id")).isNull();
+    }
+
+    @Test
+    public void entryIsOnlyUsedForSamePod() {
+        verifiedJwtCache.put("jwt", "pod-id", "symphony-username", new Date(NOW + 60_000));
+
+        assertThat(verifiedJwtCache.getUsername("jwt", "other-pod-id")).isNull();
+    }
+
+    @Test
+    public void entryExpiresWithJwt() {
+        verifiedJwtCache.put("jwt", "pod-id", "symphony-username", new Date(NOW + 60_000));
+
+        setTime(NOW + 59_999);
+        assertThat(verifiedJwtCache.getUsername("jwt", "pod-id")).isEqualTo("symphony-username");
+
+        setTime(NOW + 60_000);
+        assertThat(verifiedJwtCache.getUsername("jwt", "pod-id")).isNull();
+    }
+
+    @Test
+    public void jwtWithoutExpirationIsNotRemembered() {
+        verifiedJwtCache.put("jwt", "pod-id", "symphony-username", null);
+        verifiedJwtCache.put("expired-jwt", "pod-id", "symphony-username", new Date(NOW - 1));
+
+        assertThat(verifiedJwtCache.getUsername("jwt", "pod-id")).isNull();
+        assertThat(verifiedJwtCache.getUsername("expired-jwt", "pod-id")).isNull();
+    }
+
+    @Test
+    public void hitsAndMissesAreExposedAsMetrics() {
+        verifiedJwtCache.put("jwt", "pod-id", "symphony-username", new Date(NOW + 60_000));
+        verifiedJwtCache.getUsername("jwt", "pod-id");
+        verifiedJwtCache.getUsername("jwt", "pod-id");
+        verifiedJwtCache.getUsername("jwt", "other-pod-id");
+
+        assertThat(verifiedJwtCache.metrics())
+                .extracting(Metric::getName, Metric::getValue)
+                .containsExactly(tuple("counter.authentication.jwt.verification-cache.hits", 2L),
+                                 tuple("counter.authentication.jwt.verification-cache.misses", 1L),
+                                 tuple("gauge.authentication.jwt.verification-cache.size", 1L));
+    }
+
+    private void setTime(long millis) {
+        verifiedJwtCache.clock = Clock.fixed(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.load;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.context.embedded.LocalServerPort;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.symphony.example.load.LoadDriver.INITIATE_APP_AUTH;
+import static com.symphony.example.load.LoadDriver.LOGIN_WITH_JWT;
+import static com.symphony.example.load.LoadDriver.VALIDATE_TOKENS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the whole app authentication flow against stub pods on localhost, with pods registered through the /podInfo
+ * webhook.  Short runs, to check that the harness and the flow work; use {@link LoadDriver#main(String[])} for real
+ * load tests.  Not part of the default build; run with {@code mvn test -P load-tests}.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+                properties = {"server.ssl.enabled=false",
+                              "webhook.api-key=load-test-api-key"})
+@Slf4j
+public class EndToEndLoadTest {
+
+    private static final int USERS = 8;
+
+    // Pods get a new company ID in each test, since the app caches each pod's signing cert
+    private static final AtomicInteger podIds = new AtomicInteger();
+
+    @LocalServerPort
+    private int port;
+
+    private final List<StubPod> pods = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        pods.forEach(StubPod::stop);
+    }
+
+    @Test
+    public void everyCallSucceedsWithHealthyPods() throws Exception {
+        LoadDriver loadDriver = loadDriver(3, 0);
+        loadDriver.registerPods();
+
+        LoadDriver.Report report = loadDriver.run(Duration.ofSeconds(3));
+        log.info("Healthy pods:\n{}", report);
+
+        for (String endpoint : new String[] {INITIATE_APP_AUTH, VALIDATE_TOKENS, LOGIN_WITH_JWT}) {
+            assertThat(report.getFailed(endpoint)).as(endpoint + " failures").isZero();
+        }
+        assertThat(report.getSucceeded(INITIATE_APP_AUTH)).isPositive();
+        assertThat(report.getSucceeded(VALIDATE_TOKENS)).isEqualTo(report.getSucceeded(INITIATE_APP_AUTH));
+        assertThat(report.getLatencyMillis(INITIATE_APP_AUTH, 50)).isGreaterThanOrEqualTo(5.0);
+
+        long authenticateCalls = pods.stream().mapToLong(StubPod::getAuthenticateCalls).sum();
+        assertThat(authenticateCalls).isEqualTo(report.getSucceeded(INITIATE_APP_AUTH));
+        for (StubPod pod : pods) {
+            // One call warms the connection when the pod is registered.  Signing cert is cached after the first login.
+            assertThat(pod.getPodCertificateCalls()).as(pod.getCompanyId() + " podcert calls").isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void podErrorsAreReportedAsFailedInitiateCalls() throws Exception {
+        LoadDriver loadDriver = loadDriver(1, 0.25);
+        loadDriver.registerPods();
+
+        LoadDriver.Report report = loadDriver.run(Duration.ofSeconds(2));
+        log.info("Pod failing a quarter of calls:\n{}", report);
+
+        assertThat(report.getFailed(INITIATE_APP_AUTH)).isPositive();
+        assertThat(report.getSucceeded(INITIATE_APP_AUTH)).isPositive();
+        assertThat(report.getFailed(VALIDATE_TOKENS)).isZero();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void podsAreNotRegisteredWithWrongApiKey() throws Exception {
+        StubPod pod = new StubPod("unregistered-pod", 0, 0);
+        pod.start();
+        pods.add(pod);
+
+        new LoadDriver("http://localhost:" + port, "wrong-api-key", pods, 1).registerPods();
+    }
+
+    private LoadDriver loadDriver(int podCount, double errorRate) throws Exception {
+        for (int i = 0; i < podCount; i++) {
+            StubPod pod = new StubPod("load-test-pod-" + podIds.incrementAndGet(), 5, errorRate);
+            pod.start();
+            pods.add(pod);
+        }
+        return new LoadDriver("http://localhost:" + port, "load-test-api-key", pods, USERS);
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load driver for the whole app authentication flow.  Pods are registered through the real /podInfo webhook, then a
+ * number of virtual users each repeatedly:
+ * <ol>
+ *     <li>call /initiate-app-auth for one of the pods</li>
+ *     <li>call /validate-tokens with the app token and the Symphony token the pod issued for it</li>
+ *     <li>call /login-with-jwt with a JWT issued by the pod</li>
+ * </ol>
+ * and the latency of each call is recorded per endpoint.  A user starts over if a call fails.
+ *
+ * Can be run against an app that is already running (with server.ssl.enabled=false), with stub pods started on this
+ * machine:
+ * <pre>
+ *     LoadDriver &lt;app url&gt; &lt;webhook API key&gt; &lt;pods&gt; &lt;users&gt; &lt;seconds&gt; &lt;pod latency millis&gt; &lt;pod error rate&gt;
+ * </pre>
+ */
+@Slf4j
+public class LoadDriver {
+
+    public static final String INITIATE_APP_AUTH = "/initiate-app-auth";
+
+    public static final String VALIDATE_TOKENS = "/validate-tokens";
+
+    public static final String LOGIN_WITH_JWT = "/login-with-jwt";
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String appUrl;
+
+    private final String apiKey;
+
+    private final List<StubPod> pods;
+
+    private final int users;
+
+    private final OkHttpClient httpClient;
+
+    /**
+     * @param appUrl base URL of the app, e.g. http://localhost:8080
+     * @param apiKey API key for the /podInfo webhook
+     * @param pods started stub pods
+     * @param users number of virtual users, each making one call at a time
+     */
+    public LoadDriver(String appUrl, String apiKey, List<StubPod> pods, int users) {
+        this.appUrl = appUrl;
+        this.apiKey = apiKey;
+        this.pods = pods;
+        this.users = users;
+        this.httpClient = new OkHttpClient.Builder()
+                .readTimeout(60, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Tells the app about each pod by calling the /podInfo webhook, as a pod does when the app is enabled.
+     *
+     * @throws IllegalStateException if the app doesn't accept the pod info
+     */
+    public void registerPods() throws IOException {
+        for (StubPod pod : pods) {
+            Map<String, Object> payload = new HashMap<>();
+            payload.put("podUrl", pod.getPodUrl());
+            payload.put("agentUrl", pod.getPodUrl().replace("/pod", "/agent"));
+            payload.put("sessionAuthUrl", pod.getPodUrl().replace("/pod", "/sessionauth"));
+            Map<String, Object> podInfo = new HashMap<>();
+            podInfo.put("companyId", pod.getCompanyId());
+            podInfo.put("eventType", "APP_ENABLED");
+            podInfo.put("payload", payload);
+
+            Request request = new Request.Builder()
+                    .url(appUrl + "/podInfo")
+                    .header("X-API-KEY", apiKey)
+                    .post(RequestBody.create(JSON, objectMapper.writeValueAsBytes(podInfo)))
+                    .build();
+            try (Response response = httpClient.newCall(request).execute()) {
+                if (response.code() != 200) {
+                    throw new IllegalStateException("Pod info for " + pod.getCompanyId() + " rejected with HTTP " + response.code());
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the virtual users for the specified time.
+     *
+     * @return latency and throughput of each endpoint
+     */
+    public Report run(Duration duration) throws InterruptedException {
+        Report report = new Report();
+        long deadline = System.nanoTime() + duration.toNanos();
+
+        ExecutorService executor = Executors.newFixedThreadPool(users);
+        CountDownLatch done = new CountDownLatch(users);
+        long start = System.nanoTime();
+        for (int i = 0; i < users; i++) {
+            int user = i;
+            executor.execute(() -> {
+                try {
+                    for (int flow = 0; System.nanoTime() - deadline < 0; flow++) {
+                        runFlow(pods.get((user + flow) % pods.size()), "user-" + user, report);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        report.elapsedNanos = System.nanoTime() - start;
+        executor.shutdown();
+        return report;
+    }
+
+    private void runFlow(StubPod pod, String username, Report report) {
+        Response initiate = call(report, INITIATE_APP_AUTH, new Request.Builder().url(appUrl + INITIATE_APP_AUTH)
+                .post(RequestBody.create(JSON, pod.getCompanyId())));
+        if (initiate == null) {
+            return;
+        }
+        String appToken;
+        String receiptCookie;
+        try {
+            appToken = objectMapper.readValue(initiate.body().string(), String.class);
+            receiptCookie = initiate.header("Set-Cookie");
+        } catch (IOException e) {
+            return;
+        } finally {
+            initiate.close();
+        }
+
+        Map<String, String> tokens = new HashMap<>();
+        tokens.put("companyId", pod.getCompanyId());
+        tokens.put("appToken", appToken);
+        tokens.put("symphonyToken", pod.getSymphonyToken(appToken));
+        Request.Builder validate = new Request.Builder().url(appUrl + VALIDATE_TOKENS).post(json(tokens));
+        if (receiptCookie != null) {
+            validate.header("Cookie", receiptCookie.substring(0, receiptCookie.indexOf(';')));
+        }
+        Response validated = call(report, VALIDATE_TOKENS, validate);
+        if (validated == null) {
+            return;
+        }
+        validated.close();
+
+        Map<String, String> login = new HashMap<>();
+        login.put("companyId", pod.getCompanyId());
+        login.put("jwt", pod.issueJwt(username));
+        Response loggedIn = call(report, LOGIN_WITH_JWT, new Request.Builder().url(appUrl + LOGIN_WITH_JWT).post(json(login)));
+        if (loggedIn != null) {
+            loggedIn.close();
+        }
+    }
+
+    /**
+     * Makes a call and records its latency.
+     *
+     * @return the response, or null if the call failed
+     */
+    private Response call(Report report, String endpoint, Request.Builder request) {
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = httpClient.newCall(request.build()).execute();
+        } catch (IOException e) {
+            report.failed(endpoint, System.nanoTime() - start);
+            return null;
+        }
+        if (!response.isSuccessful()) {
+            report.failed(endpoint, System.nanoTime() - start);
+            response.close();
+            return null;
+        }
+        report.succeeded(endpoint, System.nanoTime() - start);
+        return response;
+    }
+
+    private static RequestBody json(Object body) {
+        try {
+            return RequestBody.create(JSON, objectMapper.writeValueAsBytes(body));
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't serialize request", e);
+        }
+    }
+
+    /**
+     * Latency (of successful and failed calls alike) and call counts per endpoint.
+     */
+    public static class Report {
+
+        private final Map<String, EndpointStats> endpoints = new LinkedHashMap<>();
+
+        private long elapsedNanos;
+
+        Report() {
+            for (String endpoint : new String[] {INITIATE_APP_AUTH, VALIDATE_TOKENS, LOGIN_WITH_JWT}) {
+                endpoints.put(endpoint, new EndpointStats());
+            }
+        }
+
+        public long getSucceeded(String endpoint) {
+            return endpoints.get(endpoint).succeeded.sum();
+        }
+
+        public long getFailed(String endpoint) {
+            return endpoints.get(endpoint).failed.sum();
+        }
+
+        /**
+         * Returns the successful calls per second.
+         */
+        public double getThroughput(String endpoint) {
+            return getSucceeded(endpoint) / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * Returns a latency percentile, in millis.
+         *
+         * @param percentile percentile from 0 to 100, e.g. 99.9
+         */
+        public double getLatencyMillis(String endpoint, double percentile) {
+            return endpoints.get(endpoint).latencyMicros.getValueAtPercentile(percentile) / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            List<String> lines = new ArrayList<>();
+            lines.add(String.format("%-20s %10s %8s %10s %9s %9s %9s %9s",
+                                    "endpoint", "succeeded", "failed", "per sec", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+            for (String endpoint : endpoints.keySet()) {
+                lines.add(String.format("%-20s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f", endpoint,
+                                        getSucceeded(endpoint), getFailed(endpoint), getThroughput(endpoint),
+                                        getLatencyMillis(endpoint, 50), getLatencyMillis(endpoint, 90),
+                                        getLatencyMillis(endpoint, 99), getLatencyMillis(endpoint, 100)));
+            }
+            return String.join("\n", lines);
+        }
+
+        private void succeeded(String endpoint, long nanos) {
+            EndpointStats stats = endpoints.get(endpoint);
+            stats.succeeded.increment();
+            stats.latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+
+        private void failed(String endpoint, long nanos) {
+            EndpointStats stats = endpoints.get(endpoint);
+            stats.failed.increment();
+            stats.latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+    }
+
+    private static class EndpointStats {
+        final LongAdder succeeded = new LongAdder();
+        final LongAdder failed = new LongAdder();
+
+        // Auto-resizing, 3 significant digits
+        final Histogram latencyMicros = new ConcurrentHistogram(3);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 7) {
+            System.err.println("Usage: LoadDriver <app url> <webhook API key> <pods> <users> <seconds> "
+                               + "<pod latency millis> <pod error rate>");
+            System.exit(1);
+        }
+
+        List<StubPod> pods = new ArrayList<>();
+        for (int i = 0; i < Integer.parseInt(args[2]); i++) {
+            StubPod pod = new StubPod("stub-pod-" + i, Long.parseLong(args[5]), Double.parseDouble(args[6]));
+            pod.start();
+            pods.add(pod);
+        }
+        try {
+            LoadDriver loadDriver = new LoadDriver(args[0], args[1], pods, Integer.parseInt(args[3]));
+            loadDriver.registerPods();
+            log.info("Results:\n{}", loadDriver.run(Duration.ofSeconds(Long.parseLong(args[4]))));
+        } finally {
+            pods.forEach(StubPod::stop);
+        }
+    }
+}
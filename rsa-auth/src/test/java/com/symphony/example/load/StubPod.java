@@ -0,0 +1,281 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.symphony.example.utils.TestCertificates;
+import com.symphony.symphony.client.AuthenticateResponse;
+import com.symphony.symphony.client.PodCertificate;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stand-in for a Symphony pod, listening on localhost over plain HTTP.  Implements the two pod endpoints used by the
+ * app authentication flow:
+ * <ul>
+ *     <li>GET /pod/v1/podcert - returns a real, self signed JWT signing cert</li>
+ *     <li>POST /login/v1/pubkey/app/authenticate/extensionApp - issues a Symphony token for the app token</li>
+ * </ul>
+ * Every response is delayed by the configured latency, and the configured fraction of requests fail with HTTP 500.
+ * While the pod is paused (see {@link #pause()}), requests are also held until it is resumed, like a pod that hangs.
+ *
+ * The stub also plays the part of the Symphony client: it hands out the Symphony token it issued for an app token
+ * (see {@link #getSymphonyToken(String)}), and issues user JWTs signed with its signing key (see
+ * {@link #issueJwt(String)}) that the app can verify against the cert.
+ */
+@Slf4j
+public class StubPod {
+
+    private static final String APPLICATION_JSON = "application/json";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String companyId;
+
+    private final long latencyMillis;
+
+    private final double errorRate;
+
+    private final KeyPair signingKeyPair;
+
+    private final String signingCertPem;
+
+    // Symphony token issued for each app token
+    private final Map<String, String> symphonyTokens = new ConcurrentHashMap<>();
+
+    private final LongAdder authenticateCalls = new LongAdder();
+
+    private final LongAdder podCertificateCalls = new LongAdder();
+
+    // Counted down when the pod resumes, or null when it isn't paused
+    private volatile CountDownLatch resumed;
+
+    private final AtomicInteger pausedCalls = new AtomicInteger();
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    /**
+     * @param companyId ID of the pod
+     * @param latencyMillis time (millis) taken by the pod to respond to each request
+     * @param errorRate fraction of requests (0 to 1) that fail with HTTP 500
+     */
+    public StubPod(String companyId, long latencyMillis, double errorRate) throws GeneralSecurityException {
+        this.companyId = companyId;
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+        this.signingKeyPair = TestCertificates.generateKeyPair();
+        this.signingCertPem = TestCertificates.toPem(TestCertificates.selfSignedCertificate(
+                signingKeyPair, new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1))));
+    }
+
+    /**
+     * Starts listening on a free port on localhost.
+     */
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/pod/v1/podcert", exchange -> handle(exchange, "GET", podCertificateCalls, this::podCertificate));
+        server.createContext("/login/v1/pubkey/app/authenticate/extensionApp",
+                             exchange -> handle(exchange, "POST", authenticateCalls, this::authenticate));
+
+        // A thread per request in flight, so that latency doesn't limit throughput
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "stub-pod-" + companyId + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+        log.info("Stub pod {} listening at {}", companyId, getPodUrl());
+    }
+
+    /**
+     * Stops listening.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    public String getCompanyId() {
+        return companyId;
+    }
+
+    /**
+     * Returns the pod URL, as sent to the app in the pod info webhook.
+     */
+    public String getPodUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/pod";
+    }
+
+    /**
+     * Returns the Symphony token issued for an app token, or null if none was issued.  The Symphony client gets this
+     * from the pod and passes it to the app's front end.
+     */
+    public String getSymphonyToken(String appToken) {
+        return symphonyTokens.get(appToken);
+    }
+
+    /**
+     * Issues a JWT for a user of this pod, signed with the pod's signing key, like the one the Symphony client passes
+     * to the app's front end.  Valid for an hour.
+     */
+    public String issueJwt(String username) {
+        Map<String, String> user = new HashMap<>();
+        user.put("id", username + "-id");
+        user.put("username", username);
+        user.put("displayName", username);
+        user.put("companyId", companyId);
+        return Jwts.builder()
+                   .setSubject(username + "-id")
+                   .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+                   .claim("user", user)
+                   .signWith(SignatureAlgorithm.RS512, signingKeyPair.getPrivate())
+                   .compact();
+    }
+
+    public long getAuthenticateCalls() {
+        return authenticateCalls.sum();
+    }
+
+    public long getPodCertificateCalls() {
+        return podCertificateCalls.sum();
+    }
+
+    /**
+     * Holds every request from now on until {@link #resume()} is called, or for a minute at most.
+     */
+    public void pause() {
+        resumed = new CountDownLatch(1);
+    }
+
+    /**
+     * Responds to the requests held since {@link #pause()} was called, and stops holding new ones.
+     */
+    public void resume() {
+        CountDownLatch latch = resumed;
+        resumed = null;
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Returns the number of requests being held while the pod is paused.
+     */
+    public int getPausedCalls() {
+        return pausedCalls.get();
+    }
+
+    private Object podCertificate(HttpExchange exchange) {
+        PodCertificate podCertificate = new PodCertificate();
+        podCertificate.setCertificate(signingCertPem);
+        return podCertificate;
+    }
+
+    private Object authenticate(HttpExchange exchange) throws IOException {
+        AuthenticateRequest request = objectMapper.readValue(exchange.getRequestBody(), AuthenticateRequest.class);
+        if (request.appToken == null || request.authToken == null) {
+            return null;
+        }
+
+        String symphonyToken = UUID.randomUUID().toString();
+        symphonyTokens.put(request.appToken, symphonyToken);
+
+        AuthenticateResponse response = new AuthenticateResponse();
+        response.setAppToken(request.appToken);
+        response.setSymphonyToken(symphonyToken);
+        response.setExpireAt(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+        return response;
+    }
+
+    private void handle(HttpExchange exchange, String method, LongAdder calls, Endpoint endpoint) throws IOException {
+        try {
+            calls.increment();
+            if (!method.equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            CountDownLatch latch = resumed;
+            if (latch != null) {
+                pausedCalls.incrementAndGet();
+                try {
+                    latch.await(1, TimeUnit.MINUTES);
+                } finally {
+                    pausedCalls.decrementAndGet();
+                }
+            }
+            if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+
+            Object response = endpoint.respond(exchange);
+            if (response == null) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            byte[] body = objectMapper.writeValueAsBytes(response);
+            exchange.getResponseHeaders().set("Content-Type", APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private interface Endpoint {
+        Object respond(HttpExchange exchange) throws IOException;
+    }
+
+    // AuthenticateRequest has no default constructor, so requests are read into this instead
+    private static class AuthenticateRequest {
+        public String appToken;
+        public String authToken;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.load;
+
+import com.symphony.example.utils.TestCertificates;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stub pod served over TLS by OkHttp's MockWebServer, which negotiates HTTP/2 or HTTP/1.1 with ALPN.  Answers the
+ * authenticate endpoint after a fixed latency, so that concurrent calls overlap, and records the most calls it had in
+ * flight at once.  Its self signed cert is for "localhost", and is written to a trust store file for the app's HTTP
+ * client.
+ */
+@Slf4j
+public class TlsStubPod {
+
+    private static final String KEY_STORE_PASSWORD = "changeit";
+
+    private final MockWebServer server = new MockWebServer();
+
+    private final long latencyMillis;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maximumInFlight = new AtomicInteger();
+
+    private File trustStoreFile;
+
+    /**
+     * @param latencyMillis time taken to answer each authenticate call
+     * @param protocols protocols offered to clients, e.g. HTTP/2 and HTTP/1.1
+     */
+    public TlsStubPod(long latencyMillis, List<Protocol> protocols) {
+        // MockWebServer logs every request
+        Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+        this.latencyMillis = latencyMillis;
+        server.setProtocols(protocols);
+    }
+
+    public void start() throws IOException, GeneralSecurityException {
+        KeyPair keyPair = TestCertificates.generateKeyPair();
+        X509Certificate certificate = TestCertificates.serverCertificate(keyPair, "localhost");
+
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("pod", keyPair.getPrivate(), KEY_STORE_PASSWORD.toCharArray(),
+                             new Certificate[] {certificate});
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, KEY_STORE_PASSWORD.toCharArray());
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, null);
+        trustStore.setCertificateEntry("pod", certificate);
+        trustStoreFile = File.createTempFile("stub-pod", ".truststore");
+        trustStoreFile.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(trustStoreFile)) {
+            trustStore.store(out, KEY_STORE_PASSWORD.toCharArray());
+        }
+
+        server.useHttps(sslContext.getSocketFactory(), false);
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return respond(request);
+            }
+        });
+        server.start();
+        log.info("TLS stub pod listening at {}", getPodUrl());
+    }
+
+    public void stop() throws IOException {
+        server.shutdown();
+        if (trustStoreFile != null) {
+            trustStoreFile.delete();
+        }
+    }
+
+    /**
+     * Returns the pod URL to register with the app, https://localhost:PORT/pod.
+     */
+    public String getPodUrl() {
+        return server.url("/pod").toString();
+    }
+
+    /**
+     * Returns the trust store file holding the stub's cert.
+     */
+    public String getTrustStoreFilename() {
+        return trustStoreFile.getPath();
+    }
+
+    /**
+     * Returns the most authenticate calls that were in flight at once.
+     */
+    public int getMaximumInFlight() {
+        return maximumInFlight.get();
+    }
+
+    private MockResponse respond(RecordedRequest request) throws InterruptedException {
+        if ("/pod/v1/podcert".equals(request.getPath())) {
+            return json("{\"certificate\":\"\"}");
+        }
+        if (!"/login/v1/pubkey/app/authenticate/extensionApp".equals(request.getPath())) {
+            return new MockResponse().setResponseCode(404);
+        }
+
+        maximumInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(latencyMillis);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        return json("{\"appToken\":\"app-token\",\"symphonyToken\":\"" + UUID.randomUUID() + "\",\"expireAt\":"
+                    + (System.currentTimeMillis() + 3_600_000L) + "}");
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.pods;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit test for PodDirectory with a journal (PodDirectoryJournal).  Each "restart" is a new PodDirectory using the
+ * same directory.
+ */
+public class PodDirectoryJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PodDirectory podDirectory;
+
+    @After
+    public void tearDown() {
+        if (podDirectory != null) {
+            podDirectory.stop();
+        }
+    }
+
+    @Test
+    public void podsAreRestoredAfterRestart() throws Exception {
+        podDirectory = start(10000);
+        podDirectory.addPodInfo(podInfo("pod-1", "https://pod-1.symphony.com/pod"));
+        podDirectory.addPodInfo(podInfo("pod-2", "https://pod-2.symphony.com/pod"));
+        podDirectory.addPodInfo(podInfo("pod-1", "https://pod-1-moved.symphony.com/pod"));
+
+        restart(10000);
+
+        VersionedPodInfo pod1 = podDirectory.getVersionedPodInfo("pod-1");
+        assertThat(pod1.getVersion()).isEqualTo(2);
+        assertThat(pod1.getPodInfo()).isEqualTo(podInfo("pod-1", "https://pod-1-moved.symphony.com/pod"));
+        assertThat(podDirectory.getVersionedPodInfo("pod-2").getVersion()).isEqualTo(1);
+
+        // Versions carry on from the restored ones
+        assertThat(podDirectory.addPodInfo(podInfo("pod-1", "https://pod-1.symphony.com/pod"))).isEqualTo(3);
+        restart(10000);
+        assertThat(podDirectory.getVersionedPodInfo("pod-1").getVersion()).isEqualTo(3);
+    }
+
+    @Test
+    public void journalIsCompactedIntoSnapshot() throws Exception {
+        podDirectory = start(10);
+        for (int update = 0; update < 25; update++) {
+            podDirectory.addPodInfo(podInfo("pod-" + update % 5, "https://pod.symphony.com/pod/" + update));
+        }
+        podDirectory.stop();
+
+        assertThat(folder.getRoot().toPath().resolve(PodDirectoryJournal.SNAPSHOT_FILE)).exists();
+        assertThat(Files.size(journal())).isLessThan(Files.size(folder.getRoot().toPath().resolve(PodDirectoryJournal.SNAPSHOT_FILE)) * 2);
+
+        podDirectory = start(10);
+        for (int pod = 0; pod < 5; pod++) {
+            VersionedPodInfo restored = podDirectory.getVersionedPodInfo("pod-" + pod);
+            assertThat(restored.getVersion()).isEqualTo(5);
+            assertThat(restored.getPodInfo().getPayload().getPodUrl()).isEqualTo("https://pod.symphony.com/pod/" + (20 + pod));
+        }
+    }
+
+    @Test
+    public void incompleteRecordAtEndOfJournalIsDiscarded() throws Exception {
+        podDirectory = start(10000);
+        podDirectory.addPodInfo(podInfo("pod-1", "https://pod-1.symphony.com/pod"));
+        podDirectory.addPodInfo(podInfo("pod-2", "https://pod-2.symphony.com/pod"));
+        podDirectory.stop();
+
+        // App died half way through writing a record
+        byte[] journal = Files.readAllBytes(journal());
+        Files.write(journal(), new byte[] {0, 0, 0, 100, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        podDirectory = start(10000);
+        assertThat(Files.readAllBytes(journal())).isEqualTo(journal);
+        assertThat(podDirectory.getVersionedPodInfo("pod-2").getVersion()).isEqualTo(1);
+        podDirectory.addPodInfo(podInfo("pod-3", "https://pod-3.symphony.com/pod"));
+
+        restart(10000);
+        assertThat(podDirectory.getPodInfo("pod-1").getPayload().getPodUrl()).isEqualTo("https://pod-1.symphony.com/pod");
+        assertThat(podDirectory.getPodInfo("pod-3").getPayload().getPodUrl()).isEqualTo("https://pod-3.symphony.com/pod");
+        assertThatThrownBy(() -> podDirectory.getPodInfo("pod-4")).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void writingResumesAfterFailure() throws Exception {
+        podDirectory = start(2);
+        // Replacing a directory that isn't empty fails, so the snapshot can't be written
+        Path snapshot = folder.getRoot().toPath().resolve(PodDirectoryJournal.SNAPSHOT_FILE);
+        Files.createDirectories(snapshot.resolve("blocked"));
+
+        podDirectory.addPodInfo(podInfo("pod-1", "https://pod-1.symphony.com/pod"));
+        podDirectory.addPodInfo(podInfo("pod-2", "https://pod-2.symphony.com/pod"));
+        Thread.sleep(200);
+        podDirectory.addPodInfo(podInfo("pod-3", "https://pod-3.symphony.com/pod"));
+
+        Files.delete(snapshot.resolve("blocked"));
+        Files.delete(snapshot);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PodDirectoryJournal.RETRY_MILLIS * 5);
+        while (!Files.isRegularFile(snapshot) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(snapshot).isRegularFile();
+        podDirectory.addPodInfo(podInfo("pod-4", "https://pod-4.symphony.com/pod"));
+
+        restart(10000);
+        for (int pod = 1; pod <= 4; pod++) {
+            assertThat(podDirectory.getPodInfo("pod-" + pod).getPayload().getPodUrl())
+                    .isEqualTo("https://pod-" + pod + ".symphony.com/pod");
+        }
+    }
+
+    @Test
+    public void unknownEventTypeIsRestoredAsNull() throws Exception {
+        podDirectory = start(10000);
+        podDirectory.addPodInfo(podInfo("pod-1", "https://pod-1.symphony.com/pod"));
+        podDirectory.stop();
+
+        // As written by a build with another event type.  Same length, so only the CRC needs fixing.
+        byte[] journal = Files.readAllBytes(journal());
+        String contents = new String(journal, StandardCharsets.ISO_8859_1);
+        byte[] unknown = "APP_REMOVED".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(unknown, 0, journal, contents.indexOf("APP_ENABLED"), unknown.length);
+        CRC32 crc = new CRC32();
+        crc.update(journal, 8, journal.length - 8);
+        ByteBuffer.wrap(journal).putInt(4, (int) crc.getValue());
+        Files.write(journal(), journal);
+
+        podDirectory = start(10000);
+        PodInfo restored = podDirectory.getPodInfo("pod-1");
+        assertThat(restored.getEventType()).isNull();
+        assertThat(restored.getPayload().getPodUrl()).isEqualTo("https://pod-1.symphony.com/pod");
+    }
+
+    private PodDirectory start(int compactAfterEntries) throws IOException {
+        PodDirectoryConfiguration configuration = new PodDirectoryConfiguration();
+        configuration.setJournalDirectory(folder.getRoot().getPath());
+        configuration.setCompactAfterEntries(compactAfterEntries);
+        PodDirectory started = new PodDirectory(configuration);
+        started.start();
+        return started;
+    }
+
+    private void restart(int compactAfterEntries) throws IOException {
+        podDirectory.stop();
+        podDirectory = start(compactAfterEntries);
+    }
+
+    private Path journal() {
+        return folder.getRoot().toPath().resolve(PodDirectoryJournal.JOURNAL_FILE);
+    }
+
+    private static PodInfo podInfo(String companyId, String podUrl) {
+        PodInfo podInfo = new PodInfo();
+        podInfo.setCompanyId(companyId);
+        podInfo.setAppId("app-id");
+        podInfo.setEventType(PodInfo.EventType.APP_ENABLED);
+        PodInfo.PodInfoPayload payload = new PodInfo.PodInfoPayload();
+        payload.setPodUrl(podUrl);
+        payload.setAgentUrl(podUrl.replace("/pod", "/agent"));
+        podInfo.setPayload(payload);
+        return podInfo;
+    }
+}
@@ -16,6 +16,15 @@ package com.symphony.example.pods;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
@@ -54,4 +63,131 @@ public class PodDirectoryTest {
         assertThat(returned).isEqualTo(added);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void versionGoesUpWithEachUpdate() {
+        assertThat(podDirectory.addPodInfo(podInfo("pod-id", 1))).isEqualTo(1);
+        assertThat(podDirectory.addPodInfo(podInfo("pod-id", 2))).isEqualTo(2);
+        assertThat(podDirectory.addPodInfo(podInfo("another-pod-id", 1))).isEqualTo(1);
+
+        VersionedPodInfo versioned = podDirectory.getVersionedPodInfo("pod-id");
+        assertThat(versioned.getVersion()).isEqualTo(2);
+        assertThat(versioned.getPodInfo().getPayload().getPodUrl()).isEqualTo("https://pod-id-2.symphony.com/pod");
+    }
+
+    @Test
+    public void changesToAddedPodInfoAreNotSeen() {
+        PodInfo added = podInfo("pod-id", 1);
+        podDirectory.addPodInfo(added);
+
+        added.getPayload().setPodUrl("https://changed.symphony.com/pod");
+
+        assertThat(podDirectory.getPodInfo("pod-id").getPayload().getPodUrl()).isEqualTo("https://pod-id-1.symphony.com/pod");
+    }
+
+    @Test
+    public void changesToReturnedPodInfoAreNotSeen() {
+        podDirectory.addPodInfo(podInfo("pod-id", 1));
+
+        podDirectory.getPodInfo("pod-id").getPayload().setPodUrl("https://changed.symphony.com/pod");
+        podDirectory.getVersionedPodInfo("pod-id").getPodInfo().setCompanyId("changed");
+
+        PodInfo stored = podDirectory.getPodInfo("pod-id");
+        assertThat(stored.getCompanyId()).isEqualTo("pod-id");
+        assertThat(stored.getPayload().getPodUrl()).isEqualTo("https://pod-id-1.symphony.com/pod");
+    }
+
+    /**
+     * 10k pods are updated over and over by writer threads, each pod by one writer, while reader threads read random
+     * pods.  Every entry a reader sees must be whole (pod and agent URLs from the same update, matching the version)
+     * and a pod's version must never go backwards.
+     */
+    @Test
+    public void readersSeeWholeEntriesWhilePodsAreUpdated() throws Exception {
+        int pods = 10_000;
+        int writers = 4;
+        int readers = 4;
+        int updatesPerPod = 20;
+
+        for (int pod = 0; pod < pods; pod++) {
+            podDirectory.addPodInfo(podInfo("pod-" + pod, 1));
+        }
+
+        Queue<String> errors = new ConcurrentLinkedQueue<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writerThreads = new ArrayList<>();
+        List<Thread> readerThreads = new ArrayList<>();
+
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            writerThreads.add(new Thread(() -> {
+                await(start);
+                for (int update = 2; update <= updatesPerPod; update++) {
+                    for (int pod = writer; pod < pods; pod += writers) {
+                        long version = podDirectory.addPodInfo(podInfo("pod-" + pod, update));
+                        if (version != update) {
+                            errors.add("pod-" + pod + " update " + update + " got version " + version);
+                        }
+                    }
+                }
+            }));
+        }
+        for (int r = 0; r < readers; r++) {
+            readerThreads.add(new Thread(() -> {
+                long[] lastSeen = new long[pods];
+                await(start);
+                while (writing.get()) {
+                    int pod = ThreadLocalRandom.current().nextInt(pods);
+                    VersionedPodInfo versioned = podDirectory.getVersionedPodInfo("pod-" + pod);
+                    PodInfo.PodInfoPayload payload = versioned.getPodInfo().getPayload();
+                    String host = "pod-" + pod + "-" + versioned.getVersion() + ".symphony.com";
+                    if (!payload.getPodUrl().equals("https://" + host + "/pod")
+                        || !payload.getAgentUrl().equals("https://" + host + "/agent")) {
+                        errors.add("Torn entry for pod-" + pod + " at version " + versioned.getVersion() + ": " + payload);
+                    }
+                    if (versioned.getVersion() < lastSeen[pod]) {
+                        errors.add("pod-" + pod + " went back from version " + lastSeen[pod] + " to " + versioned.getVersion());
+                    }
+                    lastSeen[pod] = versioned.getVersion();
+                }
+            }));
+        }
+
+        writerThreads.forEach(Thread::start);
+        readerThreads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : writerThreads) {
+            thread.join(TimeUnit.SECONDS.toMillis(60));
+        }
+        writing.set(false);
+        for (Thread thread : readerThreads) {
+            thread.join(TimeUnit.SECONDS.toMillis(60));
+        }
+
+        assertThat(errors).isEmpty();
+        for (int pod = 0; pod < pods; pod++) {
+            assertThat(podDirectory.getVersionedPodInfo("pod-" + pod).getVersion()).isEqualTo(updatesPerPod);
+        }
+    }
+
+    private static PodInfo podInfo(String companyId, int update) {
+        String host = companyId + "-" + update + ".symphony.com";
+        PodInfo podInfo = new PodInfo();
+        podInfo.setCompanyId(companyId);
+        podInfo.setAppId("app-id");
+        PodInfo.PodInfoPayload payload = new PodInfo.PodInfoPayload();
+        payload.setPodUrl("https://" + host + "/pod");
+        payload.setAgentUrl("https://" + host + "/agent");
+        payload.setSessionAuthUrl("https://" + host + "/sessionauth");
+        podInfo.setPayload(payload);
+        return podInfo;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
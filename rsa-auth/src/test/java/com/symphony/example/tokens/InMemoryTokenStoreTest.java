@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.tokens;
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit test for InMemoryTokenStore.
+ */
+public class InMemoryTokenStoreTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private InMemoryTokenStore tokenStore;
+
+    @Before
+    public void setup() {
+        TokenStoreConfiguration configuration = new TokenStoreConfiguration();
+        configuration.setTtlSeconds(60);
+        configuration.setMaximumSizePerPod(10);
+        configuration.setMaximumSize(25);
+        tokenStore = new InMemoryTokenStore(configuration, new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        });
+    }
+
+    @Test
+    public void validate() {
+        tokenStore.put("pod-id", token("app-token"), "symphony-token");
+
+        assertThat(tokenStore.validate("pod-id", token("app-token"), "symphony-token", null)).isTrue();
+        assertThat(tokenStore.validate("pod-id", token("app-token"), "symphony-token", null)).isTrue();
+        assertThat(tokenStore.validate("pod-id", token("app-token"), "other-symphony-token", null)).isFalse();
+        assertThat(tokenStore.validate("pod-id", token("other-app-token"), "symphony-token", null)).isFalse();
+        assertThat(tokenStore.validate("other-pod-id", token("app-token"), "symphony-token", null)).isFalse();
+    }
+
+    @Test
+    public void consume() {
+        tokenStore.put("pod-id", token("app-token"), "symphony-token");
+
+        assertThat(tokenStore.consume("pod-id", token("app-token"), "other-symphony-token", null)).isFalse();
+        assertThat(tokenStore.consume("pod-id", token("app-token"), "symphony-token", null)).isTrue();
+        assertThat(tokenStore.consume("pod-id", token("app-token"), "symphony-token", null)).isFalse();
+        assertThat(tokenStore.validate("pod-id", token("app-token"), "symphony-token", null)).isFalse();
+    }
+
+    @Test
+    public void validateAll() {
+        tokenStore.put("pod-id", token("app-token-1"), "symphony-token-1");
+        tokenStore.put("pod-id", token("app-token-2"), "symphony-token-2");
+        tokenStore.put("other-pod-id", token("app-token-3"), "symphony-token-3");
+
+        boolean[] valid = tokenStore.validateAll(Arrays.asList(
+                new TokenPair("pod-id", token("app-token-1"), "symphony-token-1", null),
+                new TokenPair("other-pod-id", token("app-token-3"), "symphony-token-3", null),
+                new TokenPair("pod-id", token("app-token-2"), "other-symphony-token", null),
+                new TokenPair("other-pod-id", token("app-token-1"), "symphony-token-1", null),
+                new TokenPair("unknown-pod-id", token("app-token-1"), "symphony-token-1", null),
+                new TokenPair("pod-id", token("app-token-2"), "symphony-token-2", null)));
+
+        assertThat(valid).containsExactly(true, true, false, false, false, true);
+        assertThat(tokenStore.validateAll(Collections.emptyList())).isEmpty();
+    }
+
+    @Test
+    public void tokensExpire() {
+        tokenStore.put("pod-id", token("app-token"), "symphony-token");
+
+        nanos.set(TimeUnit.SECONDS.toNanos(59));
+        assertThat(tokenStore.validate("pod-id", token("app-token"), "symphony-token", null)).isTrue();
+
+        nanos.set(TimeUnit.SECONDS.toNanos(60));
+        assertThat(tokenStore.validate("pod-id", token("app-token"), "symphony-token", null)).isFalse();
+        assertThat(tokenStore.consume("pod-id", token("app-token"), "symphony-token", null)).isFalse();
+    }
+
+    @Test
+    public void noisyPodOnlyEvictsItsOwnTokens() {
+        tokenStore.put("quiet-pod", token("app-token"), "symphony-token");
+
+        for (int i = 0; i < 100; i++) {
+            tokenStore.put("noisy-pod", token("app-token-" + i), "symphony-token-" + i);
+        }
+
+        assertThat(tokenStore.validate("quiet-pod", token("app-token"), "symphony-token", null)).isTrue();
+        assertThat(tokenStore.validate("noisy-pod", token("app-token-89"), "symphony-token-89", null)).isFalse();
+        assertThat(tokenStore.validate("noisy-pod", token("app-token-90"), "symphony-token-90", null)).isTrue();
+        assertThat(metric("gauge.tokens.pod.noisy-pod.size")).isEqualTo(10);
+        assertThat(metric("counter.tokens.pod.noisy-pod.evictions")).isEqualTo(90L);
+        assertThat(metric("counter.tokens.pod.quiet-pod.evictions")).isEqualTo(0L);
+    }
+
+    @Test
+    public void maximumSizeEvictsFromLargestPartition() {
+        for (int pod = 0; pod < 2; pod++) {
+            for (int i = 0; i < 10; i++) {
+                tokenStore.put("large-pod-" + pod, token("app-token-" + i), "symphony-token-" + i);
+            }
+        }
+        for (int i = 0; i < 3; i++) {
+            tokenStore.put("small-pod", token("app-token-" + i), "symphony-token-" + i);
+        }
+        assertThat(metric("gauge.tokens.size")).isEqualTo(23);
+
+        // Three more pairs for new pods take the total over the maximum of 25
+        for (int pod = 0; pod < 3; pod++) {
+            tokenStore.put("new-pod-" + pod, token("app-token"), "symphony-token");
+        }
+
+        assertThat(metric("gauge.tokens.size")).isEqualTo(25);
+        assertThat(metric("counter.tokens.evictions.maximum-size")).isEqualTo(1L);
+        assertThat((int) metric("gauge.tokens.pod.large-pod-0.size") + (int) metric("gauge.tokens.pod.large-pod-1.size"))
+                .isEqualTo(19);
+        assertThat(metric("gauge.tokens.pod.small-pod.size")).isEqualTo(3);
+        assertThat(tokenStore.validate("new-pod-2", token("app-token"), "symphony-token", null)).isTrue();
+    }
+
+    @Test
+    public void expiredTokensAreRemovedBeforeEvicting() {
+        for (int i = 0; i < 10; i++) {
+            tokenStore.put("pod-id", token("old-app-token-" + i), "symphony-token");
+        }
+        nanos.set(TimeUnit.SECONDS.toNanos(60));
+
+        tokenStore.put("pod-id", token("app-token"), "symphony-token");
+
+        assertThat(metric("gauge.tokens.pod.pod-id.size")).isEqualTo(1);
+        assertThat(metric("counter.tokens.pod.pod-id.evictions")).isEqualTo(0L);
+    }
+
+    private Object metric(String name) {
+        return tokenStore.metrics().stream()
+                         .filter(metric -> metric.getName().equals(name))
+                         .findFirst()
+                         .orElseThrow(() -> new AssertionError("No metric " + name))
+                         .getValue();
+    }
+
+    private static Token token(String name) {
+        return new Token(0, name.hashCode());
+    }
+}
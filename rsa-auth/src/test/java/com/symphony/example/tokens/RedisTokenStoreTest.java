@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.tokens;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.embedded.RedisServer;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for RedisTokenStore against an embedded Redis server.
+ */
+public class RedisTokenStoreTest {
+
+    private static RedisServer redisServer;
+
+    private static int port;
+
+    private RedisTokenStore tokenStore;
+
+    // Another server sharing the same Redis
+    private RedisTokenStore otherTokenStore;
+
+    @BeforeClass
+    public static void startRedis() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+    }
+
+    @AfterClass
+    public static void stopRedis() {
+        redisServer.stop();
+    }
+
+    @Before
+    public void setup() {
+        TokenStoreConfiguration configuration = new TokenStoreConfiguration();
+        configuration.setRedisPort(port);
+        configuration.setTtlSeconds(60);
+        tokenStore = new RedisTokenStore(configuration);
+        otherTokenStore = new RedisTokenStore(configuration);
+    }
+
+    @After
+    public void tearDown() {
+        try (Jedis jedis = new Jedis("localhost", port)) {
+            jedis.flushAll();
+        }
+        tokenStore.stop();
+        otherTokenStore.stop();
+    }
+
+    @Test
+    public void validate() {
+        tokenStore.put("pod-id", token("app-token"), "symphony-token");
+
+        assertThat(tokenStore.validate("pod-id", token("app-token"), "symphony-token", null)).isTrue();
+        assertThat(tokenStore.validate("pod-id", token("app-token"), "symphony-token", null)).isTrue();
+        assertThat(tokenStore.validate("pod-id", token("app-token"), "other-symphony-token", null)).isFalse();
+        assertThat(tokenStore.validate("pod-id", token("other-app-token"), "symphony-token", null)).isFalse();
+        assertThat(tokenStore.validate("other-pod-id", token("app-token"), "symphony-token", null)).isFalse();
+    }
+
+    @Test
+    public void validateAll() {
+        tokenStore.put("pod-id", token("app-token-1"), "symphony-token-1");
+        tokenStore.put("pod-id", token("app-token-2"), "symphony-token-2");
+        tokenStore.put("other-pod-id", token("app-token-3"), "symphony-token-3");
+
+        boolean[] valid = tokenStore.validateAll(Arrays.asList(
+                new TokenPair("pod-id", token("app-token-1"), "symphony-token-1", null),
+                new TokenPair("other-pod-id", token("app-token-3"), "symphony-token-3", null),
+                new TokenPair("pod-id", token("app-token-2"), "other-symphony-token", null),
+                new TokenPair("other-pod-id", token("app-token-1"), "symphony-token-1", null),
+                new TokenPair("unknown-pod-id", token("app-token-1"), "symphony-token-1", null),
+                new TokenPair("pod-id", token("app-token-2"), "symphony-token-2", null)));
+
+        assertThat(valid).containsExactly(true, true, false, false, false, true);
+        assertThat(tokenStore.validateAll(Collections.emptyList())).isEmpty();
+    }
+
+    @Test
+    public void tokensAreSharedByServers() {
+        tokenStore.put("pod-id", token("app-token"), "symphony-token");
+
+        assertThat(otherTokenStore.validate("pod-id", token("app-token"), "symphony-token", null)).isTrue();
+        assertThat(otherTokenStore.consume("pod-id", token("app-token"), "symphony-token", null)).isTrue();
+        assertThat(tokenStore.validate("pod-id", token("app-token"), "symphony-token", null)).isFalse();
+    }
+
+    @Test
+    public void consume() {
+        tokenStore.put("pod-id", token("app-token"), "symphony-token");
+
+        assertThat(tokenStore.consume("pod-id", token("app-token"), "other-symphony-token", null)).isFalse();
+        assertThat(tokenStore.consume("pod-id", token("app-token"), "symphony-token", null)).isTrue();
+        assertThat(tokenStore.consume("pod-id", token("app-token"), "symphony-token", null)).isFalse();
+    }
+
+    @Test
+    public void tokenPairIsConsumedOnce() throws Exception {
+        tokenStore.put("pod-id", token("app-token"), "symphony-token");
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            RedisTokenStore store = i % 2 == 0 ? tokenStore : otherTokenStore;
+            futures.add(executor.submit(() -> store.consume("pod-id", token("app-token"), "symphony-token", null)));
+        }
+        int consumed = 0;
+        for (Future<Boolean> future : futures) {
+            consumed += future.get() ? 1 : 0;
+        }
+        executor.shutdown();
+
+        assertThat(consumed).isEqualTo(1);
+    }
+
+    @Test
+    public void tokensExpire() {
+        tokenStore.put("pod-id", token("app-token"), "symphony-token");
+
+        try (Jedis jedis = new Jedis("localhost", port)) {
+            assertThat(jedis.pttl("app-auth:token:pod-id:" + token("app-token"))).isBetween(1L, 60_000L);
+        }
+    }
+
+    private static Token token(String name) {
+        return new Token(0, name.hashCode());
+    }
+}
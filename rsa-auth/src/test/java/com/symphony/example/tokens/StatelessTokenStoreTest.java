@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.tokens;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit test for StatelessTokenStore.
+ */
+public class StatelessTokenStoreTest {
+
+    private static final String OLD_KEY = key(1);
+    private static final String NEW_KEY = key(2);
+
+    private static final Token APP_TOKEN = new Token(1L, 2L);
+
+    private StatelessTokenStore tokenStore;
+
+    @Before
+    public void setup() {
+        tokenStore = tokenStore(OLD_KEY);
+    }
+
+    @Test
+    public void validate() {
+        String receipt = tokenStore.put("pod-id", APP_TOKEN, "symphony-token");
+
+        assertThat(tokenStore.validate("pod-id", APP_TOKEN, "symphony-token", receipt)).isTrue();
+        assertThat(tokenStore.validate("pod-id", APP_TOKEN, "symphony-token", receipt)).isTrue();
+        assertThat(tokenStore.consume("pod-id", APP_TOKEN, "symphony-token", receipt)).isTrue();
+        assertThat(tokenStore.validate("pod-id", APP_TOKEN, "other-symphony-token", receipt)).isFalse();
+        assertThat(tokenStore.validate("pod-id", new Token(1L, 3L), "symphony-token", receipt)).isFalse();
+        assertThat(tokenStore.validate("other-pod-id", APP_TOKEN, "symphony-token", receipt)).isFalse();
+        assertThat(tokenStore.validate("pod-id", APP_TOKEN, "symphony-token", null)).isFalse();
+    }
+
+    @Test
+    public void tamperedReceiptsAreRejected() {
+        String receipt = tokenStore.put("pod-id", APP_TOKEN, "symphony-token");
+        byte[] bytes = Base64.getUrlDecoder().decode(receipt);
+
+        for (int i = 0; i < bytes.length; i++) {
+            byte[] tampered = bytes.clone();
+            tampered[i] ^= 1;
+            String tamperedReceipt = Base64.getUrlEncoder().withoutPadding().encodeToString(tampered);
+            assertThat(tokenStore.validate("pod-id", APP_TOKEN, "symphony-token", tamperedReceipt)).as("byte %d", i).isFalse();
+        }
+        assertThat(tokenStore.validate("pod-id", APP_TOKEN, "symphony-token", receipt.substring(1))).isFalse();
+        assertThat(tokenStore.validate("pod-id", APP_TOKEN, "symphony-token", "not a receipt")).isFalse();
+    }
+
+    @Test
+    public void receiptsExpire() {
+        tokenStore.clock = Clock.fixed(Instant.ofEpochSecond(1000), ZoneOffset.UTC);
+        String receipt = tokenStore.put("pod-id", APP_TOKEN, "symphony-token");
+
+        tokenStore.clock = Clock.fixed(Instant.ofEpochSecond(1299), ZoneOffset.UTC);
+        assertThat(tokenStore.validate("pod-id", APP_TOKEN, "symphony-token", receipt)).isTrue();
+
+        tokenStore.clock = Clock.fixed(Instant.ofEpochSecond(1300), ZoneOffset.UTC);
+        assertThat(tokenStore.validate("pod-id", APP_TOKEN, "symphony-token", receipt)).isFalse();
+    }
+
+    @Test
+    public void keyRotation() {
+        String oldReceipt = tokenStore.put("pod-id", APP_TOKEN, "symphony-token");
+
+        // New key added first: old receipts are still accepted, new receipts are signed with the new key
+        StatelessTokenStore rotated = tokenStore(NEW_KEY, OLD_KEY);
+        String newReceipt = rotated.put("pod-id", APP_TOKEN, "symphony-token");
+        assertThat(rotated.validate("pod-id", APP_TOKEN, "symphony-token", oldReceipt)).isTrue();
+        assertThat(rotated.validate("pod-id", APP_TOKEN, "symphony-token", newReceipt)).isTrue();
+        assertThat(tokenStore.validate("pod-id", APP_TOKEN, "symphony-token", newReceipt)).isFalse();
+
+        // Old key removed
+        StatelessTokenStore retired = tokenStore(NEW_KEY);
+        assertThat(retired.validate("pod-id", APP_TOKEN, "symphony-token", oldReceipt)).isFalse();
+        assertThat(retired.validate("pod-id", APP_TOKEN, "symphony-token", newReceipt)).isTrue();
+    }
+
+    @Test
+    public void keysAreRequired() {
+        assertThatThrownBy(() -> new StatelessTokenStore(new TokenStoreConfiguration()))
+                .isInstanceOf(IllegalStateException.class);
+
+        TokenStoreConfiguration configuration = new TokenStoreConfiguration();
+        configuration.setHmacKeys(Collections.singletonList(Base64.getEncoder().encodeToString(new byte[16])));
+        assertThatThrownBy(() -> new StatelessTokenStore(configuration))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static StatelessTokenStore tokenStore(String... keys) {
+        TokenStoreConfiguration configuration = new TokenStoreConfiguration();
+        configuration.setHmacKeys(Arrays.asList(keys));
+        return new StatelessTokenStore(configuration);
+    }
+
+    private static String key(int seed) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) seed);
+        return Base64.getEncoder().encodeToString(key);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.tokens;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.openjdk.jol.info.GraphStats;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the memory held by the in-memory token store per pending token pair, compared with the token cache the app
+ * used before there was a token store: a Guava cache of UUID string app tokens to symphony token strings.  Kept small
+ * so it runs with the unit tests; TokenStoreMemory in app-auth-benchmarks measures a million pairs.
+ */
+@Slf4j
+public class TokenStoreMemoryTest {
+
+    private static final int PENDING_TOKENS = 10_000;
+
+    @Test
+    public void bytesPerPendingToken() {
+        long before = bytesPerEntry(tokenCache());
+        long after = bytesPerEntry(tokenStore());
+
+        log.info("Bytes per pending token pair: {} token cache, {} token store", before, after);
+        assertThat(after).isLessThan(before / 4);
+    }
+
+    // As built by AuthenticationService before the token store, with room for all the pairs
+    private static Cache<String, String> tokenCache() {
+        Cache<String, String> tokenCache = CacheBuilder.newBuilder()
+                .maximumSize(PENDING_TOKENS)
+                .expireAfterWrite(5, TimeUnit.MINUTES)
+                .build();
+        Random random = new Random(42);
+        for (int i = 0; i < PENDING_TOKENS; i++) {
+            tokenCache.put(UUID.randomUUID().toString(), symphonyToken(random));
+        }
+        return tokenCache;
+    }
+
+    private static InMemoryTokenStore tokenStore() {
+        TokenStoreConfiguration configuration = new TokenStoreConfiguration();
+        configuration.setMaximumSizePerPod(PENDING_TOKENS);
+        configuration.setMaximumSize(PENDING_TOKENS);
+        InMemoryTokenStore tokenStore = new InMemoryTokenStore(configuration);
+
+        Random random = new Random(42);
+        for (int i = 0; i < PENDING_TOKENS; i++) {
+            tokenStore.put("pod-id", Token.random(random), symphonyToken(random));
+        }
+        return tokenStore;
+    }
+
+    private static long bytesPerEntry(Object root) {
+        return GraphStats.parseInstance(root).totalSize() / PENDING_TOKENS;
+    }
+
+    // Symphony tokens are 128 hex digits
+    private static String symphonyToken(Random random) {
+        StringBuilder token = new StringBuilder(128);
+        for (int i = 0; i < 8; i++) {
+            token.append(Strings.padStart(Long.toHexString(random.nextLong()), 16, '0'));
+        }
+        return token.toString();
+    }
+}
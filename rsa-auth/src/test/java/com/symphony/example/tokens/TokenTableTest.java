@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.tokens;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit test for TokenTable.
+ */
+public class TokenTableTest {
+
+    private static final long TTL = 100;
+
+    @Test
+    public void putContainsRemove() {
+        TokenTable table = new TokenTable();
+        table.put(1, 2, 3, 4, TTL);
+
+        assertThat(table.size()).isEqualTo(1);
+        assertThat(table.contains(1, 2, 3, 4)).isTrue();
+        assertThat(table.contains(1, 2, 3, 5)).isFalse();
+        assertThat(table.contains(2, 1, 3, 4)).isFalse();
+
+        assertThat(table.remove(1, 2, 3, 5)).isFalse();
+        assertThat(table.remove(1, 2, 3, 4)).isTrue();
+        assertThat(table.remove(1, 2, 3, 4)).isFalse();
+        assertThat(table.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void putReplacesValue() {
+        TokenTable table = new TokenTable();
+        table.put(1, 2, 3, 4, TTL);
+        table.put(1, 2, 5, 6, TTL);
+
+        assertThat(table.size()).isEqualTo(1);
+        assertThat(table.contains(1, 2, 3, 4)).isFalse();
+        assertThat(table.contains(1, 2, 5, 6)).isTrue();
+    }
+
+    @Test
+    public void removeExpiredRemovesOldestFirst() {
+        TokenTable table = new TokenTable();
+        for (int i = 0; i < 100; i++) {
+            table.put(i, i, i, i, i);
+        }
+
+        assertThat(table.removeExpired(49)).isEqualTo(50);
+        assertThat(table.size()).isEqualTo(50);
+        assertThat(table.contains(49, 49, 49, 49)).isFalse();
+        assertThat(table.contains(50, 50, 50, 50)).isTrue();
+
+        assertThat(table.removeEldest()).isTrue();
+        assertThat(table.contains(50, 50, 50, 50)).isFalse();
+        assertThat(table.contains(51, 51, 51, 51)).isTrue();
+
+        assertThat(table.removeExpired(1000)).isEqualTo(49);
+        assertThat(table.size()).isEqualTo(0);
+        assertThat(table.removeEldest()).isFalse();
+    }
+
+    @Test
+    public void collidingKeys() {
+        // Same high ^ low, so same hash
+        TokenTable table = new TokenTable();
+        for (int i = 0; i < 50; i++) {
+            table.put(i, i, i, 0, TTL);
+        }
+        for (int i = 0; i < 50; i += 2) {
+            assertThat(table.remove(i, i, i, 0)).isTrue();
+        }
+        for (int i = 0; i < 50; i++) {
+            assertThat(table.contains(i, i, i, 0)).as("key %d", i).isEqualTo(i % 2 == 1);
+        }
+    }
+
+    /**
+     * Runs random operations against the table and against a LinkedHashMap, and checks they agree.
+     */
+    @Test
+    public void matchesModel() {
+        Random random = new Random(42);
+        TokenTable table = new TokenTable();
+        Map<Long, Long[]> model = new LinkedHashMap<>();
+        List<Long> keys = new ArrayList<>();
+        long now = 0;
+
+        for (int i = 0; i < 200000; i++) {
+            now++;
+            int operation = random.nextInt(10);
+            if (operation < 5 || keys.isEmpty()) {
+                // Small key space, so that keys get replaced
+                long key = random.nextInt(2000);
+                long value = random.nextLong();
+                table.put(key, ~key, value, ~value, now + TTL);
+                model.remove(key);
+                model.put(key, new Long[] {value, now + TTL});
+                keys.add(key);
+            } else if (operation < 7) {
+                long key = keys.get(random.nextInt(keys.size()));
+                Long[] entry = model.get(key);
+                long value = entry != null && random.nextBoolean() ? entry[0] : random.nextLong();
+                boolean expected = entry != null && entry[0] == value;
+                assertThat(table.remove(key, ~key, value, ~value)).isEqualTo(expected);
+                if (expected) {
+                    model.remove(key);
+                }
+            } else if (operation < 8) {
+                Iterator<Long[]> iterator = model.values().iterator();
+                assertThat(table.removeEldest()).isEqualTo(iterator.hasNext());
+                if (iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            } else if (operation < 9) {
+                int expected = 0;
+                for (Iterator<Long[]> iterator = model.values().iterator(); iterator.hasNext(); ) {
+                    if (iterator.next()[1] > now) {
+                        break;
+                    }
+                    iterator.remove();
+                    expected++;
+                }
+                assertThat(table.removeExpired(now)).isEqualTo(expected);
+            } else {
+                long key = keys.get(random.nextInt(keys.size()));
+                Long[] entry = model.get(key);
+                if (entry != null) {
+                    assertThat(table.contains(key, ~key, entry[0], ~entry[0])).isTrue();
+                } else {
+                    assertThat(table.contains(key, ~key, 0, ~0L)).isFalse();
+                }
+            }
+            assertThat(table.size()).isEqualTo(model.size());
+        }
+    }
+}
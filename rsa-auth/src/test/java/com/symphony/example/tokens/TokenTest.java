@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.tokens;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit test for Token.
+ */
+public class TokenTest {
+
+    @Test
+    public void roundTrip() {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            Token token = Token.random(random);
+            String encoded = token.toString();
+
+            assertThat(encoded).hasSize(22).matches("[A-Za-z0-9_-]+");
+            assertThat(Token.parse(encoded)).isEqualTo(token);
+        }
+    }
+
+    @Test
+    public void extremeValues() {
+        Token token = new Token(-1L, Long.MIN_VALUE);
+
+        assertThat(Token.parse(token.toString())).isEqualTo(token);
+        assertThat(new Token(0L, 0L).toString()).isEqualTo("AAAAAAAAAAAAAAAAAAAAAA");
+    }
+
+    @Test
+    public void parseRejectsBadInput() {
+        assertThatThrownBy(() -> Token.parse("app-token")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Token.parse("AAAAAAAAAAAAAAAAAAAAAAAA")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Token.parse("AAAAAAAAAAAAAAAAAAAA+/")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Token.parse("AAAAAAAAAAAAAAAAAAAA!!")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit test for SingleFlight.
+ */
+public class SingleFlightTest {
+
+    private final SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+
+    @Test
+    public void concurrentCallsForSameKeyAreCoalesced() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                calls.incrementAndGet();
+                release.await();
+                return 42;
+            })));
+        }
+        Thread.sleep(200);
+        release.countDown();
+
+        for (Future<Integer> future : futures) {
+            assertThat(future.get()).isEqualTo(42);
+        }
+        executor.shutdown();
+
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void exceptionIsSharedByWaitingCallers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            futures.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                release.await();
+                throw new IllegalStateException("pod unavailable");
+            })));
+        }
+        Thread.sleep(200);
+        release.countDown();
+
+        for (Future<Integer> future : futures) {
+            assertThatThrownBy(future::get)
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(IllegalStateException.class);
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void completedCallIsNotReused() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThat(singleFlight.execute("key", calls::incrementAndGet)).isEqualTo(1);
+        assertThat(singleFlight.execute("key", calls::incrementAndGet)).isEqualTo(2);
+        assertThat(singleFlight.execute("other-key", calls::incrementAndGet)).isEqualTo(3);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.example.utils;
+
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.X509Extension;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import javax.security.auth.x500.X500Principal;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Creates RSA key pairs and self signed certificates for tests and benchmarks, like the JWT signing cert of a pod.
+ */
+public class TestCertificates {
+
+    /**
+     * Generates a 2048 bit RSA key pair.
+     */
+    public static KeyPair generateKeyPair() throws GeneralSecurityException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        return keyPairGenerator.generateKeyPair();
+    }
+
+    /**
+     * Creates a self signed cert for the key pair which is valid from a day ago until the specified date.
+     */
+    public static X509Certificate selfSignedCertificate(KeyPair keyPair, Date notAfter) throws GeneralSecurityException {
+        X500Principal subject = new X500Principal("CN=Test Signing Cert, O=Symphony Communications LLC");
+        return sign(builder(keyPair, subject, notAfter), keyPair);
+    }
+
+    /**
+     * Creates a self signed TLS server cert for the key pair and host name, valid for a day.
+     */
+    public static X509Certificate serverCertificate(KeyPair keyPair, String hostName) throws GeneralSecurityException {
+        X500Principal subject = new X500Principal("CN=" + hostName + ", O=Symphony Communications LLC");
+        X509v3CertificateBuilder builder =
+                builder(keyPair, subject, new Date(System.currentTimeMillis() + 86_400_000L));
+        // Host name verifiers only look at the subject alternative names
+        builder.addExtension(X509Extension.subjectAlternativeName, false,
+                             new GeneralNames(new GeneralName(GeneralName.dNSName, hostName)));
+        return sign(builder, keyPair);
+    }
+
+    /**
+     * Encodes a cert in PEM format, as returned by the pod.
+     */
+    public static String toPem(X509Certificate certificate) throws GeneralSecurityException {
+        return "-----BEGIN CERTIFICATE-----\n"
+               + Base64.getMimeEncoder(64, "\n".getBytes()).encodeToString(certificate.getEncoded())
+               + "\n-----END CERTIFICATE-----\n";
+    }
+
+    private static X509v3CertificateBuilder builder(KeyPair keyPair, X500Principal subject, Date notAfter) {
+        return new JcaX509v3CertificateBuilder(subject, BigInteger.valueOf(System.nanoTime()),
+                                               new Date(System.currentTimeMillis() - 86_400_000L), notAfter, subject,
+                                               keyPair.getPublic());
+    }
+
+    private static X509Certificate sign(X509v3CertificateBuilder builder, KeyPair keyPair)
+            throws GeneralSecurityException {
+        try {
+            return new JcaX509CertificateConverter().getCertificate(
+                    builder.build(new JcaContentSignerBuilder("SHA256WithRSA").build(keyPair.getPrivate())));
+        } catch (OperatorCreationException e) {
+            throw new GeneralSecurityException("Can't sign certificate", e);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.symphony.client;
+
+import com.google.common.base.Ticker;
+import feign.FeignException;
+import feign.Response;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for {@link GuardedAuthenticationClient}
+ */
+public class GuardedAuthenticationClientTest {
+
+    private AuthenticationClient delegate;
+
+    private PodCircuitBreaker circuitBreaker;
+
+    private GuardedAuthenticationClient client;
+
+    private final LongAdder bulkheadRejections = new LongAdder();
+
+    private final LongAdder circuitBreakerRejections = new LongAdder();
+
+    @Before
+    public void setup() {
+        SymphonyClientConfiguration configuration = new SymphonyClientConfiguration();
+        configuration.setCircuitBreakerWindowSize(4);
+        configuration.setCircuitBreakerMinimumCalls(4);
+        delegate = mock(AuthenticationClient.class);
+        circuitBreaker = new PodCircuitBreaker("company-id", configuration, Ticker.systemTicker(),
+                                               (companyId, from, to) -> { });
+        client = new GuardedAuthenticationClient("company-id", delegate, circuitBreaker, 2, Ticker.systemTicker(),
+                                                 bulkheadRejections, circuitBreakerRejections);
+    }
+
+    @Test
+    public void serverErrorsOpenCircuit() {
+        when(delegate.getPodCertificate()).thenThrow(FeignException.errorStatus("getPodCertificate", response(503)));
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(client::getPodCertificate).isInstanceOf(FeignException.class);
+        }
+
+        assertThatThrownBy(client::getPodCertificate).isInstanceOf(PodUnavailableException.class);
+        verify(delegate, times(4)).getPodCertificate();
+        assertThat(circuitBreakerRejections.sum()).isEqualTo(1);
+        assertThat(client.getConcurrentCalls()).isEqualTo(0);
+    }
+
+    @Test
+    public void clientErrorsDontOpenCircuit() {
+        when(delegate.authenticate(any())).thenThrow(FeignException.errorStatus("authenticate", response(401)));
+        for (int i = 0; i < 10; i++) {
+            assertThatThrownBy(() -> client.authenticate(new AuthenticateRequest("app-token", "auth-token"))).isInstanceOf(FeignException.class);
+        }
+
+        assertThat(circuitBreaker.getState()).isEqualTo(PodCircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.getFailureRate()).isEqualTo(0);
+    }
+
+    @Test
+    public void callsBeyondBulkheadRejected() throws Exception {
+        CountDownLatch inFlight = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        PodCertificate certificate = new PodCertificate();
+        when(delegate.getPodCertificate()).thenAnswer(invocation -> {
+            inFlight.countDown();
+            release.await();
+            return certificate;
+        });
+        Thread[] callers = new Thread[2];
+        for (int i = 0; i < callers.length; i++) {
+            callers[i] = new Thread(client::getPodCertificate);
+            callers[i].start();
+        }
+        inFlight.await();
+
+        assertThat(client.getConcurrentCalls()).isEqualTo(2);
+        assertThatThrownBy(client::getPodCertificate)
+                .isInstanceOf(PodUnavailableException.class)
+                .hasMessage("Pod company-id is unavailable: too many calls in flight");
+        assertThat(bulkheadRejections.sum()).isEqualTo(1);
+
+        release.countDown();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        assertThat(client.getPodCertificate()).isSameAs(certificate);
+        verify(delegate, times(3)).getPodCertificate();
+    }
+
+    private static Response response(int status) {
+        return Response.builder()
+                       .status(status)
+                       .reason("reason")
+                       .headers(Collections.emptyMap())
+                       .body(new byte[0])
+                       .build();
+    }
+}
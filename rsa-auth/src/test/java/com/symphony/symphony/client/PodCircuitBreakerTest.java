@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.symphony.client;
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.symphony.symphony.client.PodCircuitBreaker.State.CLOSED;
+import static com.symphony.symphony.client.PodCircuitBreaker.State.HALF_OPEN;
+import static com.symphony.symphony.client.PodCircuitBreaker.State.OPEN;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit test for {@link PodCircuitBreaker}
+ */
+public class PodCircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(3);
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
+
+    private final List<String> transitions = new ArrayList<>();
+
+    private PodCircuitBreaker circuitBreaker;
+
+    @Before
+    public void setup() {
+        SymphonyClientConfiguration configuration = new SymphonyClientConfiguration();
+        configuration.setCircuitBreakerWindowSize(10);
+        configuration.setCircuitBreakerMinimumCalls(5);
+        configuration.setCircuitBreakerFailureRateThreshold(50);
+        configuration.setCircuitBreakerSlowCallMillis(2000);
+        configuration.setCircuitBreakerSlowCallRateThreshold(60);
+        configuration.setCircuitBreakerOpenSeconds(30);
+        configuration.setCircuitBreakerHalfOpenCalls(2);
+        circuitBreaker = new PodCircuitBreaker("company-id", configuration, ticker,
+                                               (companyId, from, to) -> transitions.add(from + "->" + to));
+    }
+
+    @Test
+    public void staysClosedBeforeMinimumCalls() {
+        calls(4, true, FAST);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CLOSED);
+        assertThat(circuitBreaker.getFailureRate()).isEqualTo(-1);
+    }
+
+    @Test
+    public void opensAtFailureRateThreshold() {
+        calls(3, false, FAST);
+        calls(2, true, FAST);
+        assertThat(circuitBreaker.getState()).isEqualTo(CLOSED);
+        assertThat(circuitBreaker.getFailureRate()).isEqualTo(40);
+
+        calls(1, true, FAST);
+        assertThat(circuitBreaker.getState()).isEqualTo(OPEN);
+        assertThat(transitions).containsExactly("CLOSED->OPEN");
+        assertThatThrownBy(circuitBreaker::acquirePermission)
+                .isInstanceOf(PodUnavailableException.class)
+                .hasMessage("Pod company-id is unavailable: circuit breaker is open");
+    }
+
+    @Test
+    public void opensAtSlowCallRateThreshold() {
+        calls(4, false, FAST);
+        calls(6, false, SLOW);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(OPEN);
+    }
+
+    @Test
+    public void oldOutcomesLeaveWindow() {
+        calls(6, false, FAST);
+        calls(4, true, FAST);
+        assertThat(circuitBreaker.getFailureRate()).isEqualTo(40);
+
+        calls(10, false, FAST);
+        assertThat(circuitBreaker.getFailureRate()).isEqualTo(0);
+
+        calls(4, true, FAST);
+        assertThat(circuitBreaker.getState()).isEqualTo(CLOSED);
+        assertThat(circuitBreaker.getFailureRate()).isEqualTo(40);
+    }
+
+    @Test
+    public void retryAfterIsTimeLeftOpen() {
+        calls(5, true, FAST);
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(20));
+
+        assertThatThrownBy(circuitBreaker::acquirePermission)
+                .isInstanceOfSatisfying(PodUnavailableException.class,
+                                        e -> assertThat(e.getRetryAfterSeconds()).isEqualTo(10));
+    }
+
+    @Test
+    public void closesWhenTrialCallsSucceed() {
+        calls(5, true, FAST);
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        PodCircuitBreaker.Permission first = circuitBreaker.acquirePermission();
+        PodCircuitBreaker.Permission second = circuitBreaker.acquirePermission();
+        assertThat(circuitBreaker.getState()).isEqualTo(HALF_OPEN);
+        assertThat(first.isTrial()).isTrue();
+        assertThatThrownBy(circuitBreaker::acquirePermission)
+                .isInstanceOf(PodUnavailableException.class)
+                .hasMessage("Pod company-id is unavailable: circuit breaker is waiting for trial calls");
+
+        circuitBreaker.record(first, false, FAST);
+        assertThat(circuitBreaker.getState()).isEqualTo(HALF_OPEN);
+        circuitBreaker.record(second, false, FAST);
+        assertThat(circuitBreaker.getState()).isEqualTo(CLOSED);
+        assertThat(circuitBreaker.getFailureRate()).isEqualTo(-1);
+        assertThat(transitions).containsExactly("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED");
+    }
+
+    @Test
+    public void reopensWhenTrialCallIsSlow() {
+        calls(5, true, FAST);
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        circuitBreaker.record(circuitBreaker.acquirePermission(), false, SLOW);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(OPEN);
+        assertThat(transitions).containsExactly("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->OPEN");
+        assertThatThrownBy(circuitBreaker::acquirePermission).isInstanceOf(PodUnavailableException.class);
+    }
+
+    @Test
+    public void callsStartedBeforeHalfOpenAreNotTrialCalls() {
+        calls(4, true, FAST);
+        PodCircuitBreaker.Permission late = circuitBreaker.acquirePermission();
+        calls(1, true, FAST);
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        PodCircuitBreaker.Permission trial = circuitBreaker.acquirePermission();
+        circuitBreaker.record(late, false, FAST);
+        assertThat(circuitBreaker.getState()).isEqualTo(HALF_OPEN);
+
+        circuitBreaker.record(trial, false, FAST);
+        assertThat(circuitBreaker.getState()).isEqualTo(HALF_OPEN);
+        circuitBreaker.record(circuitBreaker.acquirePermission(), false, FAST);
+        assertThat(circuitBreaker.getState()).isEqualTo(CLOSED);
+    }
+
+    @Test
+    public void trialCallsFromEarlierHalfOpenDoNotCount() {
+        calls(5, true, FAST);
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        PodCircuitBreaker.Permission earlier = circuitBreaker.acquirePermission();
+        circuitBreaker.record(circuitBreaker.acquirePermission(), true, FAST);
+        assertThat(circuitBreaker.getState()).isEqualTo(OPEN);
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        PodCircuitBreaker.Permission trial = circuitBreaker.acquirePermission();
+        circuitBreaker.record(earlier, false, FAST);
+        circuitBreaker.record(trial, false, FAST);
+        assertThat(circuitBreaker.getState()).isEqualTo(HALF_OPEN);
+    }
+
+    private void calls(int count, boolean failed, long durationNanos) {
+        for (int i = 0; i < count; i++) {
+            circuitBreaker.record(circuitBreaker.acquirePermission(), failed, durationNanos);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.symphony.client;
+
+import com.symphony.example.load.TlsStubPod;
+import com.symphony.example.pods.PodDirectory;
+import com.symphony.example.pods.PodInfo;
+import okhttp3.Protocol;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the HTTP version used for calls to a pod, against a stub pod served over TLS which negotiates HTTP/2 with ALPN.
+ */
+public class SymphonyClientFactoryHttp2Test {
+
+    private static final int CONCURRENT_CALLS = 50;
+
+    private TlsStubPod stubPod;
+
+    private SymphonyClientFactory factory;
+
+    @After
+    public void tearDown() throws Exception {
+        if (factory != null) {
+            factory.stop();
+        }
+        stubPod.stop();
+    }
+
+    @Test
+    public void concurrentCallsShareOneHttp2Connection() throws Exception {
+        startStubPod(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        authenticateConcurrently(true);
+
+        assertThat(stubPod.getMaximumInFlight()).isGreaterThan(1);
+        assertThat(metric("counter.symphony.client.connections.opened")).isEqualTo(1);
+        assertThat(metric("counter.symphony.client.connections.http2")).isEqualTo(1);
+        assertThat(metric("counter.symphony.client.connections.tls-handshakes")).isEqualTo(1);
+    }
+
+    @Test
+    public void concurrentHttp1CallsEachNeedAConnection() throws Exception {
+        startStubPod(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        authenticateConcurrently(false);
+
+        assertThat(stubPod.getMaximumInFlight()).isGreaterThan(1);
+        assertThat(metric("counter.symphony.client.connections.opened")).isGreaterThanOrEqualTo(stubPod.getMaximumInFlight());
+        assertThat(metric("counter.symphony.client.connections.http2")).isZero();
+    }
+
+    @Test
+    public void podWithoutHttp2IsCalledWithHttp1() throws Exception {
+        startStubPod(Collections.singletonList(Protocol.HTTP_1_1));
+        authenticateConcurrently(true);
+
+        assertThat(metric("counter.symphony.client.connections.opened")).isGreaterThan(1);
+        assertThat(metric("counter.symphony.client.connections.http2")).isZero();
+    }
+
+    private void startStubPod(List<Protocol> protocols) throws Exception {
+        stubPod = new TlsStubPod(200, protocols);
+        stubPod.start();
+    }
+
+    /**
+     * Makes one call, like the call that warms the connection, then many at once.
+     */
+    private void authenticateConcurrently(boolean http2) throws Exception {
+        SymphonyClientConfiguration configuration = new SymphonyClientConfiguration();
+        configuration.setTruststoreFilename(stubPod.getTrustStoreFilename());
+        configuration.setHttp2(http2);
+        // The first call opens the connection instead, so that it isn't raced by warming
+        configuration.setWarmConnections(false);
+        configuration.setMaxConcurrentCallsPerPod(CONCURRENT_CALLS);
+        PodDirectory podDirectory = new PodDirectory();
+        factory = new SymphonyClientFactory(new HttpClientBuilder(configuration), podDirectory, configuration);
+
+        PodInfo podInfo = new PodInfo();
+        podInfo.setCompanyId("company-id");
+        PodInfo.PodInfoPayload payload = new PodInfo.PodInfoPayload();
+        payload.setPodUrl(stubPod.getPodUrl());
+        podInfo.setPayload(payload);
+        podDirectory.addPodInfo(podInfo);
+
+        AuthenticationClient client = factory.getAuthenticationClient("company-id");
+        client.authenticate(new AuthenticateRequest("app-token", "auth-token"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_CALLS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<AuthenticateResponse>> responses = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_CALLS; i++) {
+                responses.add(executor.submit(() -> {
+                    start.await();
+                    return client.authenticate(new AuthenticateRequest("app-token", "auth-token"));
+                }));
+            }
+            start.countDown();
+            for (Future<AuthenticateResponse> response : responses) {
+                assertThat(response.get().getSymphonyToken()).isNotEmpty();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private long metric(String name) {
+        for (Metric<?> metric : factory.metrics()) {
+            if (metric.getName().equals(name)) {
+                return metric.getValue().longValue();
+            }
+        }
+        throw new AssertionError("No metric " + name);
+    }
+}
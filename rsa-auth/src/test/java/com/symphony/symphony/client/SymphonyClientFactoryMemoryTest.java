@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016-2017 Symphony Application Authentication - Symphony LLC
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.symphony.client;
+
+import com.symphony.example.pods.PodDirectory;
+import com.symphony.example.pods.PodInfo;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import org.junit.Test;
+import org.openjdk.jol.info.GraphStats;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures the memory held by the Feign clients of {@link SymphonyClientFactory} when ten times as many pods as the
+ * client cache holds are registered and each of them is used, to check that it stays within the cache's maximum size.
+ * SymphonyClientFactoryMemory in app-auth-benchmarks measures the default cache size with 20,000 pods.
+ */
+@Slf4j
+public class SymphonyClientFactoryMemoryTest {
+
+    private static final int PODS = 1_000;
+
+    @Test
+    public void clientMemoryIsBoundedByMaximumSize() {
+        SymphonyClientConfiguration configuration = new SymphonyClientConfiguration();
+        int maximumSize = PODS / 10;
+        configuration.setClientCacheMaximumSize(maximumSize);
+
+        long fullCache = clientBytes(configuration, maximumSize);
+        long allPodsUsed = clientBytes(configuration, PODS);
+
+        log.info("Client memory for {} pods: {} bytes ({} per client), {} pods: {} bytes", maximumSize, fullCache,
+                 fullCache / maximumSize, PODS, allPodsUsed);
+        assertThat(allPodsUsed).isLessThan(fullCache + fullCache / 10);
+        assertThat(fullCache / maximumSize).isLessThan(8 * 1024);
+    }
+
+    /**
+     * Returns the memory held by the factory after the first pods have been used, less the memory it held before, so
+     * that the pod directory and the HTTP client aren't counted.
+     */
+    private static long clientBytes(SymphonyClientConfiguration configuration, int podsUsed) {
+        PodDirectory podDirectory = new PodDirectory();
+        for (int i = 0; i < PODS; i++) {
+            PodInfo podInfo = new PodInfo();
+            podInfo.setCompanyId("company-" + i);
+            PodInfo.PodInfoPayload payload = new PodInfo.PodInfoPayload();
+            payload.setPodUrl("https://pod-" + i + ".symphony.com/pod");
+            podInfo.setPayload(payload);
+            podDirectory.addPodInfo(podInfo);
+        }
+
+        HttpClientBuilder httpClientBuilder = new HttpClientBuilder(configuration) {
+            @Override
+            public OkHttpClient buildOkHttpClient(EventListener eventListener) {
+                return new OkHttpClient();
+            }
+        };
+        SymphonyClientFactory factory = new SymphonyClientFactory(httpClientBuilder, podDirectory, configuration);
+        long before = GraphStats.parseInstance(factory).totalSize();
+
+        for (int i = 0; i < podsUsed; i++) {
+            factory.getAuthenticationClient("company-" + i);
+        }
+        return GraphStats.parseInstance(factory).totalSize() - before;
+    }
+}
@@ -13,11 +13,20 @@
 
 package com.symphony.symphony.client;
 
+import com.google.common.base.Ticker;
 import com.symphony.example.pods.PodDirectory;
 import com.symphony.example.pods.PodInfo;
-import feign.Client;
+import com.symphony.example.load.StubPod;
+import feign.RetryableException;
+import okhttp3.OkHttpClient;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -33,14 +42,28 @@ public class SymphonyClientFactoryTest {
 
     private PodDirectory podDirectory;
 
+    private SymphonyClientConfiguration configuration;
+
+    private HttpClientBuilder httpClientBuilder;
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
 
     @Before
     public void setup() {
-        podDirectory = mock(PodDirectory.class);
-        Client httpClient = mock(Client.class);
-        HttpClientBuilder httpClientBuilder = mock(HttpClientBuilder.class);
-        when(httpClientBuilder.buildClient()).thenReturn(httpClient);
-        symphonyClientFactory = new SymphonyClientFactory(httpClientBuilder, podDirectory);
+        podDirectory = new PodDirectory();
+        configuration = new SymphonyClientConfiguration();
+        configuration.setClientCacheMaximumSize(2);
+        configuration.setWarmConnections(false);
+        httpClientBuilder = mock(HttpClientBuilder.class);
+        when(httpClientBuilder.buildOkHttpClient(any())).thenReturn(new OkHttpClient());
+        symphonyClientFactory = new SymphonyClientFactory(httpClientBuilder, podDirectory, configuration, ticker);
     }
 
     /**
@@ -55,7 +78,7 @@ public class SymphonyClientFactoryTest {
         podInfo.setPayload(payload);
         payload.setPodUrl("pod-url/pod");
         payload.setSessionAuthUrl("sessionauth-url");
-        when(podDirectory.getPodInfo("company-id")).thenReturn(podInfo);
+        podDirectory.addPodInfo(podInfo);
 
         PodInfo anotherPodInfo = new PodInfo();
         PodInfo.PodInfoPayload anotherPayload = new PodInfo.PodInfoPayload();
@@ -63,7 +86,7 @@ public class SymphonyClientFactoryTest {
         anotherPodInfo.setCompanyId("another-company-id");
         anotherPayload.setPodUrl("another-pod-url/pod");
         anotherPayload.setSessionAuthUrl("another-sessionauth-url");
-        when(podDirectory.getPodInfo("another-company-id")).thenReturn(anotherPodInfo);
+        podDirectory.addPodInfo(anotherPodInfo);
 
 
         AuthenticationClient authenticationClient = symphonyClientFactory.getAuthenticationClient("company-id");
@@ -83,5 +106,213 @@ public class SymphonyClientFactoryTest {
 
     }
 
+    /**
+     * Test that the client is rebuilt when a pod moves to another host, and only then.
+     */
+    @Test
+    public void testClientRebuiltWhenPodUrlChanges() {
+        podDirectory.addPodInfo(podInfo("company-id", "https://pod.symphony.com/pod", "sessionauth-url"));
+        AuthenticationClient authenticationClient = symphonyClientFactory.getAuthenticationClient("company-id");
+        assertTrue("Should target pod's base URL", authenticationClient.toString().contains("url=https://pod.symphony.com)"));
+
+        podDirectory.addPodInfo(podInfo("company-id", "https://pod.symphony.com/pod", "another-sessionauth-url"));
+        assertSame("Same pod URL should keep client", authenticationClient,
+                   symphonyClientFactory.getAuthenticationClient("company-id"));
+
+        podDirectory.addPodInfo(podInfo("company-id", "https://new-pod.symphony.com/pod", "sessionauth-url"));
+        AuthenticationClient newAuthenticationClient = symphonyClientFactory.getAuthenticationClient("company-id");
+        assertNotSame("New pod URL should build new client", authenticationClient, newAuthenticationClient);
+        assertTrue("Should target new base URL", newAuthenticationClient.toString().contains("url=https://new-pod.symphony.com)"));
+    }
+
+    /**
+     * Test that pods added before the factory was created, like pods restored from the journal, get a client.
+     */
+    @Test
+    public void testClientForPodAddedBeforeFactory() {
+        PodDirectory restoredPodDirectory = new PodDirectory();
+        restoredPodDirectory.addPodInfo(podInfo("company-id", "https://pod.symphony.com/pod", "sessionauth-url"));
+        SymphonyClientFactory factory = new SymphonyClientFactory(httpClientBuilder, restoredPodDirectory, configuration);
+
+        AuthenticationClient authenticationClient = factory.getAuthenticationClient("company-id");
+        assertSame("Should return same object", authenticationClient, factory.getAuthenticationClient("company-id"));
+    }
+
+    /**
+     * Test that unknown pods and pods without a usable pod URL are an error.
+     */
+    @Test
+    public void testNoClientWithoutPodUrl() {
+        assertThrows(() -> symphonyClientFactory.getAuthenticationClient("unknown-company-id"));
+
+        podDirectory.addPodInfo(podInfo("company-id", "https://pod.symphony.com/pod", "sessionauth-url"));
+        symphonyClientFactory.getAuthenticationClient("company-id");
+        podDirectory.addPodInfo(podInfo("company-id", "https://pod.symphony.com", "sessionauth-url"));
+        assertThrows(() -> symphonyClientFactory.getAuthenticationClient("company-id"));
+    }
+
+    /**
+     * Test that the least recently used client is evicted beyond the maximum size, and rebuilt when next used.
+     */
+    @Test
+    public void testLeastRecentlyUsedClientEvicted() {
+        podDirectory.addPodInfo(podInfo("company-1", "https://pod1.symphony.com/pod", "sessionauth-url"));
+        podDirectory.addPodInfo(podInfo("company-2", "https://pod2.symphony.com/pod", "sessionauth-url"));
+        podDirectory.addPodInfo(podInfo("company-3", "https://pod3.symphony.com/pod", "sessionauth-url"));
+
+        AuthenticationClient client1 = symphonyClientFactory.getAuthenticationClient("company-1");
+        AuthenticationClient client2 = symphonyClientFactory.getAuthenticationClient("company-2");
+        assertSame("Should return same object", client1, symphonyClientFactory.getAuthenticationClient("company-1"));
+        symphonyClientFactory.getAuthenticationClient("company-3");
+
+        assertEquals(2L, metric("gauge.symphony.client.cache.size"));
+        assertEquals(1L, metric("counter.symphony.client.cache.evictions"));
+        assertSame("Recently used client should be kept", client1,
+                   symphonyClientFactory.getAuthenticationClient("company-1"));
+
+        AuthenticationClient rebuiltClient2 = symphonyClientFactory.getAuthenticationClient("company-2");
+        assertNotSame("Evicted client should be rebuilt", client2, rebuiltClient2);
+        assertTrue("Should target pod's base URL", rebuiltClient2.toString().contains("url=https://pod2.symphony.com)"));
+        assertEquals(4L, metric("counter.symphony.client.cache.builds"));
+    }
+
+    /**
+     * Test that clients not used for the idle time are evicted.
+     */
+    @Test
+    public void testIdleClientEvicted() {
+        podDirectory.addPodInfo(podInfo("company-id", "https://pod.symphony.com/pod", "sessionauth-url"));
+        AuthenticationClient authenticationClient = symphonyClientFactory.getAuthenticationClient("company-id");
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(configuration.getClientCacheIdleMinutes() - 1));
+        assertSame("Should return same object", authenticationClient,
+                   symphonyClientFactory.getAuthenticationClient("company-id"));
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(configuration.getClientCacheIdleMinutes()));
+        assertNotSame("Idle client should be rebuilt", authenticationClient,
+                      symphonyClientFactory.getAuthenticationClient("company-id"));
+        assertEquals(1L, metric("counter.symphony.client.cache.evictions"));
+    }
+
+    /**
+     * Test that registering pods doesn't build clients, so it doesn't evict the clients of pods in use.
+     */
+    @Test
+    public void testClientNotBuiltWhenPodRegistered() {
+        podDirectory.addPodInfo(podInfo("company-1", "https://pod1.symphony.com/pod", "sessionauth-url"));
+        AuthenticationClient client1 = symphonyClientFactory.getAuthenticationClient("company-1");
+
+        for (int i = 2; i <= 10; i++) {
+            podDirectory.addPodInfo(podInfo("company-" + i, "https://pod" + i + ".symphony.com/pod", "sessionauth-url"));
+        }
+
+        assertEquals(1L, metric("gauge.symphony.client.cache.size"));
+        assertEquals(1L, metric("counter.symphony.client.cache.builds"));
+        assertSame("Should return same object", client1, symphonyClientFactory.getAuthenticationClient("company-1"));
+    }
+
+    /**
+     * Test that a connection is opened when a pod is registered, and used by the pod's first call.
+     */
+    @Test
+    public void testConnectionWarmedWhenPodRegistered() throws Exception {
+        StubPod stubPod = new StubPod("company-id", 0, 0);
+        stubPod.start();
+        try {
+            configuration.setWarmConnections(true);
+            configuration.setTruststoreFilename("src/test/resources/cacerts");
+            SymphonyClientFactory factory = new SymphonyClientFactory(new HttpClientBuilder(configuration), podDirectory,
+                                                                      configuration);
+
+            podDirectory.addPodInfo(podInfo("company-id", stubPod.getPodUrl(), "sessionauth-url"));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (metric(factory, "gauge.symphony.client.connections.idle") == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1L, metric(factory, "gauge.symphony.client.connections.idle"));
+
+            factory.getAuthenticationClient("company-id").getPodCertificate();
+            assertEquals("Login should use warmed connection", 1L, metric(factory, "counter.symphony.client.connections.opened"));
+            assertEquals(2L, metric(factory, "counter.symphony.client.connections.acquired"));
+            factory.stop();
+        } finally {
+            stubPod.stop();
+        }
+    }
+
+    /**
+     * Test that a pod that can't be reached opens its circuit breaker, after which calls fail without calling the pod,
+     * and that the state change is listed by the actuator endpoint.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCircuitOpensWhenPodFails() {
+        configuration.setCircuitBreakerWindowSize(4);
+        configuration.setCircuitBreakerMinimumCalls(4);
+        // Nothing listens on port 1, so connections are refused
+        podDirectory.addPodInfo(podInfo("company-id", "http://localhost:1/pod", "sessionauth-url"));
+        AuthenticationClient authenticationClient = symphonyClientFactory.getAuthenticationClient("company-id");
+
+        for (int i = 0; i < 4; i++) {
+            try {
+                authenticationClient.getPodCertificate();
+                fail("Should fail to connect");
+            } catch (RetryableException e) {
+                // Expected
+            }
+        }
+        try {
+            authenticationClient.getPodCertificate();
+            fail("Should fail fast");
+        } catch (PodUnavailableException e) {
+            assertEquals("Pod company-id is unavailable: circuit breaker is open", e.getMessage());
+            assertEquals(configuration.getCircuitBreakerOpenSeconds(), e.getRetryAfterSeconds());
+        }
+
+        assertEquals(1L, metric("gauge.symphony.client.circuit-breaker.open"));
+        assertEquals(1L, metric("counter.symphony.client.circuit-breaker.opened"));
+        assertEquals(1L, metric("counter.symphony.client.circuit-breaker.rejections"));
+
+        Map<String, Object> endpoint = new CircuitBreakersEndpoint(symphonyClientFactory).invoke();
+        Map<String, Map<String, Object>> pods = (Map<String, Map<String, Object>>) endpoint.get("pods");
+        assertEquals(PodCircuitBreaker.State.OPEN, pods.get("company-id").get("state"));
+        assertEquals(100, pods.get("company-id").get("failureRate"));
+        List<CircuitBreakerTransition> transitions = (List<CircuitBreakerTransition>) endpoint.get("transitions");
+        assertEquals(1, transitions.size());
+        assertEquals("company-id", transitions.get(0).getCompanyId());
+        assertEquals("CLOSED", transitions.get(0).getFrom());
+        assertEquals("OPEN", transitions.get(0).getTo());
+    }
+
+    private long metric(String name) {
+        return metric(symphonyClientFactory, name);
+    }
+
+    private static long metric(SymphonyClientFactory factory, String name) {
+        for (Metric<?> metric : factory.metrics()) {
+            if (metric.getName().equals(name)) {
+                return metric.getValue().longValue();
+            }
+        }
+        throw new AssertionError("No metric " + name);
+    }
 
-}
\ No newline at end of file
+    private static PodInfo podInfo(String companyId, String podUrl, String sessionAuthUrl) {
+        PodInfo podInfo = new PodInfo();
+        podInfo.setCompanyId(companyId);
+        PodInfo.PodInfoPayload payload = new PodInfo.PodInfoPayload();
+        payload.setPodUrl(podUrl);
+        payload.setSessionAuthUrl(sessionAuthUrl);
+        podInfo.setPayload(payload);
+        return podInfo;
+    }
+
+    private static void assertThrows(Runnable runnable) {
+        try {
+            runnable.run();
+            fail("Should throw IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}